@@ -53,7 +53,10 @@ namespace KState.DataComponent
             this.webServiceManager = webServiceManager;
 
             mapValueSet = hazelcastClient.getMap<string, ValueSetEntry>("valueSet");
-            queueValueSetRequest = hazelcastClient.getQueue<ValueSetRequestEntry>("valueSetRequest");
+
+            // prefetch requests go in their own lane so that the data store always
+            // serves the requests that models are blocked on first
+            queueValueSetRequest = hazelcastClient.getQueue<ValueSetRequestEntry>("valueSetPrefetchRequest");
 
             prefetchMonitor = new PrefetchMonitor(outputLinks, traceFile, timeHorizon);
         }
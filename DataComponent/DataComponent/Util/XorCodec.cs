@@ -0,0 +1,128 @@
+﻿// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//  
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//  
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//  
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+using System;
+
+namespace KState.Util
+{
+    /// <summary>
+    /// Decodes value sets the data store compressed with its XorCodec (when
+    /// it runs with compressValueSets). An encoded payload's length is never
+    /// a multiple of 8, which is how it is told apart from raw doubles. See
+    /// edu.kstate.datastore.util.XorCodec for the format.
+    /// </summary>
+    public static class XorCodec
+    {
+        private const int HeaderLength = 5;
+        private static readonly long ZeroBits = BitConverter.DoubleToInt64Bits(0.0);
+        private static readonly long NaNBits = unchecked((long) 0x7ff8000000000000L);
+
+        public static bool IsEncoded(int dataLength)
+        {
+            return dataLength%8 != 0;
+        }
+
+        public static int GetValueCount(byte[] data)
+        {
+            return (data[1] << 24) | (data[2] << 16) | (data[3] << 8) | data[4];
+        }
+
+        public static double[] Decode(byte[] data)
+        {
+            var values = new double[GetValueCount(data)];
+            var reader = new BitReader(data, HeaderLength);
+
+            long previous = 0;
+            var previousLeading = 0;
+            var previousTrailing = 0;
+            var i = 0;
+            while (i < values.Length)
+            {
+                if (reader.ReadBit() == 0)
+                {
+                    values[i++] = BitConverter.Int64BitsToDouble(previous);
+                    continue;
+                }
+                if (reader.ReadBit() == 0)
+                {
+                    var length = 64 - previousLeading - previousTrailing;
+                    previous ^= (long) (reader.ReadBits(length) << previousTrailing);
+                    values[i++] = BitConverter.Int64BitsToDouble(previous);
+                    continue;
+                }
+                if (reader.ReadBit() == 0)
+                {
+                    previousLeading = (int) reader.ReadBits(5);
+                    var length = (int) reader.ReadBits(6) + 1;
+                    previousTrailing = 64 - previousLeading - length;
+                    previous ^= (long) (reader.ReadBits(length) << previousTrailing);
+                    values[i++] = BitConverter.Int64BitsToDouble(previous);
+                    continue;
+                }
+
+                // a run of zeros or NaNs
+                previous = reader.ReadBit() == 0 ? ZeroBits : NaNBits;
+                var runLength = (int) reader.ReadBits(8) + 1;
+                var value = BitConverter.Int64BitsToDouble(previous);
+                for (var j = 0; j < runLength; j++)
+                {
+                    values[i++] = value;
+                }
+            }
+            return values;
+        }
+
+        private class BitReader
+        {
+            private readonly byte[] _buffer;
+            private int _bitPosition;
+
+            public BitReader(byte[] buffer, int byteOffset)
+            {
+                _buffer = buffer;
+                _bitPosition = byteOffset*8;
+            }
+
+            public int ReadBit()
+            {
+                var bit = (_buffer[_bitPosition >> 3] >> (7 - (_bitPosition & 7))) & 1;
+                _bitPosition++;
+                return bit;
+            }
+
+            public ulong ReadBits(int count)
+            {
+                ulong value = 0;
+                while (count > 0)
+                {
+                    var available = 8 - (_bitPosition & 7);
+                    var taken = Math.Min(available, count);
+                    var bits = (_buffer[_bitPosition >> 3] >> (available - taken)) & ((1 << taken) - 1);
+                    value = (value << taken) | (ulong) bits;
+                    _bitPosition += taken;
+                    count -= taken;
+                }
+                return value;
+            }
+        }
+    }
+}
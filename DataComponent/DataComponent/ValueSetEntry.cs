@@ -117,6 +117,10 @@ namespace KState.DataComponent
 
         public double[] Values()
         {
+            if (XorCodec.IsEncoded(DataLength))
+            {
+                return XorCodec.Decode(DataBytes);
+            }
             return ByteUtil.toDoubleA(DataBytes);
         }
     }
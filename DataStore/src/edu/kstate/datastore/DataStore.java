@@ -31,38 +31,68 @@ import com.hazelcast.monitor.LocalMapOperationStats;
 import com.hazelcast.monitor.LocalMapStats;
 import com.hazelcast.monitor.LocalQueueOperationStats;
 import com.hazelcast.monitor.LocalQueueStats;
+import edu.kstate.datastore.data.ElementSetEntry;
 import edu.kstate.datastore.data.ValueSetEntry;
 import edu.kstate.datastore.data.ValueSetRequestEntry;
 import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.listeners.ElementSetEntryListener;
 import edu.kstate.datastore.listeners.ValueSetEntryListener;
 import edu.kstate.datastore.listeners.ValueSetItemListener;
 import edu.kstate.datastore.listeners.ValueSetRequestItemListener;
 import edu.kstate.datastore.listeners.WebServiceEntryListener;
-import edu.kstate.datastore.util.Misc;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.hazelcast.HazelcastStorage;
+import edu.kstate.datastore.trace.RequestRecorder;
+import edu.kstate.datastore.trace.Tracer;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.webservice.CallExecutors;
+import edu.kstate.datastore.webservice.HttpTransport;
+import edu.kstate.datastore.webservice.HttpTransports;
+import edu.kstate.datastore.webservice.RetryPolicy;
 
 public class DataStore {
 
-    private static HazelcastInstance startInstance(int id, int port, String masterAddress, String instanceAddress, int clientCount) throws Exception {
+    private static HazelcastInstance startInstance(int id, int port, String masterAddress, String instanceAddress, int clientCount, int requestQueueCapacity, int prefetchQueueCapacity, int valueSetQueueCapacity) throws Exception {
         Config cfg = new Config();
         cfg.setPort(port);
         cfg.setPortAutoIncrement(true); // TRUE for multi-instance nodes
 
         QueueConfig queueConfig = new QueueConfig();
         queueConfig.setName("valueSetRequest");
-        queueConfig.setMaxSizePerJVM(1);
+        queueConfig.setMaxSizePerJVM(requestQueueCapacity);
         cfg.addQueueConfig(queueConfig);
-        Misc.logInfo(DataStore.class, queueConfig.toString());
+        Log.info(DataStore.class, queueConfig.toString());
+
+        queueConfig = new QueueConfig();
+        queueConfig.setName("valueSetPrefetchRequest");
+        queueConfig.setMaxSizePerJVM(prefetchQueueCapacity);
+        cfg.addQueueConfig(queueConfig);
+        Log.info(DataStore.class, queueConfig.toString());
+
+        // the requests routed to one member have their own queues, which
+        // need the same capacity or routing would remove the backpressure
+        queueConfig = new QueueConfig();
+        queueConfig.setName("valueSetRequest.*");
+        queueConfig.setMaxSizePerJVM(requestQueueCapacity);
+        cfg.addQueueConfig(queueConfig);
+        Log.info(DataStore.class, queueConfig.toString());
+
+        queueConfig = new QueueConfig();
+        queueConfig.setName("valueSetPrefetchRequest.*");
+        queueConfig.setMaxSizePerJVM(prefetchQueueCapacity);
+        cfg.addQueueConfig(queueConfig);
+        Log.info(DataStore.class, queueConfig.toString());
 
         queueConfig = new QueueConfig();
         queueConfig.setName("valueSet");
-        queueConfig.setMaxSizePerJVM(1);
+        queueConfig.setMaxSizePerJVM(valueSetQueueCapacity);
         cfg.addQueueConfig(queueConfig);
-        Misc.logInfo(DataStore.class, queueConfig.toString());
+        Log.info(DataStore.class, queueConfig.toString());
 
         NetworkConfig network = cfg.getNetworkConfig();
         Join join = network.getJoin();
         join.getMulticastConfig().setEnabled(false);
-        Misc.logInfo(DataStore.class, network.toString());
+        Log.info(DataStore.class, network.toString());
 
         // use a specific address if we were given one
         if (instanceAddress != null) {
@@ -73,11 +103,11 @@ public class DataStore {
         }
 
         if (id == 0) {
-            Misc.logInfo(DataStore.class, "Configured as master at " + masterAddress);
+            Log.info(DataStore.class, "Configured as master at " + masterAddress);
         } else {
             join.getTcpIpConfig().setRequiredMember(masterAddress + ":" + 5701);
             join.getTcpIpConfig().setEnabled(true);
-            Misc.logInfo(DataStore.class, "Connecting to master at " + masterAddress + ":" + 5701);
+            Log.info(DataStore.class, "Connecting to master at " + masterAddress + ":" + 5701);
         }
 
         // there should be the same number of client worker threads as clients
@@ -90,6 +120,11 @@ public class DataStore {
         MapConfig mapConfig = cfg.getMapConfig("valueSet");
         mapConfig.setBackupCount(0);
 
+        // the blocks can be built again from the value sets and the web
+        // services, so they aren't backed up either
+        MapConfig seriesMapConfig = cfg.getMapConfig("valueSeries");
+        seriesMapConfig.setBackupCount(0);
+
         // start the hazelcast instance
         HazelcastInstance instance = Hazelcast.newHazelcastInstance(cfg);
 
@@ -98,7 +133,7 @@ public class DataStore {
 
     private static void waitForThreadToStop(Thread thread) throws Exception {
         while (thread.isAlive() == true) {
-            Misc.logInfo(DataStore.class, "Waiting for thread to stop: " + thread.getClass());
+            Log.info(DataStore.class, "Waiting for thread to stop: " + thread.getClass());
             Thread.sleep(5000);
         }
     }
@@ -115,9 +150,43 @@ public class DataStore {
             boolean enableAssembly = false;
             long deliveryPacketSizeB = 11L * 1024L * 1024L; // 11MB
             long maxLocalValueSetMapCostB = 3L * 1024L * 1024L * 1024L; // 3GB
+            long maxLocalSeriesStoreCostB = 1L * 1024L * 1024L * 1024L; // 1GB
+            String snapshotFile = null;
+            long snapshotIntervalS = 0; // only at shutdown
+            int snapshotLoadThreadCount = 4;
+            int requestQueueCapacity = 64;
+            int prefetchQueueCapacity = 256;
+            int valueSetQueueCapacity = 64;
+            int metadataCacheCapacity = 1024;
+            boolean routeFetches = true;
+            long seriesChunkS = 86400; // one day
+            boolean compressValueSets = false; // clients need the codec to read them
+            boolean enableSeriesStore = false;
+            String interpolation = null; // e.g. Discharge=linear:900,*=nearest:3600
+            long interpolationMaxGapS = 0; // the service step, only for quantities that don't give one
+            int queueToMapWorkerCount = 4;
+            int queueToMapBatchSize = 32;
+            int maxFetchConcurrency = 64;
+            String siteCallThreads = CallExecutors.PLATFORM; // virtual needs Java 21
+            String httpTransport = HttpTransports.URL_CONNECTION;
+            boolean compressRequests = false; // the services have to accept gzip bodies
+            int fetchMaxAttempts = 4;
+            long fetchRetryDelayMs = 200;
+            long fetchMaxRetryDelayMs = 5000;
+            long fetchDeadlineMs = 60000;
+            int circuitBreakerFailureCount = 10;
+            long circuitBreakerOpenMs = 30000;
+            long failedValueSetTtlS = 60; // how long a value set of missing values is kept
+            long maxUnreadAgeS = 600; // how long expiration spares a value set no client has read
+            String logLevel = "INFO";
+            boolean logJson = false;
+            int logMaxRepeatsPerSecond = 10;
+            String traceFile = null; // tracing is off unless a file is given
+            int traceBufferSize = 65536;
+            String recordFile = null; // requests are only recorded if a file is given
 
             if (args.length % 2 != 0) {
-                Misc.logInfo(DataStore.class, "Invalid arguments");
+                Log.info(DataStore.class, "Invalid arguments");
             }
 
             int i = 0;
@@ -128,7 +197,7 @@ public class DataStore {
                 String value = args[i + 1];
                 i += 2;
 
-                Misc.logInfo(DataStore.class, "Parameter: " + option + " = " + value);
+                Log.info(DataStore.class, "Parameter: " + option + " = " + value);
 
                 if (option.equals("masterAddress") == true) {
                     masterAddress = value;
@@ -150,6 +219,10 @@ public class DataStore {
                     maxLocalValueSetMapCostB = Long.parseLong(value);
                 }
 
+                if (option.equals("maxLocalSeriesStoreCostB") == true) {
+                    maxLocalSeriesStoreCostB = Long.parseLong(value);
+                }
+
                 if (option.equals("deliveryPacketSizeB") == true) {
                     deliveryPacketSizeB = Long.parseLong(value);
                 }
@@ -157,11 +230,158 @@ public class DataStore {
                 if (option.equals("enableAssembly") == true) {
                     enableAssembly = Boolean.parseBoolean(value);
                 }
+
+                if (option.equals("snapshotFile") == true) {
+                    snapshotFile = value;
+                }
+
+                if (option.equals("snapshotIntervalS") == true) {
+                    snapshotIntervalS = Long.parseLong(value);
+                }
+
+                if (option.equals("snapshotLoadThreadCount") == true) {
+                    snapshotLoadThreadCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("requestQueueCapacity") == true) {
+                    requestQueueCapacity = Integer.parseInt(value);
+                }
+
+                if (option.equals("prefetchQueueCapacity") == true) {
+                    prefetchQueueCapacity = Integer.parseInt(value);
+                }
+
+                if (option.equals("valueSetQueueCapacity") == true) {
+                    valueSetQueueCapacity = Integer.parseInt(value);
+                }
+
+                if (option.equals("metadataCacheCapacity") == true) {
+                    metadataCacheCapacity = Integer.parseInt(value);
+                }
+
+                if (option.equals("routeFetches") == true) {
+                    routeFetches = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("seriesChunkS") == true) {
+                    seriesChunkS = Long.parseLong(value);
+                }
+
+                if (option.equals("enableSeriesStore") == true) {
+                    enableSeriesStore = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("interpolation") == true) {
+                    interpolation = value;
+                }
+
+                if (option.equals("interpolationMaxGapS") == true) {
+                    interpolationMaxGapS = Long.parseLong(value);
+                }
+
+                if (option.equals("compressValueSets") == true) {
+                    compressValueSets = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("queueToMapWorkerCount") == true) {
+                    queueToMapWorkerCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("queueToMapBatchSize") == true) {
+                    queueToMapBatchSize = Integer.parseInt(value);
+                }
+
+                if (option.equals("maxFetchConcurrency") == true) {
+                    maxFetchConcurrency = Integer.parseInt(value);
+                }
+
+                if (option.equals("siteCallThreads") == true) {
+                    siteCallThreads = value;
+                }
+
+                if (option.equals("failedValueSetTtlS") == true) {
+                    failedValueSetTtlS = Long.parseLong(value);
+                }
+
+                if (option.equals("maxUnreadAgeS") == true) {
+                    maxUnreadAgeS = Long.parseLong(value);
+                }
+
+                if (option.equals("httpTransport") == true) {
+                    httpTransport = value;
+                }
+
+                if (option.equals("compressRequests") == true) {
+                    compressRequests = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("fetchMaxAttempts") == true) {
+                    fetchMaxAttempts = Integer.parseInt(value);
+                }
+
+                if (option.equals("fetchRetryDelayMs") == true) {
+                    fetchRetryDelayMs = Long.parseLong(value);
+                }
+
+                if (option.equals("fetchMaxRetryDelayMs") == true) {
+                    fetchMaxRetryDelayMs = Long.parseLong(value);
+                }
+
+                if (option.equals("fetchDeadlineMs") == true) {
+                    fetchDeadlineMs = Long.parseLong(value);
+                }
+
+                if (option.equals("circuitBreakerFailureCount") == true) {
+                    circuitBreakerFailureCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("circuitBreakerOpenMs") == true) {
+                    circuitBreakerOpenMs = Long.parseLong(value);
+                }
+
+                if (option.equals("logLevel") == true) {
+                    logLevel = value;
+                }
+
+                if (option.equals("logFormat") == true) {
+                    logJson = value.equalsIgnoreCase("json");
+                }
+
+                if (option.equals("logMaxRepeatsPerSecond") == true) {
+                    logMaxRepeatsPerSecond = Integer.parseInt(value);
+                }
+
+                if (option.equals("traceFile") == true) {
+                    traceFile = value;
+                }
+
+                if (option.equals("traceBufferSize") == true) {
+                    traceBufferSize = Integer.parseInt(value);
+                }
+
+                if (option.equals("recordFile") == true) {
+                    recordFile = value;
+                }
             }
 
+            // setup logging
+            Log.setLevel(logLevel);
+            Log.setJson(logJson);
+            Log.setMaxRepeatsPerSecond(logMaxRepeatsPerSecond);
+
             // setup the statistics object
             Statistics.getInstance().id = String.valueOf(id);
 
+            // start recording request spans if a trace was requested
+            if (traceFile != null) {
+                Tracer.getInstance().start(traceBufferSize);
+            }
+
+            // record the incoming requests and uploads for later replay
+            if (recordFile != null) {
+                RequestRecorder.getInstance().start(recordFile);
+            }
+
             // tell non-masters to give the master a little time to start to
             // help ensure the other instances find the master
             if (id > 0) {
@@ -173,14 +393,26 @@ public class DataStore {
             int port = 5701 + id;
 
             // start the hazelcast instance and wait for any other instances to start
-            HazelcastInstance instance = startInstance(id, port, masterAddress, instanceAddress, clientCount);
+            HazelcastInstance instance = startInstance(id, port, masterAddress, instanceAddress, clientCount, requestQueueCapacity, prefetchQueueCapacity, valueSetQueueCapacity);
+
+            // the worker threads reach the maps and queues through the
+            // storage interface rather than through hazelcast directly
+            HazelcastStorage storage = new HazelcastStorage(instance, compressValueSets);
+
+            // the element set and web service entries are looked up locally,
+            // and the map listeners drop them when they change
+            MetadataCache metadataCache = new MetadataCache(storage, metadataCacheCapacity);
 
             // create the map that lists all active clients
             IMap<String, String> mapClient = instance.getMap("client");
 
+            // create the map that stores the element sets clients refer to
+            IMap<String, ElementSetEntry> mapElementSet = instance.getMap("elementSet");
+            mapElementSet.addEntryListener(new ElementSetEntryListener(metadataCache), recordFile != null);
+
             // create the map that stores web service information
             IMap<String, WebServiceEntry> mapWebService = instance.getMap("webService");
-            mapWebService.addEntryListener(new WebServiceEntryListener(), false);
+            mapWebService.addEntryListener(new WebServiceEntryListener(metadataCache), false);
 
             // create the map where the data entries are stored
             IMap<String, ValueSetEntry> mapValueSet = instance.getMap("valueSet");
@@ -188,28 +420,71 @@ public class DataStore {
 
             // create the queue that will gate access to the map
             IQueue<ValueSetEntry> queueValueSet = instance.getQueue("valueSet");
-            queueValueSet.addItemListener(new ValueSetItemListener(), false);
+            queueValueSet.addItemListener(new ValueSetItemListener(), recordFile != null);
 
-            // create the queue for value set requests
+            // create the queue for value set requests that models are
+            // waiting on
             IQueue<ValueSetRequestEntry> queueValueSetRequest = instance.getQueue("valueSetRequest");
-            queueValueSetRequest.addItemListener(new ValueSetRequestItemListener(), false);
+            queueValueSetRequest.addItemListener(new ValueSetRequestItemListener(), traceFile != null || recordFile != null);
+
+            // create the queue for speculative prefetch requests
+            IQueue<ValueSetRequestEntry> queuePrefetchRequest = instance.getQueue("valueSetPrefetchRequest");
+            queuePrefetchRequest.addItemListener(new ValueSetRequestItemListener("ValueSetPrefetchRequest", true), traceFile != null || recordFile != null);
+
+            // warm the cache with the data from the previous run before any
+            // clients connect
+            long warmStartTime = 0;
+            if (snapshotFile != null) {
+                Snapshot.load(storage, snapshotFile, snapshotLoadThreadCount, maxLocalValueSetMapCostB);
+                warmStartTime = System.currentTimeMillis();
+            }
+
+            // the fetches and the deliveries share one transport, so with the
+            // http client they share its connections too
+            HttpTransport transport = HttpTransports.create(httpTransport, compressRequests);
 
             // start the delivery thread
-            DeliveryThread deliveryThread = new DeliveryThread(instance, deliveryPacketSizeB, clientCount);
+            DeliveryThread deliveryThread = new DeliveryThread(storage, metadataCache, deliveryPacketSizeB, clientCount, seriesChunkS, transport);
             deliveryThread.start();
 
+            // the value sets are interpolated from the time steps in the
+            // series store, so there is nothing to interpolate from without it
+            Interpolation fetchInterpolation = new Interpolation(interpolation, interpolationMaxGapS);
+            if (interpolation != null && fetchInterpolation.isEnabled() == false) {
+                Log.warn(DataStore.class, "Interpolation needs the time step of each web service, value sets will be fetched instead");
+            }
+            if (fetchInterpolation.isEnabled() == true && enableSeriesStore == false) {
+                Log.warn(DataStore.class, "Interpolation needs enableSeriesStore, value sets will be fetched instead");
+            }
+
             // start the fetch thread
-            FetchThread fetchThread = new FetchThread(instance, maxLocalValueSetMapCostB, enableAssembly, clientCount);
+            RetryPolicy retryPolicy = new RetryPolicy(fetchMaxAttempts, fetchRetryDelayMs, fetchMaxRetryDelayMs, fetchDeadlineMs);
+            FetchThread fetchThread = new FetchThread(storage, metadataCache, maxLocalValueSetMapCostB, enableAssembly, clientCount, maxFetchConcurrency,
+                    retryPolicy, circuitBreakerFailureCount, circuitBreakerOpenMs, routeFetches, seriesChunkS, enableSeriesStore, fetchInterpolation,
+                    siteCallThreads, transport, failedValueSetTtlS * 1000);
             fetchThread.start();
 
             // start the queue-to-map thread
-            QueueToMapThread queueToMapThread = new QueueToMapThread(instance, maxLocalValueSetMapCostB);
+            QueueToMapThread queueToMapThread = new QueueToMapThread(storage, maxLocalValueSetMapCostB, queueToMapWorkerCount, queueToMapBatchSize, seriesChunkS, enableSeriesStore);
             queueToMapThread.start();
 
             // start the expiration thread
-            ExpirationThread expirationThread = new ExpirationThread(instance, maxLocalValueSetMapCostB);
+            ExpirationThread expirationThread = new ExpirationThread(storage, maxLocalValueSetMapCostB, warmStartTime, maxUnreadAgeS * 1000, enableSeriesStore,
+                    maxLocalSeriesStoreCostB);
             expirationThread.start();
 
+            // start the snapshot thread if periodic snapshots were requested
+            SnapshotThread snapshotThread = null;
+            if (snapshotFile != null && snapshotIntervalS > 0) {
+                snapshotThread = new SnapshotThread(storage, snapshotFile, snapshotIntervalS * 1000L);
+                snapshotThread.start();
+            }
+
+            // publish the live view of this instance over jmx
+            DataStoreMonitor monitor = new DataStoreMonitor(storage, deliveryThread, fetchThread, queueToMapThread, expirationThread,
+                    maxLocalValueSetMapCostB, deliveryPacketSizeB);
+            monitor.register();
+
             // wait for a client to connect
             while (mapClient.size() == 0) {
                 Thread.sleep(5000);
@@ -217,28 +492,34 @@ public class DataStore {
 
             // wait for all clients to complete
             while (mapClient.size() > 0) {
-                Misc.logInfo(DataStore.class, "Active clients: " + mapClient.size());
+                Log.info(DataStore.class, "Active clients: " + mapClient.size());
 
                 double mapValueSetOps = calculateOpsPerSecond(mapValueSet.getLocalMapStats());
                 double mapWebServiceOps = calculateOpsPerSecond(mapWebService.getLocalMapStats());
                 double queueValueSetOps = calculateOpsPerSecond(queueValueSet.getLocalQueueStats());
                 double queueValueSetRequestOps = calculateOpsPerSecond(queueValueSetRequest.getLocalQueueStats());
+                double queuePrefetchRequestOps = calculateOpsPerSecond(queuePrefetchRequest.getLocalQueueStats());
 
-                Misc.logInfo(DataStore.class, String.format("MapValueSetOpsPerSec:      %.2f", mapValueSetOps));
-                Misc.logInfo(DataStore.class, String.format("MapWebServiceOpsPerSec:    %.2f", mapWebServiceOps));
-                Misc.logInfo(DataStore.class, String.format("QueueValueSetOpsPerSec:    %.2f", queueValueSetOps));
-                Misc.logInfo(DataStore.class, String.format("QueueValueSetReqOpsPerSec: %.2f", queueValueSetRequestOps));
+                Log.info(DataStore.class, "MapValueSetOpsPerSec:      %.2f", mapValueSetOps);
+                Log.info(DataStore.class, "MapWebServiceOpsPerSec:    %.2f", mapWebServiceOps);
+                Log.info(DataStore.class, "QueueValueSetOpsPerSec:    %.2f", queueValueSetOps);
+                Log.info(DataStore.class, "QueueValueSetReqOpsPerSec: %.2f", queueValueSetRequestOps);
+                Log.info(DataStore.class, "QueuePrefetchReqOpsPerSec: %.2f", queuePrefetchRequestOps);
 
                 Statistics.getInstance().add("MapValueSetOpsPerSec", mapValueSetOps);
                 Statistics.getInstance().add("MapWebServiceOpsPerSec", mapWebServiceOps);
                 Statistics.getInstance().add("QueueValueSetOpsPerSec", queueValueSetOps);
                 Statistics.getInstance().add("QueueValueSetRequestOpsPerSec", queueValueSetRequestOps);
+                Statistics.getInstance().add("QueuePrefetchRequestOpsPerSec", queuePrefetchRequestOps);
 
-                Misc.logInfo(DataStore.class, Statistics.getInstance().toCsv().toString());
+                Log.info(DataStore.class, Statistics.getInstance().toCsv().toString());
                 Thread.sleep(60000);
             }
 
-            Misc.logInfo(DataStore.class, "No active clients, starting shutdown");
+            Log.info(DataStore.class, "No active clients, starting shutdown");
+
+            // the clients are done, so nothing more will be recorded
+            RequestRecorder.getInstance().stop();
 
             // ask the delivery thread to stop and wait for it
             deliveryThread.requestStop();
@@ -256,17 +537,37 @@ public class DataStore {
             expirationThread.requestStop();
             waitForThreadToStop(expirationThread);
 
+            // ask the snapshot thread to stop and wait for it
+            if (snapshotThread != null) {
+                snapshotThread.requestStop();
+                waitForThreadToStop(snapshotThread);
+            }
+
+            // save the cache for the next run now that nothing else is
+            // changing the maps
+            if (snapshotFile != null) {
+                Snapshot.write(storage, snapshotFile);
+            }
+
+            monitor.unregister();
+
             // generate a csv of the statistics
             Statistics.getInstance().writeCsv("DataStoreProfile.csv");
 
+            // write the request spans
+            if (traceFile != null) {
+                Tracer.getInstance().writeChromeTrace(traceFile, String.valueOf(id));
+            }
+
         } catch (Exception e) {
 
-            Misc.logInfo(DataStore.class, "Exception in event loop");
-            Misc.logException(DataStore.class, e);
+            Log.info(DataStore.class, "Exception in event loop");
+            Log.error(DataStore.class, e);
         }
 
-        Misc.logInfo(DataStore.class, "Hazelcast.shutdownAll");
+        Log.info(DataStore.class, "Hazelcast.shutdownAll");
         Hazelcast.shutdownAll();
+        Log.flush(5000);
     }
 
     private static double calculateOpsPerSecond(LocalMapStats mapStats) {
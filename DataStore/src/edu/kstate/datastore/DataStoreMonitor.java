@@ -0,0 +1,222 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.trace.Tracer;
+import edu.kstate.datastore.util.Log;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+public class DataStoreMonitor implements DataStoreMonitorMXBean {
+
+    private Storage storage;
+    private DeliveryThread deliveryThread;
+    private FetchThread fetchThread;
+    private QueueToMapThread queueToMapThread;
+    private ExpirationThread expirationThread;
+    private volatile long maxLocalValueSetMapCostB;
+    private volatile long deliveryPacketSizeB;
+    private ObjectName objectName;
+
+    private long lastEvictedValueSetCount;
+    private long lastEvictionRateTime = System.currentTimeMillis();
+
+    public DataStoreMonitor(Storage storage, DeliveryThread deliveryThread, FetchThread fetchThread, QueueToMapThread queueToMapThread,
+                            ExpirationThread expirationThread, long maxLocalValueSetMapCostB, long deliveryPacketSizeB) {
+        this.storage = storage;
+        this.deliveryThread = deliveryThread;
+        this.fetchThread = fetchThread;
+        this.queueToMapThread = queueToMapThread;
+        this.expirationThread = expirationThread;
+        this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
+        this.deliveryPacketSizeB = deliveryPacketSizeB;
+    }
+
+    public void register() throws Exception {
+        this.objectName = new ObjectName("edu.kstate.datastore:type=DataStore,id=" + getId());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+        Log.info(this.getClass(), "Registered " + this.objectName);
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (Exception e) {
+            Log.error(this.getClass(), e);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return Statistics.getInstance().id;
+    }
+
+    @Override
+    public int getActiveClientCount() {
+        return this.storage.getClientRegistry().size();
+    }
+
+    @Override
+    public long getValueSetCount() {
+        return this.storage.getValueSetStore().getLocalEntryCount();
+    }
+
+    @Override
+    public long getValueSetMapCostB() {
+        return this.storage.getValueSetStore().getLocalCostB();
+    }
+
+    @Override
+    public long getSeriesBlockCount() {
+        return this.storage.getSeriesStore().getLocalEntryCount();
+    }
+
+    @Override
+    public long getSeriesStoreCostB() {
+        return this.storage.getSeriesStore().getLocalCostB();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = this.storage.getValueSetStore().getLocalHits();
+        long misses = Statistics.getInstance().getMetric("Fetch-Demand-Request-Count").getCount();
+        if (hits + misses == 0) {
+            return 0;
+        }
+        return hits / (double) (hits + misses);
+    }
+
+    @Override
+    public int getValueSetRequestQueueDepth() {
+        return this.storage.getRequestQueue().size();
+    }
+
+    @Override
+    public int getPrefetchRequestQueueDepth() {
+        return this.storage.getPrefetchRequestQueue().size();
+    }
+
+    @Override
+    public int getValueSetQueueDepth() {
+        return this.storage.getUploadQueue().size();
+    }
+
+    @Override
+    public int getActiveFetchCount() {
+        return this.fetchThread.getActiveFetchCount();
+    }
+
+    @Override
+    public Map<String, Integer> getInFlightWebCalls() {
+        return this.fetchThread.getInFlightCounts();
+    }
+
+    @Override
+    public Map<String, Integer> getWebServiceConcurrencyLimits() {
+        return this.fetchThread.getConcurrencyLimits();
+    }
+
+    @Override
+    public long getEvictedValueSetCount() {
+        return (long) Statistics.getInstance().getMetric("Expiration-ValueSet-Count").getSum();
+    }
+
+    @Override
+    public synchronized double getEvictionRatePerSecond() {
+        long now = System.currentTimeMillis();
+        long evictedValueSetCount = getEvictedValueSetCount();
+        double rate = 0;
+        if (now > this.lastEvictionRateTime) {
+            rate = (evictedValueSetCount - this.lastEvictedValueSetCount) / ((now - this.lastEvictionRateTime) / 1000.0);
+        }
+        this.lastEvictedValueSetCount = evictedValueSetCount;
+        this.lastEvictionRateTime = now;
+        return rate;
+    }
+
+    @Override
+    public long getDeliveryBacklogB() {
+        return this.deliveryThread.getBacklogB();
+    }
+
+    @Override
+    public long getResidenceTimeP50Ms() {
+        return Statistics.getInstance().getMetric("Buffer-TimeResidence-MS").getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public long getResidenceTimeP99Ms() {
+        return Statistics.getInstance().getMetric("Buffer-TimeResidence-MS").getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getResidenceTimeP999Ms() {
+        return Statistics.getInstance().getMetric("Buffer-TimeResidence-MS").getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxLocalValueSetMapCostB() {
+        return this.maxLocalValueSetMapCostB;
+    }
+
+    @Override
+    public void setMaxLocalValueSetMapCostB(long maxLocalValueSetMapCostB) {
+        if (maxLocalValueSetMapCostB <= 0) {
+            throw new IllegalArgumentException("maxLocalValueSetMapCostB must be positive");
+        }
+        Log.info(this.getClass(), "maxLocalValueSetMapCostB changed to " + maxLocalValueSetMapCostB);
+        this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
+        this.fetchThread.setMaxLocalValueSetMapCostB(maxLocalValueSetMapCostB);
+        this.queueToMapThread.setMaxLocalValueSetMapCostB(maxLocalValueSetMapCostB);
+        this.expirationThread.setMaxLocalValueSetMapCostB(maxLocalValueSetMapCostB);
+    }
+
+    @Override
+    public long getDeliveryPacketSizeB() {
+        return this.deliveryPacketSizeB;
+    }
+
+    @Override
+    public void setDeliveryPacketSizeB(long deliveryPacketSizeB) {
+        if (deliveryPacketSizeB <= 0) {
+            throw new IllegalArgumentException("deliveryPacketSizeB must be positive");
+        }
+        Log.info(this.getClass(), "deliveryPacketSizeB changed to " + deliveryPacketSizeB);
+        this.deliveryPacketSizeB = deliveryPacketSizeB;
+        this.deliveryThread.setDeliveryPacketSizeB(deliveryPacketSizeB);
+    }
+
+    @Override
+    public String getStatisticsCsv() throws Exception {
+        return Statistics.getInstance().toCsv().toString();
+    }
+
+    @Override
+    public void writeTrace(String filename) throws Exception {
+        Tracer.getInstance().writeChromeTrace(filename, getId());
+    }
+}
@@ -0,0 +1,102 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import java.util.Map;
+
+/**
+ * The live view of a running data store instance that is published over
+ * JMX. Connect with jconsole or any other JMX client; start the instance
+ * with the usual com.sun.management.jmxremote options to watch it from
+ * another machine.
+ */
+public interface DataStoreMonitorMXBean {
+
+    String getId();
+
+    int getActiveClientCount();
+
+    long getValueSetCount();
+
+    long getValueSetMapCostB();
+
+    long getSeriesBlockCount();
+
+    long getSeriesStoreCostB();
+
+    /**
+     * The fraction of value set lookups answered from the cache since the
+     * instance started, counting hits on the value sets this instance owns
+     * against the demand requests this instance fetched.
+     */
+    double getCacheHitRatio();
+
+    int getValueSetRequestQueueDepth();
+
+    int getPrefetchRequestQueueDepth();
+
+    int getValueSetQueueDepth();
+
+    int getActiveFetchCount();
+
+    Map<String, Integer> getInFlightWebCalls();
+
+    Map<String, Integer> getWebServiceConcurrencyLimits();
+
+    long getEvictedValueSetCount();
+
+    /**
+     * The number of value sets expired per second since this attribute was
+     * last read.
+     */
+    double getEvictionRatePerSecond();
+
+    long getDeliveryBacklogB();
+
+    long getResidenceTimeP50Ms();
+
+    long getResidenceTimeP99Ms();
+
+    long getResidenceTimeP999Ms();
+
+    long getMaxLocalValueSetMapCostB();
+
+    void setMaxLocalValueSetMapCostB(long maxLocalValueSetMapCostB);
+
+    long getDeliveryPacketSizeB();
+
+    void setDeliveryPacketSizeB(long deliveryPacketSizeB);
+
+    /**
+     * Returns the same report that is written to DataStoreProfile.csv at
+     * shutdown.
+     */
+    String getStatisticsCsv() throws Exception;
+
+    /**
+     * Writes the request spans recorded so far as a Chrome trace. Tracing
+     * must have been enabled with the traceFile option.
+     */
+    void writeTrace(String filename) throws Exception;
+}
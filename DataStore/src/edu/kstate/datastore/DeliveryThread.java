@@ -22,72 +22,90 @@
 
 package edu.kstate.datastore;
 
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.MapEntry;
 import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.SeriesKey;
 import edu.kstate.datastore.data.ValueSetEntry;
 import edu.kstate.datastore.data.WebServiceEntry;
-import edu.kstate.datastore.util.Misc;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.webservice.HttpTransport;
 import edu.kstate.datastore.webservice.simplerest.SimpleRestService;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class DeliveryThread extends Thread {
 
-    private HazelcastInstance instance;
+    private Storage storage;
+    private MetadataCache metadataCache;
     private ThreadPoolExecutor threadPool;
-    private boolean stopRequested;
-    private long deliveryPacketSizeB;
-
-    public DeliveryThread(HazelcastInstance instance, long deliveryPacketSizeB, int clientCount) {
-        this.instance = instance;
+    private volatile boolean stopRequested;
+    // the estimated size of one value once it is serialized for delivery
+    // TODO: should come from the web service entry
+    public static final int SERIALIZED_VALUE_SIZE_B = 49;
+
+    private volatile long deliveryPacketSizeB;
+    private volatile long backlogValueCount;
+    private long seriesChunkS;
+    private HttpTransport transport;
+
+    // the keys of the value sets that have been gathered but not yet
+    // delivered. their upload markers are kept until the send succeeds, so
+    // these are skipped when gathering instead.
+    private Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Each member only delivers the uploads it owns, and a send takes all
+     * of them that fall in the same chunk of a series (seriesChunkS of
+     * time), so a chunk is delivered by as few calls as possible.
+     */
+    public DeliveryThread(Storage storage, MetadataCache metadataCache, long deliveryPacketSizeB, int clientCount, long seriesChunkS, HttpTransport transport) {
+        this.storage = storage;
+        this.transport = transport;
+        this.seriesChunkS = seriesChunkS;
+        this.metadataCache = metadataCache;
         this.deliveryPacketSizeB = deliveryPacketSizeB;
         this.threadPool = new ThreadPoolExecutor(clientCount, clientCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(clientCount));
     }
 
-    public void requestStop() {
-        Misc.logInfo(this.getClass(), "Stop Requested");
-        this.stopRequested = true;
+    /**
+     * Changes how much data is collected before it is delivered. Takes
+     * effect on the next pass over the map.
+     */
+    public void setDeliveryPacketSizeB(long deliveryPacketSizeB) {
+        this.deliveryPacketSizeB = deliveryPacketSizeB;
     }
 
-    private HashMap<String, ElementSetEntry> cacheElementSet = new HashMap<String, ElementSetEntry>();
-    private HashMap<String, WebServiceEntry> cacheWebService = new HashMap<String, WebServiceEntry>();
-
-    private ElementSetEntry getElementSetEntry(String id) {
-        if(cacheElementSet.containsKey(id) == true) {
-            return cacheElementSet.get(id);
-        }
-        else {
-            IMap<String, ElementSetEntry> distributedMap = this.instance.getMap("elementSet");
-            ElementSetEntry entry = distributedMap.get(id);
-            cacheElementSet.put(id, entry);
-            return entry;
-        }
+    /**
+     * Returns the estimated serialized size of the value sets that have
+     * been gathered but not yet sent.
+     */
+    public long getBacklogB() {
+        return this.backlogValueCount * SERIALIZED_VALUE_SIZE_B;
     }
 
-    private WebServiceEntry getWebServiceEntry(String id) {
-        if(cacheWebService.containsKey(id) == true) {
-            return cacheWebService.get(id);
-        }
-        else {
-            IMap<String, WebServiceEntry> distributedMap = this.instance.getMap("webService");
-            WebServiceEntry entry = distributedMap.get(id);
-            cacheWebService.put(id, entry);
-            return entry;
-        }
+    public void requestStop() {
+        Log.info(this.getClass(), "Stop Requested");
+        this.stopRequested = true;
     }
 
     private void eventLoop() throws Exception {
 
-        IMap<String, ValueSetEntry> mapValueSet = this.instance.getMap("valueSet");
+        ValueSetStore mapValueSet = this.storage.getValueSetStore();
+        Registry<Long> uploadRegistry = this.storage.getUploadRegistry();
         PriorityBlockingQueue<QueueItem> priorityBlockingQueue = new PriorityBlockingQueue<QueueItem>();
 
         int noEntriesDelay = 1000;
@@ -102,47 +120,56 @@ public class DeliveryThread extends Thread {
             if (stopRequested == true) {
                 int entriesInQueue = priorityBlockingQueue.size();
                 if (entriesInQueue == 0) {
-                    Misc.logInfo(this.getClass(), "Stop requested and no entries left to deliver");
+                    Log.info(this.getClass(), "Stop requested and no entries left to deliver");
                     threadPool.shutdown();
                     break;
                 } else {
-                    Misc.logInfo(this.getClass(), "Stop requested but " + entriesInQueue + " left in queue");
+                    Log.info(this.getClass(), "Stop requested but " + entriesInQueue + " left in queue");
                 }
             }
 
             // TODO: FIX THIS so that it gathers value sets per web service,
             // right now it assumes there is only one web service.
 
-            // make a pass over the local map and update our priority queue.
-            // a full pass takes time (have seen up to 250 ms with 40k entries
-            // on a busy core) so we don't want to do this too much. any unsent
-            // entries that are found are marked as sent in the map and added
-            // to our priority queue.
-            Misc.logInfo(this.getClass(), "Start gather");
+            // make a pass over the local upload markers and update our
+            // priority queue. only the value sets that are still unsent are
+            // read. a marker is removed once its value set has been
+            // delivered, so the values are never written back to the map
+            // and a failed send is gathered again on a later pass.
+            Log.debug(this.getClass(), "Start gather");
             long startGather = System.currentTimeMillis();
-            Set<String> localKeys = mapValueSet.localKeySet();
+            Set<String> localKeys = uploadRegistry.localKeySet();
+            HashMap<String, Long> queuedMsByKey = new HashMap<String, Long>();
             for (String key : localKeys) {
-                ValueSetEntry entry = mapValueSet.get(key);
-                if (entry == null) {
+                if (this.pendingKeys.contains(key) == true) {
                     continue;
                 }
-                if (entry.getNeedsUpload() == false) {
+                Long queuedMs = uploadRegistry.get(key);
+                if (queuedMs == null) {
                     continue;
                 }
-                MapEntry<String, ValueSetEntry> mapEntry = mapValueSet.getMapEntry(key);
-                if (mapEntry != null) {
-
-                    // mark the entry as not needing uploading in the value set map
-                    ValueSetEntry unsentEntry = mapEntry.getValue();
-                    unsentEntry.setNeedsUpload(false);
-                    mapValueSet.put(key, unsentEntry);
+                queuedMsByKey.put(key, queuedMs);
+            }
 
-                    // add the entry to our priority queue
-                    priorityBlockingQueue.add(new QueueItem(mapEntry.getCreationTime(), mapEntry.getValue()));
+            // the value sets are peeked at in one batch, which reads them
+            // without counting hits the clients didn't make
+            Map<String, ValueSetEntry> entries = mapValueSet.peekAll(queuedMsByKey.keySet());
+            for (Map.Entry<String, Long> nextKey : queuedMsByKey.entrySet()) {
+                String key = nextKey.getKey();
+                ValueSetEntry entry = entries.get(key);
+                if (entry == null) {
+                    Log.warn(this.getClass(), "Value set to upload is missing: " + key);
+                    uploadRegistry.remove(key);
+                    continue;
                 }
+
+                // add the entry to our priority queue
+                this.pendingKeys.add(key);
+                priorityBlockingQueue.add(new QueueItem(nextKey.getValue(), entry));
+                backlogValueCount += entry.getValueCount();
             }
             long gatherMs = System.currentTimeMillis() - startGather;
-            Misc.logInfo(this.getClass(), String.format("Stop gather (%d MS)", gatherMs));
+            Log.debug(this.getClass(), "Stop gather (%d MS)", gatherMs);
             Statistics.getInstance().add("Delivery-GatherMS", gatherMs);
 
             // NOTE: we could also just encode the value sets on the fly so
@@ -158,12 +185,11 @@ public class DeliveryThread extends Thread {
             while(i.hasNext() == true) {
                 QueueItem nextItem = (QueueItem)i.next();
                 setCount += 1;
-                elementCount += nextItem.getEntry().getValues().length;
+                elementCount += nextItem.getEntry().getValueCount();
 
                 // assume each entry is serialized to 49 bytes and we want to
-                // send 11 MB in each web service call - TODO: multiplier
-                // should come from the web service entry
-                if(elementCount * 49 >= deliveryPacketSizeB) {
+                // send 11 MB in each web service call
+                if((long)elementCount * SERIALIZED_VALUE_SIZE_B >= deliveryPacketSizeB) {
                     isEnoughToSend = true;
                     break;
                 }
@@ -178,8 +204,9 @@ public class DeliveryThread extends Thread {
                 // queue. the drainTo method will return them in sorted order.
                 final ArrayList<QueueItem> entriesToSend = new ArrayList<QueueItem>();
                 priorityBlockingQueue.drainTo(entriesToSend, setCount);
+                drainRestOfSeries(priorityBlockingQueue, entriesToSend);
 
-                Misc.logInfo(this.getClass(), String.format("Sending:%d(WebQ:%d)", entriesToSend.size(), this.threadPool.getQueue().size()));
+                Log.debug(this.getClass(), "Sending:%d(WebQ:%d)", entriesToSend.size(), this.threadPool.getQueue().size());
 
                 // record some statistics
                 Statistics.getInstance().add("Delivery-SetValues-Call-Count", 1);
@@ -188,9 +215,10 @@ public class DeliveryThread extends Thread {
                 // record the number of individual values we upload
                 int totalValueCount = 0;
                 for (QueueItem nextQueueItem : entriesToSend) {
-                    totalValueCount += nextQueueItem.getEntry().getValues().length;
+                    totalValueCount += nextQueueItem.getEntry().getValueCount();
                 }
                 Statistics.getInstance().add("Delivery-SetValues-Value-Count", totalValueCount);
+                backlogValueCount -= totalValueCount;
 
                 // record how long each entry was in the buffer. the residence
                 // time is the duration from when the entry was added to when
@@ -206,23 +234,23 @@ public class DeliveryThread extends Thread {
                 // value sets
                 final HashMap<String, String[]> elementSetIds = new HashMap<String, String[]>();
                 for (QueueItem nextQueueItem : entriesToSend) {
-                    ElementSetEntry elementSetEntry = getElementSetEntry(nextQueueItem.getEntry().getElementSetId());
+                    ElementSetEntry elementSetEntry = this.metadataCache.getElementSet(nextQueueItem.getEntry().getElementSetId());
                     elementSetIds.put(elementSetEntry.getElementSetId(), elementSetEntry.getElementIds());
                 }
 
-                final WebServiceEntry webServiceEntry = getWebServiceEntry("TestWebService");
+                final WebServiceEntry webServiceEntry = this.metadataCache.getWebService("TestWebService");
 
                 // create a runnable task
                 Runnable task = new Runnable() {
                     @Override
                     public void run() {
-                        performDelivery(elementSetIds, webServiceEntry, entriesToSend);
+                        performDelivery(transport, elementSetIds, webServiceEntry, entriesToSend);
                     }
                 };
 
                 // wait here until we have a thread to handle the send
                 while (threadPool.getQueue().remainingCapacity() == 0) {
-                    Misc.logInfo(this.getClass(), "Too many active, paused delivery");
+                    Log.debug(this.getClass(), "Too many active, paused delivery");
                     Thread.sleep(2000);
                 }
 
@@ -235,28 +263,68 @@ public class DeliveryThread extends Thread {
             } else {
 
                 // if we didn't find enough entries to send something then pause
-                Misc.logInfo(this.getClass(), String.format("Not enough entries to send(%d), paused delivery (%d)", priorityBlockingQueue.size(), noEntriesDelay));
+                Log.debug(this.getClass(), "Not enough entries to send(%d), paused delivery (%d)", priorityBlockingQueue.size(), noEntriesDelay);
                 Thread.sleep(noEntriesDelay);
                 noEntriesDelay = Math.min(noEntriesDelay * 2, 60000); // exponential backoff bounded at 60 sec
             }
         }
     }
 
-    private static void performDelivery(HashMap<String, String[]> elementIds, WebServiceEntry webServiceEntry, ArrayList<QueueItem> queueEntries) {
+    /**
+     * Moves the queued value sets that share a series chunk with one being
+     * sent into the same send.
+     */
+    private void drainRestOfSeries(PriorityBlockingQueue<QueueItem> priorityBlockingQueue, ArrayList<QueueItem> entriesToSend) {
+        try {
+            HashSet<SeriesKey> seriesKeys = new HashSet<SeriesKey>();
+            for (QueueItem nextQueueItem : entriesToSend) {
+                seriesKeys.add(SeriesKey.create(nextQueueItem.getEntry(), this.seriesChunkS));
+            }
+            Iterator<QueueItem> i = priorityBlockingQueue.iterator();
+            while (i.hasNext() == true) {
+                QueueItem nextItem = i.next();
+                if (seriesKeys.contains(SeriesKey.create(nextItem.getEntry(), this.seriesChunkS)) == true) {
+                    i.remove();
+                    entriesToSend.add(nextItem);
+                }
+            }
+        } catch (Exception e) {
+            Log.warn(this.getClass(), "Unable to group value sets by series: " + e.getMessage());
+        }
+    }
+
+    private void performDelivery(HttpTransport transport, HashMap<String, String[]> elementIds, WebServiceEntry webServiceEntry, ArrayList<QueueItem> queueEntries) {
 
         final ArrayList<ValueSetEntry> entries = new ArrayList<ValueSetEntry>();
         for (QueueItem nextQueueItem : queueEntries) {
             entries.add(nextQueueItem.getEntry());
         }
 
+        Registry<Long> uploadRegistry = this.storage.getUploadRegistry();
         try {
-            SimpleRestService.setValuesSync(elementIds, webServiceEntry.getUrl() + "/set", entries);
+            SimpleRestService.setValues(transport, elementIds, webServiceEntry.getUrl() + "/set", entries);
         } catch (Exception e) {
 
-            // if the send operation fails, we need to put the
-            // entries back into the map. we assume failure is
-            // uncommon.
-            Misc.logException(DeliveryThread.class, e);
+            // the markers are still there, so the value sets are gathered
+            // and sent again on a later pass. once a stop is requested
+            // they're left for the next run instead, so an unavailable
+            // service can't keep the thread from stopping.
+            Log.error(DeliveryThread.class, e);
+            Statistics.getInstance().add("Delivery-SetValues-Failed-Count", 1);
+            if (this.stopRequested == false) {
+                for (ValueSetEntry nextEntry : entries) {
+                    this.pendingKeys.remove(ValueSetEntry.createKey(nextEntry));
+                }
+            }
+            return;
+        }
+
+        // the value sets have been delivered, so they no longer need to be
+        // uploaded
+        for (ValueSetEntry nextEntry : entries) {
+            String key = ValueSetEntry.createKey(nextEntry);
+            uploadRegistry.remove(key);
+            this.pendingKeys.remove(key);
         }
 
         // record the total time from when an entry was added to
@@ -272,9 +340,9 @@ public class DeliveryThread extends Thread {
         try {
             this.eventLoop();
         } catch (Exception e) {
-            Misc.logException(this.getClass(), e);
+            Log.error(this.getClass(), e);
         }
-        Misc.logInfo(this.getClass(), "Stopped");
+        Log.info(this.getClass(), "Stopped");
     }
 
     private class QueueItem implements Comparable {
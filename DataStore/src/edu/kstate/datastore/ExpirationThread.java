@@ -22,29 +22,61 @@
 
 package edu.kstate.datastore;
 
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.MapEntry;
+import edu.kstate.datastore.data.SeriesKey;
 import edu.kstate.datastore.data.ValueSetEntry;
-import edu.kstate.datastore.util.Misc;
-
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.StoredValueSet;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.concurrent.PriorityBlockingQueue;
 
 public class ExpirationThread extends Thread {
 
-    private HazelcastInstance instance;
-    private long maxLocalValueSetMapCostB;
+    private Storage storage;
+    private volatile long maxLocalValueSetMapCostB;
     private boolean stopRequested;
+    private long warmStartTime;
+    private long maxUnreadAgeMs;
+    private boolean enableSeriesStore;
+    private long maxLocalSeriesStoreCostB;
+
+    /**
+     * The warm start time is when the snapshot finished loading (or zero if
+     * none was loaded). Entries created before then came from the snapshot,
+     * so they may be expired even if they have never been accessed. Other
+     * entries no client has read yet are prefetched values waiting to be
+     * used, and are spared until they are maxUnreadAgeMs old, so values
+     * that are never read can't fill the map and keep fetching paused. With
+     * the series store enabled its blocks are kept to their own limit, and
+     * are expired whole, oldest first.
+     */
+    public ExpirationThread(Storage storage, long maxLocalValueSetMapCostB, long warmStartTime, long maxUnreadAgeMs, boolean enableSeriesStore,
+                            long maxLocalSeriesStoreCostB) {
+        Log.info(this.getClass(), "Start");
+        this.storage = storage;
+        this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
+        this.warmStartTime = warmStartTime;
+        this.maxUnreadAgeMs = maxUnreadAgeMs;
+        this.enableSeriesStore = enableSeriesStore;
+        this.maxLocalSeriesStoreCostB = maxLocalSeriesStoreCostB;
+    }
 
-    public ExpirationThread(HazelcastInstance instance, long maxLocalValueSetMapCostB) {
-        Misc.logInfo(this.getClass(), "Start");
-        this.instance = instance;
+    /**
+     * Changes the most memory the local portion of the value set map may
+     * use. Takes effect the next time the limit is checked.
+     */
+    public void setMaxLocalValueSetMapCostB(long maxLocalValueSetMapCostB) {
         this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
     }
 
     public void requestStop() {
-        Misc.logInfo(this.getClass(), "Stop");
+        Log.info(this.getClass(), "Stop");
         this.stopRequested = true;
     }
 
@@ -91,9 +123,10 @@ public class ExpirationThread extends Thread {
 
     public void run() {
         try {
-            Misc.logInfo(this.getClass(), "Started");
+            Log.info(this.getClass(), "Started");
 
-            IMap<String, ValueSetEntry> mapValueSet = this.instance.getMap("valueSet");
+            ValueSetStore mapValueSet = this.storage.getValueSetStore();
+            Registry<Long> uploadRegistry = this.storage.getUploadRegistry();
 
             while (true) {
 
@@ -102,12 +135,13 @@ public class ExpirationThread extends Thread {
                     String key = nextLeastAccessedDate();
                     mapValueSet.remove(key);
 
-                    Misc.logInfo(this.getClass(), "Removed: " + key);
+                    Log.info(this.getClass(), "Removed: " + key);
                 }*/
 
                 // if we're over 90% full then perform an expiration
-                double percentFull = mapValueSet.getLocalMapStats().getOwnedEntryMemoryCost() / (double)maxLocalValueSetMapCostB;
-                Misc.logInfo(this.getClass(), String.format("Map is %d%% full", (int)(percentFull * 100.0)));
+                long localCostB = mapValueSet.getLocalCostB();
+                double percentFull = localCostB / (double)maxLocalValueSetMapCostB;
+                Log.debug(this.getClass(), "Map is %d%% full", (int)(percentFull * 100.0));
 
                 if (percentFull > 0.90) {
 
@@ -118,54 +152,67 @@ public class ExpirationThread extends Thread {
                     // on a busy core) so we don't want to do this too much. any unsent
                     // entries that are found are marked as sent in the map and added
                     // to our priority queue.
-                    Misc.logInfo(this.getClass(), "Start gather");
+                    Log.debug(this.getClass(), "Start gather");
                     long startGather = System.currentTimeMillis();
                     Set<String> localKeys = mapValueSet.localKeySet();
+                    long unreadCutoffTime = startGather - this.maxUnreadAgeMs;
                     for (String key : localKeys) {
-                        ValueSetEntry entry = mapValueSet.get(key);
-                        if (entry == null) {
-                            continue;
-                        }
 
-                        // skip ones that haven't been uploaded yet
-                        if (entry.getNeedsUpload() == true) {
+                        // skip ones that haven't been uploaded yet, the
+                        // marker is on this member along with the value set
+                        if (uploadRegistry.containsKey(key) == true) {
                             continue;
                         }
 
-                        MapEntry<String, ValueSetEntry> mapEntry = mapValueSet.getMapEntry(key);
+                        StoredValueSet mapEntry = mapValueSet.getStored(key);
                         if (mapEntry != null) {
 
-                            // skip ones that haven't been accessed yet
-                            if(mapEntry.getHits() == 0) {
+                            // skip ones that haven't been accessed yet, unless
+                            // they were loaded from a snapshot or have gone
+                            // unread for too long
+                            if(mapEntry.getHits() == 0 && mapEntry.getCreationTime() > warmStartTime && mapEntry.getCreationTime() > unreadCutoffTime) {
                                 continue;
                             }
 
                             // add the entry to our priority queue
-                            priorityBlockingQueue.add(new QueueItem(mapEntry.getKey(), mapEntry.getHits(), mapEntry.getCreationTime(), mapEntry.getCost()));
+                            priorityBlockingQueue.add(new QueueItem(mapEntry.getKey(), mapEntry.getHits(), mapEntry.getCreationTime(), mapEntry.getCostB()));
                         }
                     }
                     long gatherMs = System.currentTimeMillis() - startGather;
-                    Misc.logInfo(this.getClass(), String.format("Stop gather (%d MS)", gatherMs));
+                    Log.debug(this.getClass(), "Stop gather (%d MS)", gatherMs);
                     Statistics.getInstance().add("Expiration-GatherMS", gatherMs);
 
                     // if we found any to expire then expire at most 10% of the
                     // memory
+                    long maxMemoryToExpireB = (long) (localCostB * 0.10);
+                    long memoryExpiredB = 0;
                     if (priorityBlockingQueue.size() > 0) {
-                        long maxMemoryToExpireB = (long) (mapValueSet.getLocalMapStats().getOwnedEntryMemoryCost() * 0.10);
-                        Misc.logInfo(this.getClass(), String.format("Found %d entries to expire, expiring %dB", priorityBlockingQueue.size(), maxMemoryToExpireB));
+                        Log.info(this.getClass(), "Found %d entries to expire, expiring %dB", priorityBlockingQueue.size(), maxMemoryToExpireB);
                         Statistics.getInstance().add("Expiration-Event", 1);
 
-                        long memoryExpiredB = 0;
-                        while (memoryExpiredB <= maxMemoryToExpireB && priorityBlockingQueue.size() > 0) {
-                            QueueItem nextItem = priorityBlockingQueue.poll();
+                        int expiredCount = 0;
+                        for (QueueItem nextItem : selectForExpiration(priorityBlockingQueue, maxMemoryToExpireB)) {
                             mapValueSet.remove(nextItem.getValueSetKey());
                             memoryExpiredB += nextItem.getMemoryCost();
+                            expiredCount++;
 
-                            //Misc.logInfo(this.getClass(), String.format("Expired: %s", nextItem.getValueSetKey()));
+                            //Log.info(this.getClass(), String.format("Expired: %s", nextItem.getValueSetKey()));
                         }
+
+                        Statistics.getInstance().add("Expiration-ValueSet-Count", expiredCount);
+                        Statistics.getInstance().add("Expiration-Byte", memoryExpiredB);
                     }
                     else {
-                        Misc.logInfo(this.getClass(), String.format("Found no entries to expire"));
+                        Log.info(this.getClass(), "Found no entries to expire");
+                    }
+                }
+
+                // the series blocks are checked the same way against their
+                // own limit
+                if (this.enableSeriesStore == true) {
+                    long seriesCostB = this.storage.getSeriesStore().getLocalCostB();
+                    if (seriesCostB / (double)maxLocalSeriesStoreCostB > 0.90) {
+                        expireSeries((long) (seriesCostB * 0.10));
                     }
                 }
 
@@ -177,13 +224,59 @@ public class ExpirationThread extends Thread {
                 }
             }
         } catch (Exception e) {
-            Misc.logException(this.getClass(), e);
+            Log.error(this.getClass(), e);
         }
 
-        Misc.logInfo(this.getClass(), "Stopped");
+        Log.info(this.getClass(), "Stopped");
+    }
+
+    /**
+     * Expires whole series blocks, oldest first, until at least the given
+     * amount of memory has been freed.
+     */
+    private void expireSeries(long maxMemoryToExpireB) {
+        SeriesStore seriesStore = this.storage.getSeriesStore();
+
+        PriorityBlockingQueue<QueueItem> priorityBlockingQueue = new PriorityBlockingQueue<QueueItem>();
+        HashMap<String, SeriesKey> seriesKeys = new HashMap<String, SeriesKey>();
+        for (SeriesKey key : seriesStore.localKeySet()) {
+            StoredValueSet storedBlock = seriesStore.getStored(key);
+            if (storedBlock != null) {
+                priorityBlockingQueue.add(new QueueItem(storedBlock.getKey(), storedBlock.getHits(), storedBlock.getCreationTime(), storedBlock.getCostB()));
+                seriesKeys.put(storedBlock.getKey(), key);
+            }
+        }
+
+        long memoryExpiredB = 0;
+        int expiredCount = 0;
+        for (QueueItem nextItem : selectForExpiration(priorityBlockingQueue, maxMemoryToExpireB)) {
+            seriesStore.remove(seriesKeys.get(nextItem.getValueSetKey()));
+            memoryExpiredB += nextItem.getMemoryCost();
+            expiredCount++;
+        }
+
+        Log.info(this.getClass(), "Expired %d series blocks (%dB)", expiredCount, memoryExpiredB);
+        Statistics.getInstance().add("Expiration-SeriesBlock-Count", expiredCount);
+        Statistics.getInstance().add("Expiration-Byte", memoryExpiredB);
+    }
+
+    /**
+     * Removes the oldest items from the queue until at least the given
+     * amount of memory has been chosen, and returns them in the order they
+     * should be expired.
+     */
+    public static ArrayList<QueueItem> selectForExpiration(PriorityBlockingQueue<QueueItem> priorityBlockingQueue, long maxMemoryToExpireB) {
+        ArrayList<QueueItem> selected = new ArrayList<QueueItem>();
+        long memorySelectedB = 0;
+        while (memorySelectedB <= maxMemoryToExpireB && priorityBlockingQueue.size() > 0) {
+            QueueItem nextItem = priorityBlockingQueue.poll();
+            memorySelectedB += nextItem.getMemoryCost();
+            selected.add(nextItem);
+        }
+        return selected;
     }
 
-    private class QueueItem implements Comparable {
+    public static class QueueItem implements Comparable {
         private String valueSetKey;
         private int hitCount;
         private long creationTime;
@@ -22,45 +22,173 @@
 
 package edu.kstate.datastore;
 
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.IQueue;
 import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
 import edu.kstate.datastore.data.ValueSetEntry;
 import edu.kstate.datastore.data.ValueSetRequestEntry;
 import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.storage.EntryQueue;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.trace.Tracer;
+import edu.kstate.datastore.util.Log;
 import edu.kstate.datastore.util.Misc;
+import edu.kstate.datastore.webservice.CircuitBreaker;
+import edu.kstate.datastore.webservice.ConcurrencyLimiter;
+import edu.kstate.datastore.webservice.HttpTransport;
+import edu.kstate.datastore.webservice.RetryPolicy;
 import edu.kstate.datastore.webservice.ServiceAdapter;
+import edu.kstate.datastore.webservice.ServiceGuard;
+import edu.kstate.datastore.webservice.simplerest.SimpleRest;
 import edu.kstate.datastore.webservice.wateroneflow.WaterOneFlow;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FetchThread extends Thread {
 
-    private HazelcastInstance instance;
+    private static final long IDLE_POLL_MS = 250;
+
+    private Storage storage;
     private ThreadPoolExecutor threadPool;
     private boolean stopRequested;
-    private long maxLocalValueSetMapCostB = 0;
-    private HashMap<String, ElementSetEntry> cacheElementSet = new HashMap<String, ElementSetEntry>();
-    private HashMap<String, WebServiceEntry> cacheWebService = new HashMap<String, WebServiceEntry>();
+    private volatile long maxLocalValueSetMapCostB = 0;
+    private MetadataCache metadataCache;
     private boolean enableAssembly;
     private LinkedList<String> requestHistory = new LinkedList<String>();
     private int clientCount;
     private HashMap<String,ServiceAdapter> serviceAdapters = new HashMap<String, ServiceAdapter>();
-
-    public FetchThread(HazelcastInstance instance, long maxLocalValueSetMapCostB, boolean enableAssembly, int clientCount) {
-        this.instance = instance;
+    private ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<String, ConcurrencyLimiter>();
+    private AtomicInteger activeFetchCount = new AtomicInteger();
+    private int maxFetchConcurrency;
+    private RetryPolicy retryPolicy;
+    private int circuitBreakerFailureCount;
+    private long circuitBreakerOpenMs;
+    private boolean routeFetches;
+    private long seriesChunkS;
+    private boolean enableSeriesStore;
+    private Interpolation interpolation;
+    private String siteCallThreads;
+    private HttpTransport transport;
+    private long failedValueSetTtlMs;
+    private String localMemberId;
+
+    public FetchThread(Storage storage, MetadataCache metadataCache, long maxLocalValueSetMapCostB, boolean enableAssembly, int clientCount, int maxFetchConcurrency,
+                       RetryPolicy retryPolicy, int circuitBreakerFailureCount, long circuitBreakerOpenMs, boolean routeFetches, long seriesChunkS,
+                       boolean enableSeriesStore, Interpolation interpolation, String siteCallThreads,
+                       HttpTransport transport, long failedValueSetTtlMs) {
+        this.storage = storage;
+        this.metadataCache = metadataCache;
         this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
         this.enableAssembly = enableAssembly;
         this.clientCount = clientCount;
-        this.threadPool = new ThreadPoolExecutor(clientCount, clientCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(clientCount));
+        this.maxFetchConcurrency = maxFetchConcurrency;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreakerFailureCount = circuitBreakerFailureCount;
+        this.circuitBreakerOpenMs = circuitBreakerOpenMs;
+        this.routeFetches = routeFetches;
+        this.seriesChunkS = seriesChunkS;
+        this.enableSeriesStore = enableSeriesStore;
+        this.interpolation = interpolation;
+        this.siteCallThreads = siteCallThreads;
+        this.transport = transport;
+        this.failedValueSetTtlMs = failedValueSetTtlMs;
+        this.localMemberId = storage.getLocalMemberId();
+
+        // the number of fetches in flight is decided by the concurrency
+        // limiters, so the pool only needs to provide a thread for each
+        this.threadPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
     }
 
-    private void performFetch(ValueSetRequestEntry valueSetRequestEntry, WebServiceEntry webServiceEntry, ElementSetEntry elementSetEntry, IMap<String, ValueSetEntry> mapValueSet) {
+    /**
+     * Returns the adapter for the given web service, creating it and its
+     * concurrency limiter the first time the service is used. Only called
+     * from the event loop.
+     */
+    private ServiceAdapter getServiceAdapter(WebServiceEntry webServiceEntry) {
+        ServiceAdapter serviceAdapter = this.serviceAdapters.get(webServiceEntry.getId());
+        if (serviceAdapter != null) {
+            return serviceAdapter;
+        }
+
+        // the configured maximum number of requests is where the limiter
+        // starts, it then adapts to how the service responds
+        int initialLimit = this.clientCount;
+        try {
+            initialLimit = Integer.parseInt(webServiceEntry.getMaxRequests().trim());
+        } catch (NumberFormatException e) {
+            Log.warn(this.getClass(), "Invalid maxRequests for " + webServiceEntry.getId() + ", starting at " + initialLimit);
+        }
+        long serviceTimeMs = 0;
+        try {
+            serviceTimeMs = webServiceEntry.getServiceTimeMS();
+        } catch (NumberFormatException e) {
+            // the baseline latency will be learned instead
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(webServiceEntry.getId(), initialLimit, 1, this.maxFetchConcurrency, serviceTimeMs);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(webServiceEntry.getId(), this.circuitBreakerFailureCount, this.circuitBreakerOpenMs);
+        ServiceGuard serviceGuard = new ServiceGuard(webServiceEntry.getId(), limiter, circuitBreaker, this.retryPolicy);
+
+        if (webServiceEntry.getType().equals("WaterOneFlow1.0") == true) {
+            serviceAdapter = new WaterOneFlow(webServiceEntry.getUrl(), "1.0", serviceGuard, this.siteCallThreads, this.transport);
+        }
+        if (webServiceEntry.getType().equals("WaterOneFlow1.1") == true) {
+            serviceAdapter = new WaterOneFlow(webServiceEntry.getUrl(), "1.1", serviceGuard, this.siteCallThreads, this.transport);
+        }
+        if (webServiceEntry.getType().equals("SimpleRest") == true) {
+            serviceAdapter = new SimpleRest(webServiceEntry.getUrl(), serviceGuard, this.transport);
+        }
+
+        if (serviceAdapter != null) {
+            serviceAdapter.start();
+            this.serviceAdapters.put(webServiceEntry.getId(), serviceAdapter);
+            this.limiters.put(webServiceEntry.getId(), limiter);
+        }
+        return serviceAdapter;
+    }
+
+    /**
+     * The number of fetches allowed in flight follows the adaptive limits of
+     * the web services, so a fast service is given more work and a slow one
+     * less.
+     */
+    private int getFetchLimit() {
+        if (this.limiters.size() == 0) {
+            return this.clientCount;
+        }
+        int fetchLimit = 0;
+        for (ConcurrencyLimiter nextLimiter : this.limiters.values()) {
+            fetchLimit += nextLimiter.getLimit();
+        }
+        return fetchLimit;
+    }
+
+    private void performFetch(ValueSetRequestEntry valueSetRequestEntry, ServiceAdapter serviceAdapter, ElementSetEntry elementSetEntry, ValueSetStore mapValueSet) {
+        Tracer tracer = Tracer.getInstance();
+        String traceId = tracer.isEnabled() == true ? ValueSetRequestEntry.createKey(valueSetRequestEntry) : null;
+        long startNs = Tracer.now();
+        tracer.setCurrentTraceId(traceId);
+        try {
+            performFetchWithAdapter(valueSetRequestEntry, serviceAdapter, elementSetEntry, mapValueSet);
+        } finally {
+            tracer.setCurrentTraceId(null);
+            tracer.record("fetch", traceId, startNs);
+            this.activeFetchCount.decrementAndGet();
+        }
+    }
+
+    private void performFetchWithAdapter(ValueSetRequestEntry valueSetRequestEntry, ServiceAdapter serviceAdapter, ElementSetEntry elementSetEntry, ValueSetStore mapValueSet) {
 
         String webServiceId = valueSetRequestEntry.getWebServiceId();
         String quantityId = valueSetRequestEntry.getQuantityId();
@@ -69,35 +197,36 @@ public class FetchThread extends Thread {
         String scenarioId = valueSetRequestEntry.getScenarioId();
         String[] elementIds = elementSetEntry.getElementIds();
 
-        ServiceAdapter serviceAdapter = null;
-        if (this.serviceAdapters.containsKey(webServiceEntry.getId()) == true) {
-            serviceAdapter = this.serviceAdapters.get(webServiceEntry.getId());
-        }
-        else {
-            if (webServiceEntry.getType().equals("WaterOneFlow1.0") == true) {
-                serviceAdapter = new WaterOneFlow(webServiceEntry.getUrl(), "1.0");
-                serviceAdapter.start();
-                this.serviceAdapters.put(webServiceEntry.getId(), serviceAdapter);
-            }
-            if (webServiceEntry.getType().equals("WaterOneFlow1.1") == true) {
-                serviceAdapter = new WaterOneFlow(webServiceEntry.getUrl(), "1.1");
-                serviceAdapter.start();
-                this.serviceAdapters.put(webServiceEntry.getId(), serviceAdapter);
-            }
-            // TODO: add support for the REST service used in the performance study
-        }
-
         // record the number of times we call the GetValues web service
         Statistics.getInstance().add("Fetch-GetValues-Call-Count", 1);
 
         // send while blocking this thread
+        Tracer tracer = Tracer.getInstance();
+        long serviceCallStartNs = Tracer.now();
         double[] values = serviceAdapter.getValues(quantityId, elementIds, timeStamp);
+        tracer.record("service-call", tracer.getCurrentTraceId(), serviceCallStartNs, values == null ? "failed" : null);
+
+        // if nothing could be retrieved the model still needs an answer,
+        // since the client keeps polling the map for the value set and never
+        // asks for it again. the values are all missing and the value set
+        // only lives long enough to be read, so a later request fetches it
+        // again once the service is back. it's not real data, so it's kept
+        // out of the series store.
+        if (values == null) {
+            Log.warn(this.getClass(), "Unable to fetch " + valueSetRequestEntry.toString() + ", publishing missing values");
+            Statistics.getInstance().add("Fetch-GetValues-Failed-Count", 1);
+            publishMissingValues(valueSetRequestEntry, elementIds.length, mapValueSet);
+            return;
+        }
 
         // create an entry for the received data
         ValueSetEntry entry = new ValueSetEntry(webServiceId, quantityId, timeStamp, elementSetId, scenarioId, values);
 
         // place it in the map
+        long publishStartNs = Tracer.now();
         mapValueSet.put(ValueSetEntry.createKey(entry), entry);
+        tracer.record("publish", tracer.getCurrentTraceId(), publishStartNs);
+        addToSeries(entry);
 
         // record the number of value sets we download - right now we only
         // download one at a time
@@ -107,38 +236,281 @@ public class FetchThread extends Thread {
         Statistics.getInstance().add("Fetch-GetValues-Value-Count", values.length);
     }
 
+    /**
+     * Publishes a value set of missing values for a request that can't be
+     * answered, so that the client waiting for it isn't left waiting. It
+     * only lives long enough to be read, so a later request tries again.
+     */
+    private void publishMissingValues(ValueSetRequestEntry valueSetRequestEntry, int elementCount, ValueSetStore mapValueSet) {
+        double[] missingValues = new double[elementCount];
+        Arrays.fill(missingValues, ServiceAdapter.MISSING_VALUE);
+        ValueSetEntry missingEntry = new ValueSetEntry(valueSetRequestEntry.getWebServiceId(), valueSetRequestEntry.getQuantityId(), valueSetRequestEntry.getTimeStamp(),
+                valueSetRequestEntry.getElementSetId(), valueSetRequestEntry.getScenarioId(), missingValues);
+        mapValueSet.put(ValueSetEntry.createKey(missingEntry), missingEntry, this.failedValueSetTtlMs);
+    }
+
+    /**
+     * Adds a published value set to the block of its series, so that it can
+     * be published again from there once it has expired from the map.
+     */
+    private void addToSeries(ValueSetEntry entry) {
+        if (this.enableSeriesStore == false) {
+            return;
+        }
+        try {
+            this.storage.getSeriesStore().merge(SeriesKey.create(entry, this.seriesChunkS), Collections.singletonList(entry));
+        } catch (Exception e) {
+            Log.warn(this.getClass(), "Unable to add " + entry.toString() + " to its series: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the requested value set sliced out of the block of its
+     * series, or null if the block doesn't have it.
+     */
+    private ValueSetEntry getFromSeries(ValueSetRequestEntry entry) {
+        try {
+            SeriesBlock block = this.storage.getSeriesStore().get(SeriesKey.create(entry, this.seriesChunkS));
+            if (block == null) {
+                return null;
+            }
+            return block.getValueSet(entry.getTimeS());
+        } catch (Exception e) {
+            Log.warn(this.getClass(), "Unable to read the series of " + entry.toString() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the requested value set interpolated from the time steps on
+     * either side of it, or null if they aren't both in the series store
+     * or are too far apart. The time steps may be in the neighbouring
+     * chunks of the series.
+     */
+    private ValueSetEntry interpolateFromSeries(ValueSetRequestEntry entry, String mode) {
+        try {
+            long timeS = entry.getTimeS();
+            SeriesStore seriesStore = this.storage.getSeriesStore();
+            SeriesKey seriesKey = SeriesKey.create(entry, this.seriesChunkS);
+            SeriesBlock block = seriesStore.get(seriesKey);
+
+            SeriesBlock beforeBlock = block;
+            int beforeIndex = block == null ? -1 : block.floorIndex(timeS);
+            if (beforeIndex < 0 && this.seriesChunkS > 0) {
+                beforeBlock = seriesStore.get(seriesKey.getNeighbour(-1));
+                beforeIndex = beforeBlock == null ? -1 : beforeBlock.floorIndex(timeS);
+            }
+            if (beforeIndex < 0) {
+                return null;
+            }
+
+            SeriesBlock afterBlock = block;
+            int afterIndex = block == null ? -1 : block.ceilingIndex(timeS);
+            if (afterIndex < 0 && this.seriesChunkS > 0) {
+                afterBlock = seriesStore.get(seriesKey.getNeighbour(1));
+                afterIndex = afterBlock == null ? -1 : afterBlock.ceilingIndex(timeS);
+            }
+            if (afterIndex < 0) {
+                return null;
+            }
+
+            long beforeS = beforeBlock.getTimeS(beforeIndex);
+            long afterS = afterBlock.getTimeS(afterIndex);
+            if (afterS - beforeS > this.interpolation.getMaxGapS(entry.getQuantityId())) {
+                return null;
+            }
+
+            double[] values = Interpolation.interpolate(mode, beforeS, beforeBlock.getValues(beforeIndex), afterS, afterBlock.getValues(afterIndex), timeS);
+            return new ValueSetEntry(entry.getWebServiceId(), entry.getQuantityId(), entry.getTimeStamp(), entry.getElementSetId(), entry.getScenarioId(), values);
+        } catch (Exception e) {
+            Log.warn(this.getClass(), "Unable to interpolate " + entry.toString() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Changes the most memory the local portion of the value set map may
+     * use. Takes effect the next time the limit is checked.
+     */
+    public void setMaxLocalValueSetMapCostB(long maxLocalValueSetMapCostB) {
+        this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
+    }
+
     public void requestStop() {
-        Misc.logInfo(this.getClass(), "Stop Requested");
+        Log.info(this.getClass(), "Stop Requested");
         this.stopRequested = true;
     }
 
-    private ElementSetEntry getElementSetEntry(String id) {
-        if (cacheElementSet.containsKey(id) == true) {
-            return cacheElementSet.get(id);
-        } else {
-            IMap<String, ElementSetEntry> distributedMap = this.instance.getMap("elementSet");
-            ElementSetEntry entry = distributedMap.get(id);
-            cacheElementSet.put(id, entry);
-            return entry;
+    /**
+     * Returns the number of fetches that have been handed to the thread
+     * pool and have not finished yet.
+     */
+    public int getActiveFetchCount() {
+        return this.activeFetchCount.get();
+    }
+
+    /**
+     * Returns the number of web service calls in flight for each web
+     * service that has been used so far.
+     */
+    public HashMap<String, Integer> getInFlightCounts() {
+        HashMap<String, Integer> inFlightCounts = new HashMap<String, Integer>();
+        for (ConcurrencyLimiter nextLimiter : this.limiters.values()) {
+            inFlightCounts.put(nextLimiter.getName(), nextLimiter.getInFlight());
         }
+        return inFlightCounts;
     }
 
-    private WebServiceEntry getWebServiceEntry(String id) {
-        if (cacheWebService.containsKey(id) == true) {
-            return cacheWebService.get(id);
-        } else {
-            IMap<String, WebServiceEntry> distributedMap = this.instance.getMap("webService");
-            WebServiceEntry entry = distributedMap.get(id);
-            cacheWebService.put(id, entry);
-            return entry;
+    /**
+     * Returns the current concurrency limit for each web service that has
+     * been used so far.
+     */
+    public HashMap<String, Integer> getConcurrencyLimits() {
+        HashMap<String, Integer> concurrencyLimits = new HashMap<String, Integer>();
+        for (ConcurrencyLimiter nextLimiter : this.limiters.values()) {
+            concurrencyLimits.put(nextLimiter.getName(), nextLimiter.getLimit());
         }
+        return concurrencyLimits;
+    }
+
+    /**
+     * Finds an element set that contains each of the given elements. For
+     * each element the id of the element set and the element's index within
+     * it are stored in the source arrays. Returns true if every element was
+     * found, in which case the values might be assembled from value sets
+     * already in memory.
+     */
+    public static boolean findElementSources(String[] elementIds, Collection<ElementSetEntry> elementSets, String[] sourceIds, int[] sourceIndexes) {
+        for (ElementSetEntry nextElementSet : elementSets) {
+            String[] nextElementIds = nextElementSet.getElementIds();
+            for (int j = 0; j < nextElementIds.length; j++) {
+                for (int i = 0; i < elementIds.length; i++) {
+                    if (elementIds[i].equals(nextElementIds[j]) == true) {
+                        sourceIds[i] = nextElementSet.getElementSetId();
+                        sourceIndexes[i] = j;
+                        // TOOD: ideally we would remember all the element sets that could be a source for each element
+                    }
+                }
+            }
+        }
+
+        // at this point we know which values are present. if any values are
+        // not available then we'll need to call the web service
+        for (int i = 0; i < sourceIds.length; i++) {
+            if (sourceIds[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void traceDequeued(ValueSetRequestEntry entry, String queueName) {
+        Tracer tracer = Tracer.getInstance();
+        if (tracer.isEnabled() == true) {
+            tracer.markDequeued(ValueSetRequestEntry.createKey(entry), queueName);
+        }
+    }
+
+    /**
+     * Hands a request to the member that owns the value set it asks for,
+     * so that the fetched values are put into the map where they are
+     * stored instead of crossing the network again. Returns false if the
+     * request should be fetched here.
+     */
+    private boolean routeRequest(ValueSetRequestEntry entry, boolean isPrefetch) {
+        if (this.routeFetches == false) {
+            return false;
+        }
+
+        String key = ValueSetEntry.createKey(entry.getWebServiceId(), entry.getQuantityId(), entry.getElementSetId(), entry.getTimeStamp(), entry.getScenarioId());
+        String ownerId = this.storage.getOwnerMemberId(key);
+        if (ownerId == null || ownerId.equals(this.localMemberId) == true) {
+            return false;
+        }
+
+        EntryQueue<ValueSetRequestEntry> ownerQueue = isPrefetch == true ? this.storage.getMemberPrefetchRequestQueue(ownerId) : this.storage.getMemberRequestQueue(ownerId);
+        if (ownerQueue.offer(entry) == false) {
+            return false;
+        }
+        Statistics.getInstance().add(isPrefetch == true ? "Fetch-Routed-Prefetch-Count" : "Fetch-Routed-Demand-Count", 1);
+        return true;
+    }
+
+    private ValueSetRequestEntry pollNextRequest(EntryQueue<ValueSetRequestEntry> queueValueSetRequest, EntryQueue<ValueSetRequestEntry> queuePrefetchRequest,
+                                                 EntryQueue<ValueSetRequestEntry> queueMemberRequest, EntryQueue<ValueSetRequestEntry> queueMemberPrefetchRequest) throws Exception {
+
+        // requests other members routed here are for value sets this member
+        // owns and have already waited in a shared queue, so they go first
+        ValueSetRequestEntry nextEntry = queueMemberRequest.poll();
+        if (nextEntry != null) {
+            Statistics.getInstance().add("Fetch-Demand-Request-Count", 1);
+            traceDequeued(nextEntry, "valueSetRequest");
+            return nextEntry;
+        }
+
+        nextEntry = queueValueSetRequest.poll();
+        if (nextEntry != null) {
+            if (routeRequest(nextEntry, false) == true) {
+                return null;
+            }
+            Statistics.getInstance().add("Fetch-Demand-Request-Count", 1);
+            traceDequeued(nextEntry, "valueSetRequest");
+            return nextEntry;
+        }
+
+        nextEntry = queueMemberPrefetchRequest.poll();
+        if (nextEntry != null) {
+            Statistics.getInstance().add("Fetch-Prefetch-Request-Count", 1);
+            traceDequeued(nextEntry, "valueSetPrefetchRequest");
+            return nextEntry;
+        }
+
+        nextEntry = queuePrefetchRequest.poll();
+        if (nextEntry != null) {
+            if (routeRequest(nextEntry, true) == true) {
+                return null;
+            }
+            Statistics.getInstance().add("Fetch-Prefetch-Request-Count", 1);
+            traceDequeued(nextEntry, "valueSetPrefetchRequest");
+            return nextEntry;
+        }
+
+        // both lanes are empty, so wait a short time on the demand lanes
+        // before checking the prefetch lanes again. the wait is split so
+        // that a routed request isn't held up for the whole time.
+        if (this.routeFetches == true) {
+            nextEntry = queueMemberRequest.poll(IDLE_POLL_MS / 2, TimeUnit.MILLISECONDS);
+            if (nextEntry != null) {
+                Statistics.getInstance().add("Fetch-Demand-Request-Count", 1);
+                traceDequeued(nextEntry, "valueSetRequest");
+                return nextEntry;
+            }
+        }
+        nextEntry = queueValueSetRequest.poll(this.routeFetches == true ? IDLE_POLL_MS / 2 : IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+        if (nextEntry != null) {
+            if (routeRequest(nextEntry, false) == true) {
+                return null;
+            }
+            Statistics.getInstance().add("Fetch-Demand-Request-Count", 1);
+            traceDequeued(nextEntry, "valueSetRequest");
+        }
+        return nextEntry;
     }
 
     private void eventLoop() throws Exception {
 
         // get references to our distributed data structures
-        final IQueue<ValueSetRequestEntry> queueValueSetRequest = this.instance.getQueue("valueSetRequest");
-        final IMap<String, ValueSetEntry> mapValueSet = this.instance.getMap("valueSet");
+        final EntryQueue<ValueSetRequestEntry> queueValueSetRequest = this.storage.getRequestQueue();
+        final EntryQueue<ValueSetRequestEntry> queuePrefetchRequest = this.storage.getPrefetchRequestQueue();
+        final EntryQueue<ValueSetRequestEntry> queueMemberRequest = this.storage.getMemberRequestQueue(this.localMemberId);
+        final EntryQueue<ValueSetRequestEntry> queueMemberPrefetchRequest = this.storage.getMemberPrefetchRequestQueue(this.localMemberId);
+        final ValueSetStore mapValueSet = this.storage.getValueSetStore();
+        final Tracer tracer = Tracer.getInstance();
+
+        // when fetching is paused we remember when the pause started, so
+        // the wait can be recorded against the next request we remove
+        long admissionStartNs = 0;
+        long admissionEndNs = 0;
 
         // continuously remove requests from the queue and call the
         // web services. this loop needs to execute very quickly in
@@ -149,9 +521,14 @@ public class FetchThread extends Thread {
             // we should only stop if there are no outstanding requests
             // in our local portion of the request map
             if (stopRequested == true) {
-                int entriesInQueue = queueValueSetRequest.size();
+
+                // give back whatever was routed here so that the other
+                // members can fetch it
+                this.storage.requeueMemberRequests(this.localMemberId);
+
+                int entriesInQueue = queueValueSetRequest.size() + queuePrefetchRequest.size();
                 if (entriesInQueue > 0) {
-                    Misc.logInfo(this.getClass(), "Warning: Stopping with " + entriesInQueue + " left in queue");
+                    Log.warn(this.getClass(), "Stopping with " + entriesInQueue + " left in queue");
                 }
                 threadPool.shutdown();
                 for (ServiceAdapter nextAdapter : this.serviceAdapters.values()) {
@@ -161,16 +538,19 @@ public class FetchThread extends Thread {
                 /*
                 int entriesInQueue = queueValueSetRequest.size();
                 if (entriesInQueue == 0) {
-                    Misc.logInfo(this.getClass(), "Stop requested and no entries left to fetch");
+                    Log.info(this.getClass(), "Stop requested and no entries left to fetch");
                     threadPool.shutdown();
                     break;
                 } else {
-                    Misc.logInfo(this.getClass(), "Stop requested but " + entriesInQueue + " left in queue");
+                    Log.info(this.getClass(), "Stop requested but " + entriesInQueue + " left in queue");
                 }*/
             }
 
-            if (threadPool.getQueue().remainingCapacity() == 0) {
-                Misc.logInfo(this.getClass(), "Too many active, paused fetching");
+            if (this.activeFetchCount.get() >= getFetchLimit()) {
+                if (admissionStartNs == 0) {
+                    admissionStartNs = Tracer.now();
+                }
+                Log.debug(this.getClass(), "Too many active, paused fetching");
                 Statistics.getInstance().add("Fetch-Limit-WaitMS", 100);
                 Thread.sleep(100); // short delay, we're just checking a local queue data structure
                 continue;
@@ -182,24 +562,40 @@ public class FetchThread extends Thread {
             // us over the limit, so instead we check for when the limit is
             // passed (so there might be up to one value set's worth of data
             // over the limit in the map).
-            if (Misc.maxDataExceeded(this.maxLocalValueSetMapCostB, mapValueSet) == true) {
-                Misc.logInfo(this.getClass(), "No more space in map, paused fetching");
+            if (Misc.maxDataExceeded(this.maxLocalValueSetMapCostB, this.storage) == true) {
+                if (admissionStartNs == 0) {
+                    admissionStartNs = Tracer.now();
+                }
+                Log.debug(this.getClass(), "No more space in map, paused fetching");
                 Thread.sleep(1000); // wait longer, since we need an expiration to run
                 continue;
             }
 
-            // get the next request entry from the queue (which
-            // will be null if it's empty)
-            final ValueSetRequestEntry nextEntry = queueValueSetRequest.poll(60, TimeUnit.SECONDS);
+            // get the next request entry (which will be null if both queues
+            // are empty). models are blocked waiting on demand requests so
+            // they are always served before any prefetch requests.
+            if (admissionStartNs != 0 && admissionEndNs == 0) {
+                admissionEndNs = Tracer.now();
+            }
+            long dequeueStartNs = Tracer.now();
+            final ValueSetRequestEntry nextEntry = pollNextRequest(queueValueSetRequest, queuePrefetchRequest, queueMemberRequest, queueMemberPrefetchRequest);
             if (nextEntry == null) {
-                Misc.logInfo(this.getClass(), "Request queue is empty");
-                //Thread.sleep(1000); // wait longer, since we're hitting the global queue
                 continue;
             }
 
+            String traceId = tracer.isEnabled() == true ? ValueSetRequestEntry.createKey(nextEntry) : null;
+            tracer.record("dequeue", traceId, dequeueStartNs);
+            if (admissionStartNs != 0) {
+                tracer.record("admission-wait", traceId, admissionStartNs, admissionEndNs, null);
+                admissionStartNs = 0;
+                admissionEndNs = 0;
+            }
+
             // see if there is an outstanding request for this entry
+            long dedupStartNs = Tracer.now();
             if (requestHistory.contains(ValueSetRequestEntry.createKey(nextEntry)) == true) {
-                Misc.logInfo(this.getClass(), "ValueSet already requested, not fetching");
+                Log.debug(this.getClass(), "ValueSet already requested, not fetching");
+                tracer.record("dedup", traceId, dedupStartNs, "requested");
                 continue;
             }
 
@@ -208,19 +604,83 @@ public class FetchThread extends Thread {
             // this value set so make sure it doesn't exist
             // before we make the request
             if (mapValueSet.containsKey(ValueSetEntry.createKey(nextEntry.getWebServiceId(), nextEntry.getQuantityId(), nextEntry.getElementSetId(), nextEntry.getTimeStamp(), nextEntry.getScenarioId())) == true) {
-                Misc.logInfo(this.getClass(), "ValueSet already in map, not fetching");
+                Log.debug(this.getClass(), "ValueSet already in map, not fetching");
+                tracer.record("dedup", traceId, dedupStartNs, "in-map");
                 continue;
             }
+            tracer.record("dedup", traceId, dedupStartNs, "fetch");
+
+            // the value set may have expired from the map but still be in
+            // the block of its series, in which case it's sliced out of the
+            // block instead of being fetched again
+            if (this.enableSeriesStore == true) {
+                long seriesStartNs = Tracer.now();
+                ValueSetEntry seriesEntry = getFromSeries(nextEntry);
+                if (seriesEntry != null) {
+                    tracer.record("series", traceId, seriesStartNs, "hit");
+                    long publishStartNs = Tracer.now();
+                    mapValueSet.put(ValueSetEntry.createKey(seriesEntry), seriesEntry);
+                    tracer.record("publish", traceId, publishStartNs);
+                    Statistics.getInstance().add("Fetch-Series-Hit-Count", 1);
+                    continue;
+                }
+                tracer.record("series", traceId, seriesStartNs, "miss");
+
+                // the time may fall between the time steps the web service
+                // supplies, in which case the value set is interpolated
+                // from the ones on either side. that's only done when the
+                // two are no more than the service's time step apart, so
+                // a time step the service has is still fetched. it isn't
+                // added to the series, so it's never used to interpolate
+                // another.
+                String interpolationMode = this.interpolation.getMode(nextEntry.getQuantityId());
+                if (interpolationMode != null) {
+                    long interpolateStartNs = Tracer.now();
+                    ValueSetEntry interpolatedEntry = interpolateFromSeries(nextEntry, interpolationMode);
+                    if (interpolatedEntry != null) {
+                        tracer.record("interpolate", traceId, interpolateStartNs, interpolationMode);
+                        long publishStartNs = Tracer.now();
+                        mapValueSet.put(ValueSetEntry.createKey(interpolatedEntry), interpolatedEntry);
+                        tracer.record("publish", traceId, publishStartNs);
+                        Statistics.getInstance().add("Fetch-Interpolated-Count", 1);
+                        continue;
+                    }
+                    tracer.record("interpolate", traceId, interpolateStartNs, "fetch");
+                }
+            }
 
-            final WebServiceEntry webServiceEntry = this.getWebServiceEntry(nextEntry.getWebServiceId());
-            final ElementSetEntry elementSetEntry = this.getElementSetEntry(nextEntry.getElementSetId());
-
-            // TODO: expire element sets from the cache occasionally
+            // the request has already been removed from the queue, so if it
+            // can't be fetched the client is still given missing values
+            // instead of waiting for a value set that never comes
+            final WebServiceEntry webServiceEntry = this.metadataCache.getWebService(nextEntry.getWebServiceId());
+            final ElementSetEntry elementSetEntry = this.metadataCache.getElementSet(nextEntry.getElementSetId());
+            if (webServiceEntry == null || elementSetEntry == null) {
+                Log.warn(this.getClass(), "Unknown web service or element set for " + nextEntry.toString() + ", publishing missing values");
+                Statistics.getInstance().add("Fetch-Unfetchable-Count", 1);
+                publishMissingValues(nextEntry, elementSetEntry == null ? 0 : elementSetEntry.getElementIds().length, mapValueSet);
+                continue;
+            }
+            ServiceAdapter adapter = null;
+            try {
+                adapter = this.getServiceAdapter(webServiceEntry);
+                if (adapter == null) {
+                    Log.warn(this.getClass(), "Unsupported web service type: " + webServiceEntry.getType() + ", publishing missing values for " + nextEntry.toString());
+                }
+            } catch (Exception e) {
+                Log.warn(this.getClass(), "Unable to create the adapter for " + webServiceEntry.getId() + ": " + e.getMessage() + ", publishing missing values for " + nextEntry.toString());
+            }
+            if (adapter == null) {
+                Statistics.getInstance().add("Fetch-Unfetchable-Count", 1);
+                publishMissingValues(nextEntry, elementSetEntry.getElementIds().length, mapValueSet);
+                continue;
+            }
+            final ServiceAdapter serviceAdapter = adapter;
 
             // TODO: we shouldn't be pausing these lookups when there are no
             // available web service calls since they don't rely on them.
 
             if (enableAssembly == true) {
+                long assemblyStartNs = Tracer.now();
 
                 // we may have all the values being requested in other value sets,
                 // so we should check to see if the elements in the set being
@@ -232,28 +692,7 @@ public class FetchThread extends Thread {
                 String[] elementIds = elementSetEntry.getElementIds();
                 String[] elementIdsSourceMap = new String[elementIds.length];
                 int[] elementIdsSourceMapIndex = new int[elementIds.length];
-                for (ElementSetEntry nextElementSet : cacheElementSet.values()) {
-                    String[] nextElementIds = nextElementSet.getElementIds();
-                    for (int j = 0; j < nextElementIds.length; j++) {
-                        for (int i = 0; i < elementIds.length; i++) {
-                            if (elementIds[i].equals(nextElementIds[j]) == true) {
-                                elementIdsSourceMap[i] = nextElementSet.getElementSetId();
-                                elementIdsSourceMapIndex[i] = j;
-                                // TOOD: ideally we would remember all the element sets that could be a source for each element
-                            }
-                        }
-                    }
-                }
-
-                // at this point we know which values are present. if any values are
-                // not available then we'll need to call the web service
-                boolean isAvailable = true;
-                for (int i = 0; i < elementIdsSourceMap.length; i++) {
-                    if (elementIdsSourceMap[i] == null) {
-                        isAvailable = false;
-                        break;
-                    }
-                }
+                boolean isAvailable = findElementSources(elementIds, this.metadataCache.getCachedElementSets(), elementIdsSourceMap, elementIdsSourceMapIndex);
 
                 // if there are value sets that cover all the elements in the set
                 // being requested, then check to see if value sets exist for the
@@ -282,10 +721,12 @@ public class FetchThread extends Thread {
                         ValueSetEntry nextValueSet = mapValueSet.get(nextKey);
                         if (nextValueSet != null) {
 
-                            // grab all the values that we need from this value set
+                            // grab all the values that we need from this value set,
+                            // decoding it only once
+                            double[] nextValues = nextValueSet.getValues();
                             for (int i = 0; i < elementIdsSourceMap.length; i++) {
                                 if (elementIdsSourceMap[i].equals(nextElementSetId) == true) {
-                                    values[i] = nextValueSet.getValues()[elementIdsSourceMapIndex[i]];
+                                    values[i] = nextValues[elementIdsSourceMapIndex[i]];
                                 }
                             }
                         } else {
@@ -296,33 +737,39 @@ public class FetchThread extends Thread {
                 }
 
                 if (valuesAvailable == true) {
+                    tracer.record("assembly", traceId, assemblyStartNs, "assembled");
 
                     // we got all the values so insert the value set
-                    Misc.logInfo(this.getClass(), String.format("Assembled:%s", nextEntry.toString()));
+                    Log.debug(this.getClass(), "Assembled:%s", nextEntry.toString());
                     ValueSetEntry assembledEntry = new ValueSetEntry(nextEntry.getWebServiceId(), nextEntry.getQuantityId(), nextEntry.getTimeStamp(), nextEntry.getElementSetId(), nextEntry.getScenarioId(), values);
+                    long publishStartNs = Tracer.now();
                     mapValueSet.put(ValueSetEntry.createKey(assembledEntry), assembledEntry);
+                    tracer.record("publish", traceId, publishStartNs);
+                    addToSeries(assembledEntry);
 
                 } else {
+                    tracer.record("assembly", traceId, assemblyStartNs, "fetch");
 
                     // all of the requested values are not in the memory so we need
                     // to call the web service
-                    //Misc.logInfo(this.getClass(), String.format("Fetch:%s(ReqQ:%d,WebQ:%d)", nextEntry.toString(), queueValueSetRequest.size(), this.threadPool.getQueue().size()));
+                    //Log.info(this.getClass(), String.format("Fetch:%s(ReqQ:%d,WebQ:%d)", nextEntry.toString(), queueValueSetRequest.size(), this.threadPool.getQueue().size()));
 
                     // create a runnable task
                     Runnable task = new Runnable() {
                         @Override
                         public void run() {
-                            performFetch(nextEntry, webServiceEntry, elementSetEntry, mapValueSet);
+                            performFetch(nextEntry, serviceAdapter, elementSetEntry, mapValueSet);
                         }
                     };
 
                     // add this send to the thread pool
+                    activeFetchCount.incrementAndGet();
                     threadPool.submit(task);
                 }
             } else {
 
                 // assemly is turned off, so just make the request
-                //Misc.logInfo(this.getClass(), String.format("Fetch:%s(ReqQ:%d,WebQ:%d)", nextEntry.toString(), queueValueSetRequest.size(), this.threadPool.getQueue().size()));
+                //Log.info(this.getClass(), String.format("Fetch:%s(ReqQ:%d,WebQ:%d)", nextEntry.toString(), queueValueSetRequest.size(), this.threadPool.getQueue().size()));
 
                 requestHistory.addFirst(ValueSetRequestEntry.createKey(nextEntry));
                 if(requestHistory.size() > this.clientCount)
@@ -334,11 +781,12 @@ public class FetchThread extends Thread {
                 Runnable task = new Runnable() {
                     @Override
                     public void run() {
-                        performFetch(nextEntry, webServiceEntry, elementSetEntry, mapValueSet);
+                        performFetch(nextEntry, serviceAdapter, elementSetEntry, mapValueSet);
                     }
                 };
 
                 // add this send to the thread pool
+                activeFetchCount.incrementAndGet();
                 threadPool.submit(task);
             }
 
@@ -350,8 +798,8 @@ public class FetchThread extends Thread {
         try {
             this.eventLoop();
         } catch (Exception e) {
-            Misc.logException(this.getClass(), e);
+            Log.error(this.getClass(), e);
         }
-        Misc.logInfo(this.getClass(), "Stopped");
+        Log.info(this.getClass(), "Stopped");
     }
 }
\ No newline at end of file
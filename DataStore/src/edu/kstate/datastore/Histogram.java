@@ -0,0 +1,102 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values with a fixed number of buckets. The
+ * buckets are log-linear: each power of two range is split into the same
+ * number of equal sub-buckets, so every recorded value is represented to
+ * within about 3% while values from 0 to Long.MAX_VALUE fit in under 2,000
+ * buckets. Recording a value is a single atomic increment and allocates
+ * nothing.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // the exact values below SUB_BUCKET_COUNT take one row of buckets, and
+    // each highest bit from SUB_BUCKET_BITS to 62 takes another
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls in the given bucket.
+     */
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowestValue = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a value, rounding it to the nearest whole number. Negative
+     * values are recorded as zero.
+     */
+    public void record(double value) {
+        long roundedValue = value <= 0 ? 0 : Math.round(value);
+        counts.incrementAndGet(bucketIndex(roundedValue));
+    }
+
+    /**
+     * Returns the value below which the given percentage (0 to 100) of the
+     * recorded values fall, or zero if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long totalCount = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            totalCount += snapshot[i];
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long targetCount = Math.max(1, (long) Math.ceil(totalCount * Math.min(percentile, 100.0) / 100.0));
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += snapshot[i];
+            if (runningCount >= targetCount) {
+                return highestValueInBucket(i);
+            }
+        }
+        return highestValueInBucket(BUCKET_COUNT - 1);
+    }
+}
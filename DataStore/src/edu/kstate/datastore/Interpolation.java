@@ -0,0 +1,131 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore;
+
+import java.util.HashMap;
+
+/**
+ * Decides which quantities may be interpolated in time instead of fetched,
+ * and how. Interpolation is given per quantity as a list like
+ * "Discharge=linear:900,Precipitation=nearest", where a quantity of "*"
+ * covers the quantities that aren't listed. The number after the mode is
+ * the time step of the web service in seconds, and maxGapS is used for
+ * the quantities that don't give one. Value sets are only interpolated
+ * between time steps at most one service step apart, so that a time step
+ * the service has but the cache doesn't is fetched rather than made up.
+ * A quantity without a known step is never interpolated.
+ */
+public class Interpolation {
+
+    public static final String LINEAR = "linear";
+    public static final String NEAREST = "nearest";
+    private static final String ANY_QUANTITY = "*";
+
+    private HashMap<String, String> modes = new HashMap<String, String>();
+    private HashMap<String, Long> stepsS = new HashMap<String, Long>();
+
+    public Interpolation(String modesByQuantity, long maxGapS) {
+        if (modesByQuantity == null) {
+            return;
+        }
+        for (String nextMode : modesByQuantity.split(",")) {
+            if (nextMode.trim().length() == 0) {
+                continue;
+            }
+            String[] parts = nextMode.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid interpolation: " + nextMode);
+            }
+            String mode = parts[1].trim();
+            long stepS = maxGapS;
+            int stepStart = mode.indexOf(':');
+            if (stepStart >= 0) {
+                stepS = Long.parseLong(mode.substring(stepStart + 1).trim());
+                mode = mode.substring(0, stepStart).trim();
+            }
+            if (mode.equals(LINEAR) == false && mode.equals(NEAREST) == false) {
+                throw new IllegalArgumentException("Unknown interpolation mode: " + mode);
+            }
+
+            // a quantity without a step is still listed, so that it isn't
+            // covered by "*" instead
+            if (stepS <= 0) {
+                mode = null;
+            }
+            this.modes.put(parts[0].trim(), mode);
+            this.stepsS.put(parts[0].trim(), stepS);
+        }
+    }
+
+    public boolean isEnabled() {
+        for (String nextMode : this.modes.values()) {
+            if (nextMode != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how the given quantity is interpolated, or null if it isn't.
+     */
+    public String getMode(String quantityId) {
+        if (this.modes.containsKey(quantityId) == true) {
+            return this.modes.get(quantityId);
+        }
+        return this.modes.get(ANY_QUANTITY);
+    }
+
+    /**
+     * Returns the largest gap between two time steps the given quantity
+     * is interpolated across, which is the time step of its web service.
+     */
+    public long getMaxGapS(String quantityId) {
+        Long stepS = this.stepsS.get(quantityId);
+        if (stepS == null) {
+            stepS = this.stepsS.get(ANY_QUANTITY);
+        }
+        return stepS == null ? 0 : stepS.longValue();
+    }
+
+    /**
+     * Returns the values at timeS from the values of the time steps on
+     * either side of it.
+     */
+    public static double[] interpolate(String mode, long beforeS, double[] before, long afterS, double[] after, long timeS) {
+        double[] values = new double[before.length];
+        if (afterS == beforeS) {
+            System.arraycopy(before, 0, values, 0, values.length);
+            return values;
+        }
+        if (mode.equals(NEAREST) == true) {
+            double[] nearest = timeS - beforeS <= afterS - timeS ? before : after;
+            System.arraycopy(nearest, 0, values, 0, values.length);
+            return values;
+        }
+        double fraction = (timeS - beforeS) / (double) (afterS - beforeS);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = before[i] + (after[i] - before[i]) * fraction;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,97 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One named statistic. The count and sum are adders, which spread their
+ * updates over more cells as threads contend for them, and the
+ * distribution is kept in a fixed-size histogram. The memory used does not
+ * grow with the number of values.
+ */
+public class Metric {
+
+    private String name;
+    private LongAdder count = new LongAdder();
+    private DoubleAdder sum = new DoubleAdder();
+    private AtomicLong maxBits = new AtomicLong(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+    private Histogram histogram = new Histogram();
+
+    public Metric(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void record(double value) {
+        count.increment();
+        sum.add(value);
+
+        // the maximum rarely changes once some values have been seen, so
+        // most calls only read it
+        while (true) {
+            long currentBits = maxBits.get();
+            if (Double.longBitsToDouble(currentBits) >= value) {
+                break;
+            }
+            if (maxBits.compareAndSet(currentBits, Double.doubleToRawLongBits(value)) == true) {
+                break;
+            }
+        }
+
+        histogram.record(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? getSum() / count : 0;
+    }
+
+    public double getMax() {
+        long count = getCount();
+        return count > 0 ? Double.longBitsToDouble(maxBits.get()) : 0;
+    }
+
+    /**
+     * Returns the given percentile (0 to 100) of the recorded values, to
+     * within the precision of the histogram. The result is never more
+     * than the largest value recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        return Math.min(histogram.getValueAtPercentile(percentile), (long) Math.ceil(getMax()));
+    }
+}
@@ -20,84 +20,166 @@
 //  SOFTWARE.
 // -----------------------------------------------------------------------
 
+
 package edu.kstate.datastore;
 
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IMap;
-import com.hazelcast.core.IQueue;
+import edu.kstate.datastore.data.SeriesKey;
 import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.EntryQueue;
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.util.Log;
 import edu.kstate.datastore.util.Misc;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class QueueToMapThread extends Thread {
 
-    private HazelcastInstance instance;
-    private long maxLocalValueSetMapCostB;
-    private boolean stopRequested;
+    private Storage storage;
+    private volatile long maxLocalValueSetMapCostB;
+    private int workerCount;
+    private int batchSize;
+    private long seriesChunkS;
+    private boolean enableSeriesStore;
+    private ThreadPoolExecutor threadPool;
+    private volatile boolean stopRequested;
+
+    public QueueToMapThread(Storage storage, long maxLocalValueSetMapCostB, int workerCount, int batchSize, long seriesChunkS, boolean enableSeriesStore) {
+        this.storage = storage;
+        this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.seriesChunkS = seriesChunkS;
+        this.enableSeriesStore = enableSeriesStore;
+        this.threadPool = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    }
 
-    public QueueToMapThread(HazelcastInstance instance, long maxLocalValueSetMapCostB) {
-        this.instance = instance;
+    /**
+     * Changes the most memory the local portion of the value set map may
+     * use. Takes effect the next time the limit is checked.
+     */
+    public void setMaxLocalValueSetMapCostB(long maxLocalValueSetMapCostB) {
         this.maxLocalValueSetMapCostB = maxLocalValueSetMapCostB;
     }
 
     public void requestStop() {
-        Misc.logInfo(this.getClass(), "Stop Requested");
+        Log.info(this.getClass(), "Stop Requested");
         this.stopRequested = true;
     }
 
-    private void eventLoop() throws Exception {
+    private void drainLoop() throws Exception {
 
-        IMap<String, ValueSetEntry> mapValueSet = this.instance.getMap("valueSet");
-        IQueue<ValueSetEntry> queueValueSet = this.instance.getQueue("valueSet");
+        ValueSetStore mapValueSet = this.storage.getValueSetStore();
+        EntryQueue<ValueSetEntry> queueValueSet = this.storage.getUploadQueue();
+        Registry<Long> uploadRegistry = this.storage.getUploadRegistry();
+        SeriesStore seriesStore = this.storage.getSeriesStore();
 
-        while (true) {
+        ArrayList<ValueSetEntry> batch = new ArrayList<ValueSetEntry>(this.batchSize);
 
-            if (stopRequested == true) {
-                int entriesInQueue = queueValueSet.size();
-                if(entriesInQueue > 0) {
-                    Misc.logInfo(this.getClass(), "Warning: Stopping with " + entriesInQueue + " left in queue");
-                }
-                break;
-                /*if (entriesInQueue == 0) {
-                    Misc.logInfo(this.getClass(), "Stop requested and queue is empty");
-                    break;
-                } else {
-                    Misc.logInfo(this.getClass(), "Stop requested but " + entriesInQueue + " left in queue");
-                }*/
-            }
+        while (stopRequested == false) {
 
             // if the valueset map is full then don't move anything into it
-            if (Misc.maxDataExceeded(this.maxLocalValueSetMapCostB, mapValueSet) == true) {
-                Misc.logInfo(this.getClass(), "No more space in map, paused moving from queue");
+            if (Misc.maxDataExceeded(this.maxLocalValueSetMapCostB, this.storage) == true) {
+                Log.debug(this.getClass(), "No more space in map, paused moving from queue");
                 Thread.sleep(1000);
                 continue;
             }
 
-            // remove the next item from the queue and pause if there are no
-            // entries in the queue
-            // BLOCKING - up to one minute (so that we can check for stop)
-            ValueSetEntry nextEntry = queueValueSet.poll(60, TimeUnit.SECONDS);
-
-            // polling
-/*            ValueSetEntry nextEntry = queueValueSet.poll();
-            if (nextEntry == null) {
-                Thread.sleep(1000);
+            // block until there is at least one entry (up to a few seconds
+            // so that we can check for stop), then take whatever else is
+            // already waiting in the queue without blocking again
+            ValueSetEntry firstEntry = queueValueSet.poll(5, TimeUnit.SECONDS);
+            if (firstEntry == null) {
                 continue;
             }
-*/
-            // move the entry from the queue into the map
-            if(nextEntry != null) {
-                mapValueSet.put(ValueSetEntry.createKey(nextEntry), nextEntry);
+            batch.add(firstEntry);
+            if (this.batchSize > 1) {
+                queueValueSet.drainTo(batch, this.batchSize - 1);
+            }
+
+            // the upload state is kept in its own small map so that it can
+            // be cleared later without rewriting the values, the flag in the
+            // value set itself is only how the client hands it over
+            long queuedMs = System.currentTimeMillis();
+            HashMap<String, ValueSetEntry> entries = new HashMap<String, ValueSetEntry>();
+            HashMap<String, Long> uploads = new HashMap<String, Long>();
+            for (ValueSetEntry nextEntry : batch) {
+                String key = ValueSetEntry.createKey(nextEntry);
+                if (nextEntry.getNeedsUpload() == true) {
+                    nextEntry.setNeedsUpload(false);
+                    uploads.put(key, queuedMs);
+                }
+                entries.put(key, nextEntry);
+            }
+
+            // move the entries from the queue into the map, the store splits
+            // the batch up by the member that owns each entry
+            long startPutMs = System.currentTimeMillis();
+            mapValueSet.putAll(entries);
+
+            // mark the uploads only once their values are in the map, so the
+            // delivery thread never finds a marker without a value set
+            if (uploads.isEmpty() == false) {
+                uploadRegistry.putAll(uploads);
             }
-            else
-            {
-                Misc.logInfo(this.getClass(), "Queue is empty");
-                //Thread.sleep(100);
+            Statistics.getInstance().add("QueueToMap-PutAll-MS", System.currentTimeMillis() - startPutMs);
+
+            // add the batch to the blocks of their series, one merge for
+            // each block the batch touches
+            if (this.enableSeriesStore == true) {
+                long startMergeMs = System.currentTimeMillis();
+                try {
+                    for (Map.Entry<SeriesKey, ArrayList<ValueSetEntry>> nextSeries : SeriesKey.groupBySeries(entries.values(), this.seriesChunkS).entrySet()) {
+                        seriesStore.merge(nextSeries.getKey(), nextSeries.getValue());
+                    }
+                } catch (Exception e) {
+                    Log.warn(this.getClass(), "Unable to add value sets to their series: " + e.getMessage());
+                }
+                Statistics.getInstance().add("QueueToMap-SeriesMerge-MS", System.currentTimeMillis() - startMergeMs);
             }
-            //Misc.logInfo(this.getClass(), "Queue > Map: " + nextEntry.toString());
+            Statistics.getInstance().add("QueueToMap-Batch-Size", batch.size());
+
+            batch.clear();
+        }
+    }
+
+    private void eventLoop() throws Exception {
+
+        EntryQueue<ValueSetEntry> queueValueSet = this.storage.getUploadQueue();
+
+        // start the workers that move the entries from the queue to the map
+        for (int i = 0; i < this.workerCount; i++) {
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drainLoop();
+                    } catch (Exception e) {
+                        Log.error(QueueToMapThread.class, e);
+                    }
+                }
+            };
+            threadPool.submit(task);
+        }
+
+        while (stopRequested == false) {
+            Thread.sleep(1000);
+        }
+
+        // the workers notice the stop request the next time they poll
+        threadPool.shutdown();
+        threadPool.awaitTermination(60, TimeUnit.SECONDS);
 
-//            Thread.sleep(10);
+        int entriesInQueue = queueValueSet.size();
+        if (entriesInQueue > 0) {
+            Log.warn(this.getClass(), "Stopping with " + entriesInQueue + " left in queue");
         }
     }
 
@@ -105,8 +187,8 @@ public class QueueToMapThread extends Thread {
         try {
             eventLoop();
         } catch (Exception e) {
-            Misc.logException(this.getClass(), e);
+            Log.error(this.getClass(), e);
         }
-        Misc.logInfo(this.getClass(), "Stopped");
+        Log.info(this.getClass(), "Stopped");
     }
 }
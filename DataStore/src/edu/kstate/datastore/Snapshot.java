@@ -0,0 +1,245 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.util.EpochTime;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.util.Misc;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the local portion of the valueSet and elementSet maps to a binary
+ * file and loads it back into the maps, so that data fetched during one run
+ * is available as cache hits at the start of the next one.
+ * <p/>
+ * The file holds a small header followed by the element set section and
+ * then the value set section. Each entry is written with its own
+ * DataSerializable format, so the snapshot is no larger than the entries
+ * themselves plus their keys.
+ */
+public class Snapshot {
+
+    private static final int MAGIC = 0x44535331; // "DSS1"
+    private static final int VERSION = 1;
+    private static final int LOAD_BATCH_SIZE = 256;
+    private static final int PEEK_BATCH_SIZE = 1024;
+
+    /**
+     * Writes the locally owned entries to the given file. The snapshot is
+     * first written to a temporary file which then replaces the previous
+     * snapshot, so a failure part way through never leaves a truncated file.
+     */
+    public static void write(Storage storage, String filename) throws Exception {
+
+        long startMs = System.currentTimeMillis();
+
+        Registry<ElementSetEntry> mapElementSet = storage.getElementSetRegistry();
+        ValueSetStore mapValueSet = storage.getValueSetStore();
+        Registry<Long> uploadRegistry = storage.getUploadRegistry();
+
+        File file = new File(filename);
+        File tempFile = new File(filename + ".tmp");
+
+        int elementSetCount = 0;
+        int valueSetCount = 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startMs);
+
+            // element sets are needed to interpret the value sets, so they
+            // are written first
+            for (String key : mapElementSet.localKeySet()) {
+                ElementSetEntry entry = mapElementSet.get(key);
+                if (entry == null) {
+                    continue;
+                }
+                out.writeBoolean(true);
+                out.writeUTF(key);
+                entry.writeData(out);
+                elementSetCount++;
+            }
+            out.writeBoolean(false);
+
+            // value sets that still need to be uploaded are model output for
+            // this run only, so they are not carried over
+            // a get would count as a hit, which would make the prefetched
+            // value sets no client has used yet look used to expiration, so
+            // they are peeked at in batches instead
+            ArrayList<String> batchKeys = new ArrayList<String>(PEEK_BATCH_SIZE);
+            for (String key : mapValueSet.localKeySet()) {
+                if (uploadRegistry.containsKey(key) == true) {
+                    continue;
+                }
+                batchKeys.add(key);
+                if (batchKeys.size() == PEEK_BATCH_SIZE) {
+                    valueSetCount += writeValueSets(out, mapValueSet, batchKeys);
+                    batchKeys.clear();
+                }
+            }
+            valueSetCount += writeValueSets(out, mapValueSet, batchKeys);
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+
+        // replace the previous snapshot
+        if (file.exists() == true && file.delete() == false) {
+            throw new IOException("Unable to replace snapshot: " + filename);
+        }
+        if (tempFile.renameTo(file) == false) {
+            throw new IOException("Unable to rename snapshot: " + tempFile.getPath());
+        }
+
+        long writeMs = System.currentTimeMillis() - startMs;
+        Log.info(Snapshot.class, "Wrote %d element sets and %d value sets to %s (%d MS)", elementSetCount, valueSetCount, filename, writeMs);
+        Statistics.getInstance().add("Snapshot-Write-MS", writeMs);
+        Statistics.getInstance().add("Snapshot-Write-ValueSet-Count", valueSetCount);
+        Statistics.getInstance().add("Snapshot-Write-Byte", file.length());
+    }
+
+    /**
+     * Writes the value sets with the given keys that are still in the map
+     * and returns how many were written.
+     */
+    private static int writeValueSets(DataOutputStream out, ValueSetStore mapValueSet, ArrayList<String> keys) throws IOException {
+        int valueSetCount = 0;
+        for (Map.Entry<String, ValueSetEntry> nextEntry : mapValueSet.peekAll(keys).entrySet()) {
+            out.writeBoolean(true);
+            out.writeUTF(nextEntry.getKey());
+            nextEntry.getValue().writeData(out);
+            valueSetCount++;
+        }
+        return valueSetCount;
+    }
+
+    /**
+     * Loads a snapshot written by write into the maps. The file is decoded
+     * on the calling thread and the entries are inserted in batches by a
+     * pool of threads. Loading stops early once the local portion of the
+     * value set map reaches the given limit. Returns the number of value
+     * sets that were loaded, or zero if the file does not exist.
+     */
+    public static int load(Storage storage, String filename, int threadCount, final long maxLocalValueSetMapCostB) throws Exception {
+
+        File file = new File(filename);
+        if (file.exists() == false) {
+            Log.info(Snapshot.class, "No snapshot to load at " + filename);
+            return 0;
+        }
+
+        long startMs = System.currentTimeMillis();
+
+        final Registry<ElementSetEntry> mapElementSet = storage.getElementSetRegistry();
+        final ValueSetStore mapValueSet = storage.getValueSetStore();
+
+        // when all the threads are busy the reader inserts the batch itself,
+        // which keeps the number of decoded entries in memory bounded
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threadCount), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        int elementSetCount = 0;
+        int valueSetCount = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.warn(Snapshot.class, "Ignoring snapshot with unknown format: " + filename);
+                return 0;
+            }
+            long createdMs = in.readLong();
+            Log.info(Snapshot.class, "Loading snapshot written at " + EpochTime.format(createdMs / 1000));
+
+            HashMap<String, ElementSetEntry> elementSets = new HashMap<String, ElementSetEntry>();
+            while (in.readBoolean() == true) {
+                String key = in.readUTF();
+                ElementSetEntry entry = new ElementSetEntry();
+                entry.readData(in);
+                elementSets.put(key, entry);
+            }
+            mapElementSet.putAll(elementSets);
+            elementSetCount = elementSets.size();
+
+            HashMap<String, ValueSetEntry> batch = new HashMap<String, ValueSetEntry>();
+            while (in.readBoolean() == true) {
+                String key = in.readUTF();
+                ValueSetEntry entry = new ValueSetEntry();
+                entry.readData(in);
+                batch.put(key, entry);
+
+                if (batch.size() == LOAD_BATCH_SIZE) {
+
+                    // checking the map cost is a local operation, so it's
+                    // cheap enough to do once per batch
+                    if (Misc.maxDataExceeded(maxLocalValueSetMapCostB, storage) == true) {
+                        Log.info(Snapshot.class, "No more space in map, stopped loading snapshot");
+                        batch.clear();
+                        break;
+                    }
+
+                    submitBatch(threadPool, mapValueSet, batch);
+                    valueSetCount += batch.size();
+                    batch = new HashMap<String, ValueSetEntry>();
+                }
+            }
+            if (batch.size() > 0) {
+                submitBatch(threadPool, mapValueSet, batch);
+                valueSetCount += batch.size();
+            }
+        } finally {
+            in.close();
+            threadPool.shutdown();
+            threadPool.awaitTermination(10, TimeUnit.MINUTES);
+        }
+
+        long loadMs = System.currentTimeMillis() - startMs;
+        Log.info(Snapshot.class, "Loaded %d element sets and %d value sets from %s (%d MS)", elementSetCount, valueSetCount, filename, loadMs);
+        Statistics.getInstance().add("Snapshot-Load-MS", loadMs);
+        Statistics.getInstance().add("Snapshot-Load-ValueSet-Count", valueSetCount);
+
+        return valueSetCount;
+    }
+
+    private static void submitBatch(ThreadPoolExecutor threadPool, final ValueSetStore mapValueSet, final HashMap<String, ValueSetEntry> batch) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                mapValueSet.putAll(batch);
+            }
+        };
+        threadPool.execute(task);
+    }
+}
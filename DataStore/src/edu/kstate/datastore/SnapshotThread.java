@@ -0,0 +1,65 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.util.Log;
+
+public class SnapshotThread extends Thread {
+
+    private Storage storage;
+    private String filename;
+    private long intervalMs;
+    private boolean stopRequested;
+
+    public SnapshotThread(Storage storage, String filename, long intervalMs) {
+        this.storage = storage;
+        this.filename = filename;
+        this.intervalMs = intervalMs;
+    }
+
+    public void requestStop() {
+        Log.info(this.getClass(), "Stop Requested");
+        this.stopRequested = true;
+        this.interrupt();
+    }
+
+    public void run() {
+        while (stopRequested == false) {
+            try {
+                Thread.sleep(this.intervalMs);
+            } catch (InterruptedException e) {
+                // woken up to stop, the final snapshot is written at shutdown
+                continue;
+            }
+
+            try {
+                Snapshot.write(this.storage, this.filename);
+            } catch (Exception e) {
+                Log.error(this.getClass(), e);
+            }
+        }
+        Log.info(this.getClass(), "Stopped");
+    }
+}
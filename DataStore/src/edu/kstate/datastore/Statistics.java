@@ -24,81 +24,76 @@ package edu.kstate.datastore;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
-import java.util.ArrayList;
-import java.util.Hashtable;
-
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the statistics recorded by all of the threads. Each statistic
+ * keeps its count, sum, maximum and a histogram of its values, so recording
+ * a value takes constant time and memory however long the run is.
+ */
 public class Statistics {
-    private static Statistics instance;
-    public String id;
-    private Hashtable<String, ArrayList<Double>> statistics;
+    private static final Statistics instance = new Statistics();
+    public volatile String id;
+    private ConcurrentHashMap<String, Metric> statistics;
 
     private Statistics() {
-        statistics = new Hashtable<String, ArrayList<Double>>();
+        statistics = new ConcurrentHashMap<String, Metric>();
         id = "0";
     }
 
     public static Statistics getInstance() {
-        if (instance == null)
-            instance = new Statistics();
         return instance;
     }
 
     public void add(String statistic, double value) {
-
-        // find the arraylist for the given statistic
-        ArrayList<Double> values = statistics.get(statistic);
-
-        // create an array list to hold the values if necessary
-        if (values == null) {
-            values = new ArrayList<Double>();
-            statistics.put(statistic, values);
-        }
-
-        // add the new value
-        values.add(value);
+        getMetric(statistic).record(value);
     }
 
-    private String generateReportItemForCsv(String name, ArrayList<Double> values) {
-        double sum = 0;
-        long count = 0;
-
-        // don't use an iterator since it may cause a concurrent modification
-        // exception
-        //for (Double value : values) {
-        int valueCount = values.size();
-        for(int i=0; i<valueCount; i++) {
-            Double value = values.get(i);
-            if (value == null) {
-                System.out.println("ERROR: NULL stat value in: " + name);
-                continue;
+    /**
+     * Returns the metric for the given statistic, creating it if necessary.
+     */
+    public Metric getMetric(String statistic) {
+
+        // find the metric for the given statistic
+        Metric metric = statistics.get(statistic);
+
+        // create the metric if necessary, another thread may have created
+        // it at the same time in which case we use theirs
+        if (metric == null) {
+            Metric newMetric = new Metric(statistic);
+            metric = statistics.putIfAbsent(statistic, newMetric);
+            if (metric == null) {
+                metric = newMetric;
             }
-
-            sum += value;
-            count++;
         }
-        double average = 0;
-        if (count > 0)
-            average = sum / count;
 
+        return metric;
+    }
+
+    private String generateReportItemForCsv(Metric metric) {
         StringBuffer sb = new StringBuffer();
         sb.append(id);
-        sb.append("," + name);
-        sb.append(",").append(String.format("%.2f", sum));
-        sb.append(",").append(String.format("%.2f", average));
-        sb.append(",").append(count);
+        sb.append("," + metric.getName());
+        sb.append(",").append(String.format("%.2f", metric.getSum()));
+        sb.append(",").append(String.format("%.2f", metric.getMean()));
+        sb.append(",").append(metric.getCount());
+        sb.append(",").append(metric.getValueAtPercentile(50.0));
+        sb.append(",").append(metric.getValueAtPercentile(99.0));
+        sb.append(",").append(metric.getValueAtPercentile(99.9));
+        sb.append(",").append(String.format("%.2f", metric.getMax()));
         return sb.toString();
     }
 
+    /**
+     * Returns one line per statistic: id, name, sum, mean, count, p50, p99,
+     * p99.9 and max.
+     */
     public StringBuffer toCsv() throws Exception {
         StringBuffer sb = new StringBuffer();
 
-        // don't just enumerate the keyset because any changes will
-        // cause a concurrent modification exception
-        String[] keySet = statistics.keySet().toArray(new String[0]);
-        for (int i = 0; i < keySet.length; i++) {
-            String key = keySet[i];
-            ArrayList<Double> values = statistics.get(key);
-            sb.append(generateReportItemForCsv(key, values)).append("\r\n");
+        for (String key : new TreeSet<String>(statistics.keySet())) {
+            sb.append(generateReportItemForCsv(statistics.get(key))).append("\r\n");
         }
 
         return sb;
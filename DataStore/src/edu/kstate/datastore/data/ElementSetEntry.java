@@ -55,6 +55,12 @@ public class ElementSetEntry implements DataSerializable {
         this.dataLength = dataBytes.length;
     }
 
+    public ElementSetEntry(String elementSetId, String[] elementIds) {
+        this.elementSetId = elementSetId;
+        this.dataBytes = ByteUtil.toByta(elementIds);
+        this.dataLength = dataBytes.length;
+    }
+
     public String getElementSetId() {
         return elementSetId;
     }
@@ -0,0 +1,238 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.data;
+
+import com.hazelcast.nio.DataSerializable;
+import edu.kstate.datastore.util.EpochTime;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The value sets of one chunk of a series stored as a single block. The
+ * header fields are kept once for the whole block, the time steps are
+ * kept in order in an index of epoch times, and the values are kept in
+ * one array with a row of elements for each time step. The time stamp
+ * strings are only made again when a value set is sliced out.
+ */
+public class SeriesBlock implements DataSerializable {
+    private static final long serialVersionUID = 1L;
+
+    // the strings and arrays of a block, roughly
+    private static final long BLOCK_OVERHEAD_B = 256;
+
+    private String webServiceId;
+    private String quantityId;
+    private String elementSetId;
+    private String scenarioId;
+    private int elementCount;
+    private int timeCount;
+    private long[] timesS;
+    private double[] values;
+
+    /**
+     * Required for serialization;
+     */
+    public SeriesBlock() {
+    }
+
+    public SeriesBlock(SeriesKey seriesKey, int elementCount) {
+        this.webServiceId = seriesKey.getWebServiceId();
+        this.quantityId = seriesKey.getQuantityId();
+        this.elementSetId = seriesKey.getElementSetId();
+        this.scenarioId = seriesKey.getScenarioId();
+        this.elementCount = elementCount;
+        this.timesS = new long[4];
+        this.values = new double[4 * elementCount];
+    }
+
+    public SeriesBlock(SeriesBlock other) {
+        this.webServiceId = other.webServiceId;
+        this.quantityId = other.quantityId;
+        this.elementSetId = other.elementSetId;
+        this.scenarioId = other.scenarioId;
+        this.elementCount = other.elementCount;
+        this.timeCount = other.timeCount;
+        this.timesS = other.timesS.clone();
+        this.values = other.values.clone();
+    }
+
+    public int getElementCount() {
+        return this.elementCount;
+    }
+
+    public int getTimeCount() {
+        return this.timeCount;
+    }
+
+    /**
+     * Returns the estimated memory used by the block.
+     */
+    public long getCostB() {
+        return BLOCK_OVERHEAD_B + 8L * this.timeCount * (this.elementCount + 1);
+    }
+
+    /**
+     * Adds the values of a time step to the block, replacing them if the
+     * time step is already there. Returns false if the block already had
+     * the same values for the time step, so nothing changed.
+     */
+    public boolean put(ValueSetEntry entry) {
+        double[] entryValues = entry.getValues();
+        if (entryValues.length != this.elementCount) {
+            throw new IllegalArgumentException("Value set " + ValueSetEntry.createKey(entry) + " has " + entryValues.length + " values, block has " + this.elementCount);
+        }
+
+        long timeS = entry.getTimeS();
+        int index = Arrays.binarySearch(this.timesS, 0, this.timeCount, timeS);
+        if (index < 0) {
+
+            // make room for the new time step at its place in the index
+            index = -(index + 1);
+            if (this.timeCount == this.timesS.length) {
+                int capacity = this.timesS.length * 2;
+                this.timesS = Arrays.copyOf(this.timesS, capacity);
+                this.values = Arrays.copyOf(this.values, capacity * this.elementCount);
+            }
+            int moveCount = this.timeCount - index;
+            System.arraycopy(this.timesS, index, this.timesS, index + 1, moveCount);
+            System.arraycopy(this.values, index * this.elementCount, this.values, (index + 1) * this.elementCount, moveCount * this.elementCount);
+            this.timeCount++;
+        } else if (Arrays.equals(this.values, index * this.elementCount, (index + 1) * this.elementCount, entryValues, 0, this.elementCount) == true) {
+            return false;
+        }
+
+        this.timesS[index] = timeS;
+        System.arraycopy(entryValues, 0, this.values, index * this.elementCount, this.elementCount);
+        return true;
+    }
+
+    /**
+     * Returns the value set of the given time step sliced out of the
+     * block, or null if the block doesn't have it.
+     */
+    public ValueSetEntry getValueSet(long timeS) {
+        int index = Arrays.binarySearch(this.timesS, 0, this.timeCount, timeS);
+        if (index < 0) {
+            return null;
+        }
+        return slice(index);
+    }
+
+    /**
+     * Returns the value sets from fromS up to but not including toS, in
+     * time order.
+     */
+    public ArrayList<ValueSetEntry> getValueSets(long fromS, long toS) {
+        int fromIndex = Arrays.binarySearch(this.timesS, 0, this.timeCount, fromS);
+        if (fromIndex < 0) {
+            fromIndex = -(fromIndex + 1);
+        }
+        ArrayList<ValueSetEntry> valueSets = new ArrayList<ValueSetEntry>();
+        for (int i = fromIndex; i < this.timeCount && this.timesS[i] < toS; i++) {
+            valueSets.add(slice(i));
+        }
+        return valueSets;
+    }
+
+    /**
+     * Returns the index of the latest time step at or before timeS, or -1
+     * if there isn't one.
+     */
+    public int floorIndex(long timeS) {
+        int index = Arrays.binarySearch(this.timesS, 0, this.timeCount, timeS);
+        if (index >= 0) {
+            return index;
+        }
+        return -(index + 1) - 1;
+    }
+
+    /**
+     * Returns the index of the earliest time step at or after timeS, or -1
+     * if there isn't one.
+     */
+    public int ceilingIndex(long timeS) {
+        int index = Arrays.binarySearch(this.timesS, 0, this.timeCount, timeS);
+        if (index >= 0) {
+            return index;
+        }
+        index = -(index + 1);
+        return index < this.timeCount ? index : -1;
+    }
+
+    public long getTimeS(int index) {
+        return this.timesS[index];
+    }
+
+    /**
+     * Returns a copy of the values of the time step at the given index.
+     */
+    public double[] getValues(int index) {
+        return Arrays.copyOfRange(this.values, index * this.elementCount, (index + 1) * this.elementCount);
+    }
+
+    private ValueSetEntry slice(int index) {
+        return new ValueSetEntry(this.webServiceId, this.quantityId, EpochTime.format(this.timesS[index]), this.elementSetId, this.scenarioId, getValues(index));
+    }
+
+    @Override
+    public void readData(DataInput in) throws IOException {
+        this.webServiceId = in.readUTF();
+        this.quantityId = in.readUTF();
+        this.elementSetId = in.readUTF();
+        this.scenarioId = in.readUTF();
+        this.elementCount = in.readInt();
+        this.timeCount = in.readInt();
+        this.timesS = new long[Math.max(this.timeCount, 4)];
+        this.values = new double[this.timesS.length * this.elementCount];
+        for (int i = 0; i < this.timeCount; i++) {
+            this.timesS[i] = in.readLong();
+        }
+        for (int i = 0; i < this.timeCount * this.elementCount; i++) {
+            this.values[i] = in.readDouble();
+        }
+    }
+
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeUTF(this.webServiceId);
+        out.writeUTF(this.quantityId);
+        out.writeUTF(this.elementSetId);
+        out.writeUTF(this.scenarioId);
+        out.writeInt(this.elementCount);
+        out.writeInt(this.timeCount);
+        for (int i = 0; i < this.timeCount; i++) {
+            out.writeLong(this.timesS[i]);
+        }
+        for (int i = 0; i < this.timeCount * this.elementCount; i++) {
+            out.writeDouble(this.values[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%s:%s:%s:%d", webServiceId, quantityId, elementSetId, scenarioId, timeCount);
+    }
+}
@@ -0,0 +1,180 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.data;
+
+import com.hazelcast.nio.DataSerializable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Identifies one chunk of a series: the value sets of a web service,
+ * quantity, element set and scenario whose time stamps fall in the same
+ * span of time. The key is hashed and compared often, so its text and
+ * hash code are worked out once and kept.
+ */
+public class SeriesKey implements DataSerializable {
+    private static final long serialVersionUID = 1L;
+    private String webServiceId;
+    private String quantityId;
+    private String elementSetId;
+    private String scenarioId;
+    private long chunk;
+    private transient String text;
+    private transient int hash;
+
+    /**
+     * Required for serialization;
+     */
+    public SeriesKey() {
+
+    }
+
+    public SeriesKey(String webServiceId, String quantityId, String elementSetId, String scenarioId, long chunk) {
+        this.webServiceId = webServiceId;
+        this.quantityId = quantityId;
+        this.elementSetId = elementSetId;
+        this.scenarioId = scenarioId;
+        this.chunk = chunk;
+    }
+
+    /**
+     * Returns the key of the chunk the given epoch time falls in, where
+     * each chunk covers chunkS of time. A chunk length of zero puts the
+     * whole series in one chunk.
+     */
+    public static SeriesKey create(String webServiceId, String quantityId, String elementSetId, long timeS, String scenarioId, long chunkS) {
+        long chunk = 0;
+        if (chunkS > 0) {
+            chunk = Math.floorDiv(timeS, chunkS);
+        }
+        return new SeriesKey(webServiceId, quantityId, elementSetId, scenarioId, chunk);
+    }
+
+    public static SeriesKey create(ValueSetRequestEntry entry, long chunkS) {
+        return create(entry.getWebServiceId(), entry.getQuantityId(), entry.getElementSetId(), entry.getTimeS(), entry.getScenarioId(), chunkS);
+    }
+
+    public static SeriesKey create(ValueSetEntry entry, long chunkS) {
+        return create(entry.getWebServiceId(), entry.getQuantityId(), entry.getElementSetId(), entry.getTimeS(), entry.getScenarioId(), chunkS);
+    }
+
+    /**
+     * Groups the value sets by the chunk of the series each belongs to.
+     */
+    public static HashMap<SeriesKey, ArrayList<ValueSetEntry>> groupBySeries(Collection<ValueSetEntry> entries, long chunkS) {
+        HashMap<SeriesKey, ArrayList<ValueSetEntry>> entriesBySeries = new HashMap<SeriesKey, ArrayList<ValueSetEntry>>();
+        for (ValueSetEntry nextEntry : entries) {
+            SeriesKey seriesKey = create(nextEntry, chunkS);
+            ArrayList<ValueSetEntry> seriesEntries = entriesBySeries.get(seriesKey);
+            if (seriesEntries == null) {
+                seriesEntries = new ArrayList<ValueSetEntry>();
+                entriesBySeries.put(seriesKey, seriesEntries);
+            }
+            seriesEntries.add(nextEntry);
+        }
+        return entriesBySeries;
+    }
+
+    /**
+     * Returns the key of the chunk the given number of chunks away from
+     * this one in the same series.
+     */
+    public SeriesKey getNeighbour(int offset) {
+        return new SeriesKey(this.webServiceId, this.quantityId, this.elementSetId, this.scenarioId, this.chunk + offset);
+    }
+
+    public String getWebServiceId() {
+        return this.webServiceId;
+    }
+
+    public String getQuantityId() {
+        return this.quantityId;
+    }
+
+    public String getElementSetId() {
+        return this.elementSetId;
+    }
+
+    public String getScenarioId() {
+        return this.scenarioId;
+    }
+
+    public long getChunk() {
+        return this.chunk;
+    }
+
+    @Override
+    public void readData(DataInput in) throws IOException {
+        this.webServiceId = in.readUTF();
+        this.quantityId = in.readUTF();
+        this.elementSetId = in.readUTF();
+        this.scenarioId = in.readUTF();
+        this.chunk = in.readLong();
+        this.text = null;
+        this.hash = 0;
+    }
+
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeUTF(this.webServiceId);
+        out.writeUTF(this.quantityId);
+        out.writeUTF(this.elementSetId);
+        out.writeUTF(this.scenarioId);
+        out.writeLong(this.chunk);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SeriesKey == false) {
+            return false;
+        }
+        SeriesKey other = (SeriesKey) o;
+        return this.chunk == other.chunk
+                && this.webServiceId.equals(other.webServiceId)
+                && this.quantityId.equals(other.quantityId)
+                && this.elementSetId.equals(other.elementSetId)
+                && this.scenarioId.equals(other.scenarioId);
+    }
+
+    @Override
+    public int hashCode() {
+        if (this.hash == 0) {
+            this.hash = toString().hashCode();
+        }
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        if (this.text == null) {
+            this.text = this.webServiceId + ":" + this.quantityId + ":" + this.elementSetId + ":" + this.scenarioId + ":" + this.chunk;
+        }
+        return this.text;
+    }
+}
@@ -23,7 +23,9 @@
 package edu.kstate.datastore.data;
 
 import com.hazelcast.nio.DataSerializable;
+import edu.kstate.datastore.util.EpochTime;
 import edu.kstate.datastore.util.ByteUtil;
+import edu.kstate.datastore.util.XorCodec;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -31,6 +33,7 @@ import java.io.IOException;
 
 public class ValueSetEntry implements DataSerializable {
     private static final long serialVersionUID = 1L;
+    private static final long NO_TIME = Long.MIN_VALUE;
     private String webServiceId;
     private String quantityId;
     private String timeStamp;
@@ -40,6 +43,11 @@ public class ValueSetEntry implements DataSerializable {
     private byte[] dataBytes;
     private int dataLength;
 
+    // the time stamp as an epoch time, read from the string the first time
+    // it's needed. the clients only know the string, so only it is
+    // serialized.
+    private transient long timeS = NO_TIME;
+
     /**
      * Required for serialization;
      */
@@ -73,6 +81,17 @@ public class ValueSetEntry implements DataSerializable {
         return quantityId;
     }
 
+    /**
+     * Returns the time stamp in epoch seconds. Throws an unchecked
+     * exception if the time stamp isn't valid.
+     */
+    public long getTimeS() {
+        if (this.timeS == NO_TIME) {
+            this.timeS = EpochTime.parse(this.timeStamp);
+        }
+        return this.timeS;
+    }
+
     public String getTimeStamp() {
         return timeStamp;
     }
@@ -86,9 +105,45 @@ public class ValueSetEntry implements DataSerializable {
     }
 
     public double[] getValues() {
+        if (XorCodec.isEncoded(this.dataLength) == true) {
+            return XorCodec.decode(this.dataBytes);
+        }
         return ByteUtil.toDoubleA(this.dataBytes);
     }
 
+    /**
+     * Returns the number of values without decoding them.
+     */
+    public int getValueCount() {
+        if (XorCodec.isEncoded(this.dataLength) == true) {
+            return XorCodec.getValueCount(this.dataBytes);
+        }
+        return this.dataLength / 8;
+    }
+
+    /**
+     * Returns the size of the values as they are stored.
+     */
+    public int getDataLength() {
+        return this.dataLength;
+    }
+
+    /**
+     * Replaces the raw values with their compressed form if that is
+     * smaller. Clients that read the compressed form have to decode it
+     * with the same codec.
+     */
+    public void compress() {
+        if (XorCodec.isEncoded(this.dataLength) == true) {
+            return;
+        }
+        byte[] encoded = XorCodec.encode(ByteUtil.toDoubleA(this.dataBytes));
+        if (encoded.length < this.dataLength) {
+            this.dataBytes = encoded;
+            this.dataLength = encoded.length;
+        }
+    }
+
     public boolean getNeedsUpload() {
         return this.needsUpload;
     }
@@ -103,6 +158,7 @@ public class ValueSetEntry implements DataSerializable {
         this.webServiceId = in.readUTF();
         this.quantityId = in.readUTF();
         this.timeStamp = in.readUTF();
+        this.timeS = NO_TIME;
         this.elementSetId = in.readUTF();
         this.scenarioId = in.readUTF();
         this.needsUpload = in.readBoolean();
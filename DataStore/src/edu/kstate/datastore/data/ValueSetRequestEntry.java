@@ -23,6 +23,7 @@
 package edu.kstate.datastore.data;
 
 import com.hazelcast.nio.DataSerializable;
+import edu.kstate.datastore.util.EpochTime;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -30,6 +31,7 @@ import java.io.IOException;
 
 public class ValueSetRequestEntry implements DataSerializable {
     private static final long serialVersionUID = 1L;
+    private static final long NO_TIME = Long.MIN_VALUE;
     private String webServiceId;
     private String quantityId;
     private String elementSetId;
@@ -37,6 +39,11 @@ public class ValueSetRequestEntry implements DataSerializable {
     private String timeStamp;
     private boolean isFetching;
 
+    // the time stamp as an epoch time, read from the string the first time
+    // it's needed. the clients only know the string, so only it is
+    // serialized.
+    private transient long timeS = NO_TIME;
+
     /**
      * Required for serialization;
      */
@@ -72,6 +79,17 @@ public class ValueSetRequestEntry implements DataSerializable {
         return this.elementSetId;
     }
 
+    /**
+     * Returns the time stamp in epoch seconds. Throws an unchecked
+     * exception if the time stamp isn't valid.
+     */
+    public long getTimeS() {
+        if (this.timeS == NO_TIME) {
+            this.timeS = EpochTime.parse(this.timeStamp);
+        }
+        return this.timeS;
+    }
+
     public String getTimeStamp() {
         return this.timeStamp;
     }
@@ -94,6 +112,7 @@ public class ValueSetRequestEntry implements DataSerializable {
         this.quantityId = in.readUTF();
         this.elementSetId = in.readUTF();
         this.timeStamp = in.readUTF();
+        this.timeS = NO_TIME;
         this.scenarioId = in.readUTF();
     }
 
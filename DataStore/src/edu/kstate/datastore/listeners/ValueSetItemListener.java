@@ -26,6 +26,7 @@ import com.hazelcast.core.ItemEvent;
 import com.hazelcast.core.ItemListener;
 import edu.kstate.datastore.Statistics;
 import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.trace.RequestRecorder;
 
 public class ValueSetItemListener implements ItemListener<ValueSetEntry> {
 
@@ -34,6 +35,12 @@ public class ValueSetItemListener implements ItemListener<ValueSetEntry> {
 		// only for debugging
 		//Misc.log(this.getClass(), "Added: " + item.toString());
 		Statistics.getInstance().add("ValueSetItemAdded", 1);
+
+		// the item is only included when the listener was added for
+		// recording
+		if (item.getItem() != null) {
+			RequestRecorder.getInstance().recordUpload(item.getItem());
+		}
 	}
 
 	@Override
@@ -26,18 +26,42 @@ import com.hazelcast.core.ItemEvent;
 import com.hazelcast.core.ItemListener;
 import edu.kstate.datastore.Statistics;
 import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.trace.RequestRecorder;
+import edu.kstate.datastore.trace.Tracer;
 
 public class ValueSetRequestItemListener implements ItemListener<ValueSetRequestEntry> {
 
+	private String statisticPrefix;
+	private boolean isPrefetch;
+
+	public ValueSetRequestItemListener() {
+		this("ValueSetRequest", false);
+	}
+
+	/**
+	 * The prefix distinguishes the request lanes in the statistics.
+	 */
+	public ValueSetRequestItemListener(String statisticPrefix, boolean isPrefetch) {
+		this.statisticPrefix = statisticPrefix;
+		this.isPrefetch = isPrefetch;
+	}
+
 	@Override
 	public void itemAdded(ItemEvent<ValueSetRequestEntry> item) {
 		// only for debugging
 		//Misc.log(this.getClass(), "Added: " + item.toString());
-		Statistics.getInstance().add("ValueSetRequestItemAdded", 1);
+		Statistics.getInstance().add(statisticPrefix + "ItemAdded", 1);
+
+		// the item is only included when the listener was added for tracing
+		// or recording
+		if (item.getItem() != null) {
+			Tracer.getInstance().markEnqueued(ValueSetRequestEntry.createKey(item.getItem()));
+			RequestRecorder.getInstance().recordRequest(item.getItem(), isPrefetch);
+		}
 	}
 
 	@Override
 	public void itemRemoved(ItemEvent<ValueSetRequestEntry> arg0) {
-		Statistics.getInstance().add("ValueSetRequestItemRemoved", 1);
+		Statistics.getInstance().add(statisticPrefix + "ItemRemoved", 1);
 	}
 }
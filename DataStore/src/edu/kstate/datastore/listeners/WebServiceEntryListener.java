@@ -25,26 +25,38 @@ package edu.kstate.datastore.listeners;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.EntryListener;
 import edu.kstate.datastore.data.WebServiceEntry;
-import edu.kstate.datastore.util.Misc;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.util.Log;
 
 public class WebServiceEntryListener implements EntryListener<String, WebServiceEntry> {
 
+	private MetadataCache metadataCache;
+
+	public WebServiceEntryListener(MetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
 	@Override
 	public void entryAdded(EntryEvent<String, WebServiceEntry> event) {
+		this.metadataCache.invalidateWebService(event.getKey());
+
 		// only for debugging
 		//WebServiceEntry entry = (WebServiceEntry) event.getValue();
-		//Misc.logInfo(this.getClass(), "Added: " + entry.toString());
+		//Log.info(this.getClass(), "Added: " + entry.toString());
 	}
 
 	@Override
 	public void entryEvicted(EntryEvent<String, WebServiceEntry> event) {
+		this.metadataCache.invalidateWebService(event.getKey());
 	}
 
 	@Override
 	public void entryRemoved(EntryEvent<String, WebServiceEntry> event) {
+		this.metadataCache.invalidateWebService(event.getKey());
 	}
 
 	@Override
 	public void entryUpdated(EntryEvent<String, WebServiceEntry> event) {
+		this.metadataCache.invalidateWebService(event.getKey());
 	}
 }
@@ -0,0 +1,429 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.Join;
+import com.hazelcast.config.NetworkConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import edu.kstate.datastore.DataStore;
+import edu.kstate.datastore.Metric;
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.util.EpochTime;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.util.Misc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Drives a data store cluster with a synthetic multi-client workload and
+ * reports the latencies and throughput the clients saw. The cluster can be
+ * one the driver joins, one data store started in this JVM ("embedded"),
+ * or a number of data store JVMs started by the driver ("processes").
+ * Options starting with "dataStore." are passed on to the data stores it
+ * starts, e.g. "dataStore.enableAssembly true".
+ *
+ * Each client steps through the same run of time steps for its own
+ * element set. The overlap option sets the fraction of each element set
+ * shared with the next client's, and clients can prefetch ahead, spend
+ * time computing, and upload their output for each step. The driver joins
+ * the cluster as a lite member so it holds no partitions, points the test
+ * web service at the simulator (started in this JVM unless a url is
+ * given), and writes the statistics to a CSV file at the end.
+ */
+public class ClientDriver {
+
+    public static final String WEB_SERVICE_ID = "TestWebService";
+
+    public static HazelcastInstance joinCluster(String masterAddress, int port) {
+        Config cfg = new Config();
+        cfg.setLiteMember(true);
+        cfg.setPort(port);
+        cfg.setPortAutoIncrement(true);
+
+        NetworkConfig network = cfg.getNetworkConfig();
+        Join join = network.getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setRequiredMember(masterAddress + ":" + 5701);
+        join.getTcpIpConfig().setEnabled(true);
+        Log.info(ClientDriver.class, "Connecting to master at " + masterAddress + ":" + 5701);
+
+        return Hazelcast.newHazelcastInstance(cfg);
+    }
+
+    public static String[] createTimeStamps(String startTime, int timeStepCount, long timeStepS) throws Exception {
+        long startS = EpochTime.parse(startTime);
+        String[] timeStamps = new String[timeStepCount];
+        for (int i = 0; i < timeStepCount; i++) {
+            timeStamps[i] = EpochTime.format(startS + i * timeStepS);
+        }
+        return timeStamps;
+    }
+
+    public static ElementSetEntry createElementSet(String elementSetId, int firstElement, int elementCount) {
+        String[] elementIds = new String[elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            elementIds[i] = String.format("NWIS:%08d", firstElement + i);
+        }
+        return new ElementSetEntry(elementSetId, elementIds);
+    }
+
+    /**
+     * Starts a data store in this JVM and waits for its instance to come
+     * up.
+     */
+    public static Thread startEmbeddedDataStore(final String[] args) throws Exception {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DataStore.main(args);
+            }
+        }, "DataStore");
+        thread.start();
+
+        while (Hazelcast.getAllHazelcastInstances().isEmpty() == true) {
+            Thread.sleep(100);
+        }
+        return thread;
+    }
+
+    /**
+     * Starts a data store JVM with the same class path as this one, logging
+     * to dataStore-ID.log.
+     */
+    private static Process startDataStoreProcess(int id, String[] args) throws Exception {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DataStore.class.getName());
+        command.addAll(Arrays.asList(args));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File("dataStore-" + id + ".log"));
+        return builder.start();
+    }
+
+    private static int countDataMembers(HazelcastInstance instance) {
+        int count = 0;
+        Set<Member> members = instance.getCluster().getMembers();
+        for (Member member : members) {
+            if (member.isLiteMember() == false) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static void report(Class<?> source, String name, Metric metric) {
+        Log.info(source, "%-24s count %8d  mean %9.1f  p50 %7d  p99 %7d  p99.9 %7d  max %7.0f", name, metric.getCount(),
+                metric.getMean(), metric.getValueAtPercentile(50.0), metric.getValueAtPercentile(99.0),
+                metric.getValueAtPercentile(99.9), metric.getMax());
+    }
+
+    public static void main(String[] args) {
+
+        try {
+
+            // set the default values
+            String cluster = "join";
+            int instanceCount = 1;
+            String masterAddress = null;
+            int port = 5801;
+            String webServiceType = "SimpleRest";
+            String webServiceUrl = null;
+            int simulatorPort = 8090;
+            String latency = "lognormal:200:0.5";
+            double perValueLatencyMs = 0;
+            double errorRate = 0;
+            boolean compressResponses = false;
+            int clientCount = 4;
+            int elementCount = 100;
+            double overlap = 0;
+            int timeStepCount = 24;
+            long timeStepS = 3600;
+            String startTime = "2012-01-01T00:00:00";
+            int prefetchDepth = 0;
+            long thinkMs = 0;
+            boolean upload = false;
+            long pollMs = 1000;
+            long timeoutMs = 600000;
+            String statisticsFile = "client-statistics.csv";
+            ArrayList<String> dataStoreArgs = new ArrayList<String>();
+
+            int i = 0;
+            while (i + 1 < args.length) {
+
+                // get the next option/value pair
+                String option = args[i];
+                String value = args[i + 1];
+                i += 2;
+
+                Log.info(ClientDriver.class, "Parameter: " + option + " = " + value);
+
+                if (option.startsWith("dataStore.") == true) {
+                    dataStoreArgs.add(option.substring("dataStore.".length()));
+                    dataStoreArgs.add(value);
+                }
+
+                if (option.equals("cluster") == true) {
+                    cluster = value;
+                }
+
+                if (option.equals("instanceCount") == true) {
+                    instanceCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("masterAddress") == true) {
+                    masterAddress = value;
+                }
+
+                if (option.equals("port") == true) {
+                    port = Integer.parseInt(value);
+                }
+
+                if (option.equals("webServiceType") == true) {
+                    webServiceType = value;
+                }
+
+                if (option.equals("webServiceUrl") == true) {
+                    webServiceUrl = value;
+                }
+
+                if (option.equals("simulatorPort") == true) {
+                    simulatorPort = Integer.parseInt(value);
+                }
+
+                if (option.equals("latency") == true) {
+                    latency = value;
+                }
+
+                if (option.equals("perValueLatencyMs") == true) {
+                    perValueLatencyMs = Double.parseDouble(value);
+                }
+
+                if (option.equals("compressResponses") == true) {
+                    compressResponses = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("errorRate") == true) {
+                    errorRate = Double.parseDouble(value);
+                }
+
+                if (option.equals("clientCount") == true) {
+                    clientCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("elementCount") == true) {
+                    elementCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("overlap") == true) {
+                    overlap = Double.parseDouble(value);
+                }
+
+                if (option.equals("timeStepCount") == true) {
+                    timeStepCount = Integer.parseInt(value);
+                }
+
+                if (option.equals("timeStepS") == true) {
+                    timeStepS = Long.parseLong(value);
+                }
+
+                if (option.equals("startTime") == true) {
+                    startTime = value;
+                }
+
+                if (option.equals("prefetchDepth") == true) {
+                    prefetchDepth = Integer.parseInt(value);
+                }
+
+                if (option.equals("thinkMs") == true) {
+                    thinkMs = Long.parseLong(value);
+                }
+
+                if (option.equals("upload") == true) {
+                    upload = Boolean.parseBoolean(value);
+                }
+
+                if (option.equals("pollMs") == true) {
+                    pollMs = Long.parseLong(value);
+                }
+
+                if (option.equals("timeoutMs") == true) {
+                    timeoutMs = Long.parseLong(value);
+                }
+
+                if (option.equals("statisticsFile") == true) {
+                    statisticsFile = value;
+                }
+            }
+
+            // the data stores size their client executors from the client count
+            dataStoreArgs.add("clientCount");
+            dataStoreArgs.add(String.valueOf(clientCount));
+
+            // start the data stores if we've been asked to
+            Thread embeddedDataStore = null;
+            ArrayList<Process> processes = new ArrayList<Process>();
+            if (cluster.equals("embedded") == true) {
+                ArrayList<String> embeddedArgs = new ArrayList<String>(dataStoreArgs);
+                embeddedArgs.addAll(Arrays.asList("id", "0", "masterAddress", Misc.getHostAddress()));
+                embeddedDataStore = startEmbeddedDataStore(embeddedArgs.toArray(new String[embeddedArgs.size()]));
+
+                // join at whatever address the instance picked
+                HazelcastInstance embeddedInstance = Hazelcast.getAllHazelcastInstances().iterator().next();
+                masterAddress = embeddedInstance.getCluster().getLocalMember().getInetSocketAddress().getAddress().getHostAddress();
+                instanceCount = 1;
+            } else if (masterAddress == null) {
+                Log.error(ClientDriver.class, "The masterAddress option is required");
+                return;
+            } else if (cluster.equals("processes") == true) {
+                for (int id = 0; id < instanceCount; id++) {
+                    ArrayList<String> processArgs = new ArrayList<String>(dataStoreArgs);
+                    processArgs.addAll(Arrays.asList("id", String.valueOf(id), "masterAddress", masterAddress));
+                    processes.add(startDataStoreProcess(id, processArgs.toArray(new String[processArgs.size()])));
+                }
+                Thread.sleep(2000);
+            }
+
+            HazelcastInstance instance = joinCluster(masterAddress, port);
+            if (cluster.equals("embedded") == false) {
+                Statistics.getInstance().id = "client-driver";
+            }
+
+            // hold a client entry of our own for the whole run, so the data
+            // stores see at least one client however short the run is
+            IMap<String, String> mapClient = instance.getMap("client");
+            String driverId = Misc.newGuid();
+            mapClient.put(driverId, "active");
+            long registeredMs = System.currentTimeMillis();
+
+            // wait for the rest of the cluster we started to join
+            if (cluster.equals("processes") == true) {
+                while (countDataMembers(instance) < instanceCount) {
+                    Log.info(ClientDriver.class, "Waiting for data stores: %d of %d", countDataMembers(instance), instanceCount);
+                    Thread.sleep(2000);
+                }
+            }
+
+            // start a simulator in this jvm unless we were pointed at one
+            WebServiceSimulator simulator = null;
+            if (webServiceUrl == null) {
+                simulator = new WebServiceSimulator(simulatorPort, new LatencyModel(latency), perValueLatencyMs, errorRate, 0, 64, 0);
+                simulator.setCompressResponses(compressResponses);
+                simulator.start();
+                webServiceUrl = webServiceType.equals("SimpleRest") == true ? simulator.getSimpleRestUrl(Misc.getHostAddress())
+                        : simulator.getWaterOneFlowUrl(Misc.getHostAddress());
+            }
+
+            // the delivery thread uploads through the test web service, so
+            // point it at the simulator too
+            IMap<String, WebServiceEntry> mapWebService = instance.getMap("webService");
+            mapWebService.put(WEB_SERVICE_ID, new WebServiceEntry(WEB_SERVICE_ID, webServiceType, "Simulated web service", webServiceUrl,
+                    "0", "8", "Discharge"));
+
+            // each client's element set starts this many elements after the
+            // previous client's
+            int stride = (int) Math.round(elementCount * (1.0 - overlap));
+
+            String[] timeStamps = createTimeStamps(startTime, timeStepCount, timeStepS);
+            ArrayList<Thread> threads = new ArrayList<Thread>();
+            for (int c = 0; c < clientCount; c++) {
+                ElementSetEntry elementSet = createElementSet("ClientDriver-" + c, c * stride, elementCount);
+                SimulatedClient client = new SimulatedClient(instance, Misc.newGuid(), WEB_SERVICE_ID, "Discharge", "Scenario0",
+                        elementSet, timeStamps, pollMs, timeoutMs);
+                client.setPrefetchDepth(prefetchDepth);
+                client.setThinkMs(thinkMs);
+                if (upload == true) {
+                    client.setUploadQuantityId("SimulatedOutput");
+                }
+                Thread thread = new Thread(client, "SimulatedClient-" + c);
+                threads.add(thread);
+            }
+
+            long startMs = System.currentTimeMillis();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsedMs = System.currentTimeMillis() - startMs;
+
+            // report what the clients saw
+            Statistics statistics = Statistics.getInstance();
+            long requestCount = statistics.getMetric("Client-Request-Time-MS").getCount();
+            long uploadCount = statistics.getMetric("Client-Upload-Time-MS").getCount();
+            double requestsPerSecond = requestCount / (elapsedMs / 1000.0);
+            double uploadsPerSecond = uploadCount / (elapsedMs / 1000.0);
+            statistics.add("Workload-Elapsed-MS", elapsedMs);
+            statistics.add("Workload-Request-Throughput-PerSec", requestsPerSecond);
+            statistics.add("Workload-Upload-Throughput-PerSec", uploadsPerSecond);
+
+            Log.info(ClientDriver.class, "%d clients finished %d time steps in %d ms", clientCount, timeStepCount, elapsedMs);
+            Log.info(ClientDriver.class, "Throughput: %.2f requests/s, %.2f uploads/s, %d hits, %d misses, %d timeouts", requestsPerSecond,
+                    uploadsPerSecond, statistics.getMetric("Client-Hit-Count").getCount(), statistics.getMetric("Client-Miss-Count").getCount(),
+                    statistics.getMetric("Client-Timeout-Count").getCount());
+            report(ClientDriver.class, "Request latency (ms)", statistics.getMetric("Client-Request-Time-MS"));
+            report(ClientDriver.class, "Hit latency (ms)", statistics.getMetric("Client-Hit-Time-MS"));
+            report(ClientDriver.class, "Miss latency (ms)", statistics.getMetric("Client-Miss-Time-MS"));
+            report(ClientDriver.class, "Upload latency (ms)", statistics.getMetric("Client-Upload-Time-MS"));
+
+            statistics.writeCsv(statisticsFile);
+
+            // the data stores we started shut down once the clients are gone
+            if (embeddedDataStore != null || processes.isEmpty() == false) {
+                Log.info(ClientDriver.class, "Waiting for the data stores to shut down");
+            }
+            // the data stores poll for clients every five seconds
+            Thread.sleep(Math.max(0, registeredMs + 6000 - System.currentTimeMillis()));
+            mapClient.remove(driverId);
+
+            instance.getLifecycleService().shutdown();
+            for (Process process : processes) {
+                process.waitFor();
+            }
+            if (embeddedDataStore != null) {
+                embeddedDataStore.join();
+            }
+            if (simulator != null) {
+                simulator.stop();
+            }
+            Log.flush(5000);
+
+        } catch (Exception e) {
+            Log.error(ClientDriver.class, e);
+        }
+    }
+}
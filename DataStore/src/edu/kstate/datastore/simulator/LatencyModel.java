@@ -0,0 +1,76 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import java.util.Random;
+
+/**
+ * A distribution of response times, written as one of:
+ *
+ *   fixed:MS
+ *   uniform:MIN_MS:MAX_MS
+ *   exponential:MEAN_MS
+ *   lognormal:MEDIAN_MS:SIGMA
+ *
+ * The lognormal distribution has the long tail that real web services
+ * tend to show.
+ */
+public class LatencyModel {
+
+    private String type;
+    private double a;
+    private double b;
+
+    public LatencyModel(String specification) {
+        String[] parts = specification.split(":");
+        this.type = parts[0];
+        if (type.equals("fixed") == true || type.equals("exponential") == true) {
+            this.a = Double.parseDouble(parts[1]);
+        } else if (type.equals("uniform") == true || type.equals("lognormal") == true) {
+            this.a = Double.parseDouble(parts[1]);
+            this.b = Double.parseDouble(parts[2]);
+        } else {
+            throw new IllegalArgumentException("Unknown latency distribution: " + specification);
+        }
+    }
+
+    public long nextDelayMs(Random random) {
+        double delayMs;
+        if (type.equals("fixed") == true) {
+            delayMs = a;
+        } else if (type.equals("uniform") == true) {
+            delayMs = a + random.nextDouble() * (b - a);
+        } else if (type.equals("exponential") == true) {
+            delayMs = -a * Math.log(1.0 - random.nextDouble());
+        } else {
+            delayMs = a * Math.exp(b * random.nextGaussian());
+        }
+        return Math.max(0, Math.round(delayMs));
+    }
+
+    @Override
+    public String toString() {
+        return type.equals("fixed") == true || type.equals("exponential") == true ? type + ":" + a : type + ":" + a + ":" + b;
+    }
+}
@@ -0,0 +1,85 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reads the requests sent to the simulated web services. Keeps the text of
+ * each element by name, the location ids given as attributes, and the
+ * number of value elements.
+ */
+public class RequestHandler extends DefaultHandler {
+
+    private HashMap<String, String> elementText = new HashMap<String, String>();
+    private ArrayList<String> locationIds = new ArrayList<String>();
+    private StringBuilder text = new StringBuilder();
+    private int valueCount;
+
+    public String getText(String elementName) {
+        return elementText.get(elementName);
+    }
+
+    public ArrayList<String> getLocationIds() {
+        return this.locationIds;
+    }
+
+    public int getValueCount() {
+        return this.valueCount;
+    }
+
+    private static String localName(String qName) {
+        int colon = qName.indexOf(':');
+        return colon < 0 ? qName : qName.substring(colon + 1);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        text.setLength(0);
+        String name = localName(qName);
+        if (name.equals("value") == true) {
+            valueCount++;
+            String locationId = attributes.getValue("locationId");
+            if (locationId != null) {
+                locationIds.add(locationId);
+            }
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        text.append(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        elementText.put(localName(qName), text.toString().trim());
+        text.setLength(0);
+    }
+}
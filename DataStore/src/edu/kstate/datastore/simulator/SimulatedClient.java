@@ -0,0 +1,205 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.util.Log;
+
+/**
+ * Plays the part of one model client the way the C# CacheManager does:
+ * look in the value set map, and on a miss publish the element set, queue
+ * a request, and poll the map until the value set appears. Each client
+ * registers itself in the client map while it runs, so the data store
+ * stays up until the last one is done.
+ *
+ * Between time steps a client can also prefetch the next few time steps,
+ * spend some time computing, and upload its own output for the step the
+ * way the DataComponent publishes model output.
+ */
+public class SimulatedClient implements Runnable {
+
+    private HazelcastInstance instance;
+    private String clientId;
+    private String webServiceId;
+    private String quantityId;
+    private String scenarioId;
+    private ElementSetEntry elementSet;
+    private String[] timeStamps;
+    private long pollMs;
+    private long timeoutMs;
+    private int prefetchDepth;
+    private long thinkMs;
+    private String uploadQuantityId;
+    private boolean elementSetPut;
+
+    public SimulatedClient(HazelcastInstance instance, String clientId, String webServiceId, String quantityId, String scenarioId,
+                           ElementSetEntry elementSet, String[] timeStamps, long pollMs, long timeoutMs) {
+        this.instance = instance;
+        this.clientId = clientId;
+        this.webServiceId = webServiceId;
+        this.quantityId = quantityId;
+        this.scenarioId = scenarioId;
+        this.elementSet = elementSet;
+        this.timeStamps = timeStamps;
+        this.pollMs = pollMs;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public String getClientId() {
+        return this.clientId;
+    }
+
+    /**
+     * The number of time steps ahead of the current one to request through
+     * the prefetch queue.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * How long the model computes between receiving its input for a time
+     * step and producing its output.
+     */
+    public void setThinkMs(long thinkMs) {
+        this.thinkMs = thinkMs;
+    }
+
+    /**
+     * The quantity the client uploads for each time step, or null if it
+     * doesn't upload.
+     */
+    public void setUploadQuantityId(String uploadQuantityId) {
+        this.uploadQuantityId = uploadQuantityId;
+    }
+
+    @Override
+    public void run() {
+        IMap<String, String> mapClient = instance.getMap("client");
+        mapClient.put(clientId, "active");
+        try {
+            for (int i = 0; i < timeStamps.length; i++) {
+                ValueSetEntry entry = getValues(timeStamps[i]);
+                prefetch(i + 1, Math.min(timeStamps.length, i + 1 + prefetchDepth));
+                if (thinkMs > 0) {
+                    Thread.sleep(thinkMs);
+                }
+                if (uploadQuantityId != null && entry != null) {
+                    putValues(timeStamps[i], entry.getValues());
+                }
+                Statistics.getInstance().add("Client-Step-Count", 1);
+            }
+        } catch (Exception e) {
+            Log.error(this.getClass(), e);
+        } finally {
+            mapClient.remove(clientId);
+        }
+    }
+
+    /**
+     * Returns the value set for one time step, requesting it if it's not
+     * already cached.
+     */
+    public ValueSetEntry getValues(String timeStamp) throws Exception {
+        IMap<String, ValueSetEntry> mapValueSet = instance.getMap("valueSet");
+        String elementSetId = elementSet.getElementSetId();
+        String key = ValueSetEntry.createKey(webServiceId, quantityId, elementSetId, timeStamp, scenarioId);
+
+        long startTime = System.currentTimeMillis();
+        ValueSetEntry entry = mapValueSet.get(key);
+        if (entry != null) {
+            Statistics.getInstance().add("Client-Hit-Count", 1);
+            Statistics.getInstance().add("Client-Hit-Time-MS", System.currentTimeMillis() - startTime);
+        } else {
+            // the data store needs the element set before it can fetch
+            putElementSet();
+
+            IQueue<ValueSetRequestEntry> queueValueSetRequest = instance.getQueue("valueSetRequest");
+            queueValueSetRequest.put(new ValueSetRequestEntry(webServiceId, quantityId, elementSetId, timeStamp, scenarioId));
+
+            while ((entry = mapValueSet.get(key)) == null) {
+                if (System.currentTimeMillis() - startTime > timeoutMs) {
+                    Statistics.getInstance().add("Client-Timeout-Count", 1);
+                    Log.warn(this.getClass(), "Timed out waiting for " + key);
+                    return null;
+                }
+                Thread.sleep(pollMs);
+            }
+            Statistics.getInstance().add("Client-Miss-Count", 1);
+            Statistics.getInstance().add("Client-Miss-Time-MS", System.currentTimeMillis() - startTime);
+        }
+
+        Statistics.getInstance().add("Client-Request-Time-MS", System.currentTimeMillis() - startTime);
+        return entry;
+    }
+
+    private void putElementSet() {
+        if (elementSetPut == false) {
+            IMap<String, ElementSetEntry> mapElementSet = instance.getMap("elementSet");
+            mapElementSet.put(elementSet.getElementSetId(), elementSet);
+            elementSetPut = true;
+        }
+    }
+
+    /**
+     * Offers requests for the given range of time steps to the prefetch
+     * queue, skipping any the queue has no room for.
+     */
+    private void prefetch(int first, int last) {
+        if (first >= last) {
+            return;
+        }
+        putElementSet();
+        IQueue<ValueSetRequestEntry> queuePrefetchRequest = instance.getQueue("valueSetPrefetchRequest");
+        for (int i = first; i < last; i++) {
+            ValueSetRequestEntry request = new ValueSetRequestEntry(webServiceId, quantityId, elementSet.getElementSetId(), timeStamps[i], scenarioId);
+            if (queuePrefetchRequest.offer(request) == true) {
+                Statistics.getInstance().add("Client-Prefetch-Count", 1);
+            } else {
+                Statistics.getInstance().add("Client-Prefetch-Rejected-Count", 1);
+            }
+        }
+    }
+
+    /**
+     * Uploads the client's output for one time step, blocking until the
+     * value set queue has room for it.
+     */
+    private void putValues(String timeStamp, double[] values) throws Exception {
+        putElementSet();
+        ValueSetEntry entry = new ValueSetEntry(webServiceId, uploadQuantityId, timeStamp, elementSet.getElementSetId(), scenarioId, values);
+        entry.setNeedsUpload(true);
+
+        long startTime = System.currentTimeMillis();
+        IQueue<ValueSetEntry> queueValueSet = instance.getQueue("valueSet");
+        queueValueSet.put(entry);
+        Statistics.getInstance().add("Client-Upload-Time-MS", System.currentTimeMillis() - startTime);
+    }
+}
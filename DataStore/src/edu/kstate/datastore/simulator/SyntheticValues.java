@@ -0,0 +1,54 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import edu.kstate.datastore.util.EpochTime;
+
+/**
+ * Generates repeatable values for the simulated web services. Each site
+ * follows its own seasonal curve plus noise, so the same request always
+ * returns the same value and value sets can be checked end to end.
+ */
+public class SyntheticValues {
+
+    private static final double S_PER_YEAR = 365.25 * 24.0 * 3600.0;
+
+    public static double getValue(String locationId, String quantityId, String timeStamp) {
+        long siteHash = (locationId.hashCode() * 31L + quantityId.hashCode()) & 0xffffffffL;
+        double base = 10.0 + (siteHash % 1000);
+        double phase = (siteHash % 365) / 365.0 * 2.0 * Math.PI;
+
+        double timeS = 0;
+        try {
+            timeS = EpochTime.parse(timeStamp);
+        } catch (RuntimeException e) {
+            // an unparseable time gets the value at the epoch
+        }
+
+        double seasonal = Math.sin(2.0 * Math.PI * timeS / S_PER_YEAR + phase);
+        long noiseHash = siteHash * 6364136223846793005L + timeStamp.hashCode();
+        double noise = ((noiseHash >>> 11) % 1000) / 1000.0 - 0.5;
+        return Math.round((base * (1.0 + 0.5 * seasonal) + noise) * 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,333 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.trace.RequestRecord;
+import edu.kstate.datastore.trace.RequestTraceReader;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.util.Misc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replays a trace written by a data store started with the recordFile
+ * option, so different cache and fetch settings can be compared on the
+ * same workload. The web services are stubbed by a simulator in this JVM.
+ *
+ * Records are issued from one thread in the order they were recorded,
+ * either at the recorded pace (scaled by the speed option) or, with a
+ * speed of 0, as fast as the data store accepts them. A request for a
+ * value set that is already cached counts as a hit and isn't queued.
+ * Misses are timed from the queue put until the value set is added to the
+ * map, using a map listener rather than polling, so the latencies are the
+ * data store's own without a client's polling interval on top.
+ */
+public class TraceReplay implements EntryListener<String, ValueSetEntry> {
+
+    private ConcurrentHashMap<String, Long> pendingRequests = new ConcurrentHashMap<String, Long>();
+
+    private void complete(String key) {
+        Long startMs = pendingRequests.remove(key);
+        if (startMs != null) {
+            Statistics.getInstance().add("Replay-Miss-Time-MS", System.currentTimeMillis() - startMs);
+        }
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<String, ValueSetEntry> event) {
+        complete(event.getKey());
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<String, ValueSetEntry> event) {
+        complete(event.getKey());
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<String, ValueSetEntry> event) {
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<String, ValueSetEntry> event) {
+    }
+
+    /**
+     * Issues every record in the trace, then waits for the outstanding
+     * requests to be answered.
+     */
+    public void replay(HazelcastInstance instance, String traceFile, double speed, String webServiceType, String webServiceUrl,
+                       long timeoutMs) throws Exception {
+        IMap<String, WebServiceEntry> mapWebService = instance.getMap("webService");
+        IMap<String, ElementSetEntry> mapElementSet = instance.getMap("elementSet");
+        IMap<String, ValueSetEntry> mapValueSet = instance.getMap("valueSet");
+        IQueue<ValueSetRequestEntry> queueValueSetRequest = instance.getQueue("valueSetRequest");
+        IQueue<ValueSetRequestEntry> queuePrefetchRequest = instance.getQueue("valueSetPrefetchRequest");
+        IQueue<ValueSetEntry> queueValueSet = instance.getQueue("valueSet");
+        Statistics statistics = Statistics.getInstance();
+
+        mapValueSet.addEntryListener(this, false);
+
+        HashSet<String> webServiceIds = new HashSet<String>();
+        HashMap<String, String[]> elementIds = new HashMap<String, String[]>();
+
+        RequestTraceReader reader = new RequestTraceReader(traceFile);
+        long startNs = System.nanoTime();
+        RequestRecord record;
+        while ((record = reader.next()) != null) {
+
+            // keep to the recorded pace
+            if (speed > 0) {
+                long dueNs = startNs + (long) (record.getTimeUs() * 1000.0 / speed);
+                long waitNs = dueNs - System.nanoTime();
+                if (waitNs > 0) {
+                    Thread.sleep(waitNs / 1000000L, (int) (waitNs % 1000000L));
+                } else {
+                    statistics.add("Replay-Lag-MS", -waitNs / 1000000L);
+                }
+            }
+
+            if (record.getType() == RequestRecord.TYPE_ELEMENT_SET) {
+                elementIds.put(record.getElementSetId(), record.getElementIds());
+                mapElementSet.put(record.getElementSetId(), new ElementSetEntry(record.getElementSetId(), record.getElementIds()));
+                continue;
+            }
+
+            // every web service in the trace is stubbed by the simulator
+            if (webServiceIds.add(record.getWebServiceId()) == true) {
+                mapWebService.put(record.getWebServiceId(), new WebServiceEntry(record.getWebServiceId(), webServiceType,
+                        "Simulated web service", webServiceUrl, "0", "8", record.getQuantityId()));
+            }
+
+            ValueSetRequestEntry request = new ValueSetRequestEntry(record.getWebServiceId(), record.getQuantityId(), record.getElementSetId(),
+                    record.getTimeStamp(), record.getScenarioId());
+
+            if (record.getType() == RequestRecord.TYPE_REQUEST) {
+                String key = ValueSetEntry.createKey(record.getWebServiceId(), record.getQuantityId(), record.getElementSetId(),
+                        record.getTimeStamp(), record.getScenarioId());
+                long startMs = System.currentTimeMillis();
+                if (pendingRequests.putIfAbsent(key, startMs) != null) {
+                    // another request for the same key is already waiting
+                    statistics.add("Replay-Duplicate-Count", 1);
+                } else if (mapValueSet.containsKey(key) == true) {
+                    if (pendingRequests.remove(key) != null) {
+                        statistics.add("Replay-Hit-Count", 1);
+                    }
+                } else {
+                    statistics.add("Replay-Miss-Count", 1);
+                    queueValueSetRequest.put(request);
+                }
+            } else if (record.getType() == RequestRecord.TYPE_PREFETCH_REQUEST) {
+                if (queuePrefetchRequest.offer(request) == true) {
+                    statistics.add("Replay-Prefetch-Count", 1);
+                } else {
+                    statistics.add("Replay-Prefetch-Rejected-Count", 1);
+                }
+            } else if (record.getType() == RequestRecord.TYPE_UPLOAD) {
+                double[] values = new double[record.getValueCount()];
+                String[] ids = elementIds.get(record.getElementSetId());
+                for (int i = 0; i < values.length; i++) {
+                    String elementId = ids != null && i < ids.length ? ids[i] : String.valueOf(i);
+                    values[i] = SyntheticValues.getValue(elementId, record.getQuantityId(), record.getTimeStamp());
+                }
+                ValueSetEntry entry = new ValueSetEntry(record.getWebServiceId(), record.getQuantityId(), record.getTimeStamp(),
+                        record.getElementSetId(), record.getScenarioId(), values);
+                entry.setNeedsUpload(true);
+
+                long startMs = System.currentTimeMillis();
+                queueValueSet.put(entry);
+                statistics.add("Replay-Upload-Time-MS", System.currentTimeMillis() - startMs);
+            }
+            statistics.add("Replay-Record-Count", 1);
+        }
+        reader.close();
+
+        // wait for the outstanding requests
+        long endMs = System.currentTimeMillis() + timeoutMs;
+        while (pendingRequests.isEmpty() == false && System.currentTimeMillis() < endMs) {
+            Thread.sleep(100);
+        }
+        statistics.add("Replay-Timeout-Count", pendingRequests.size());
+        mapValueSet.removeEntryListener(this);
+    }
+
+    public static void main(String[] args) {
+
+        try {
+
+            // set the default values
+            String traceFile = null;
+            String cluster = "join";
+            String masterAddress = null;
+            int port = 5801;
+            double speed = 1.0;
+            String webServiceType = "SimpleRest";
+            int simulatorPort = 8090;
+            String latency = "fixed:0";
+            double perValueLatencyMs = 0;
+            long timeoutMs = 600000;
+            String statisticsFile = "replay-statistics.csv";
+            ArrayList<String> dataStoreArgs = new ArrayList<String>();
+
+            int i = 0;
+            while (i + 1 < args.length) {
+
+                // get the next option/value pair
+                String option = args[i];
+                String value = args[i + 1];
+                i += 2;
+
+                Log.info(TraceReplay.class, "Parameter: " + option + " = " + value);
+
+                if (option.startsWith("dataStore.") == true) {
+                    dataStoreArgs.add(option.substring("dataStore.".length()));
+                    dataStoreArgs.add(value);
+                }
+
+                if (option.equals("traceFile") == true) {
+                    traceFile = value;
+                }
+
+                if (option.equals("cluster") == true) {
+                    cluster = value;
+                }
+
+                if (option.equals("masterAddress") == true) {
+                    masterAddress = value;
+                }
+
+                if (option.equals("port") == true) {
+                    port = Integer.parseInt(value);
+                }
+
+                if (option.equals("speed") == true) {
+                    speed = Double.parseDouble(value);
+                }
+
+                if (option.equals("webServiceType") == true) {
+                    webServiceType = value;
+                }
+
+                if (option.equals("simulatorPort") == true) {
+                    simulatorPort = Integer.parseInt(value);
+                }
+
+                if (option.equals("latency") == true) {
+                    latency = value;
+                }
+
+                if (option.equals("perValueLatencyMs") == true) {
+                    perValueLatencyMs = Double.parseDouble(value);
+                }
+
+                if (option.equals("timeoutMs") == true) {
+                    timeoutMs = Long.parseLong(value);
+                }
+
+                if (option.equals("statisticsFile") == true) {
+                    statisticsFile = value;
+                }
+            }
+
+            if (traceFile == null) {
+                Log.error(TraceReplay.class, "The traceFile option is required");
+                return;
+            }
+
+            // start a data store in this jvm if we've been asked to
+            Thread embeddedDataStore = null;
+            if (cluster.equals("embedded") == true) {
+                dataStoreArgs.addAll(Arrays.asList("id", "0", "masterAddress", Misc.getHostAddress()));
+                embeddedDataStore = ClientDriver.startEmbeddedDataStore(dataStoreArgs.toArray(new String[dataStoreArgs.size()]));
+
+                // join at whatever address the instance picked
+                HazelcastInstance embeddedInstance = Hazelcast.getAllHazelcastInstances().iterator().next();
+                masterAddress = embeddedInstance.getCluster().getLocalMember().getInetSocketAddress().getAddress().getHostAddress();
+            } else if (masterAddress == null) {
+                Log.error(TraceReplay.class, "The masterAddress option is required");
+                return;
+            }
+
+            HazelcastInstance instance = ClientDriver.joinCluster(masterAddress, port);
+            if (embeddedDataStore == null) {
+                Statistics.getInstance().id = "replay";
+            }
+
+            // hold a client entry for the whole replay so the data store
+            // stays up, and sees it however short the replay is
+            IMap<String, String> mapClient = instance.getMap("client");
+            String replayId = Misc.newGuid();
+            mapClient.put(replayId, "active");
+            long registeredMs = System.currentTimeMillis();
+
+            WebServiceSimulator simulator = new WebServiceSimulator(simulatorPort, new LatencyModel(latency), perValueLatencyMs, 0, 0, 64, 0);
+            simulator.start();
+            String webServiceUrl = webServiceType.equals("SimpleRest") == true ? simulator.getSimpleRestUrl(Misc.getHostAddress())
+                    : simulator.getWaterOneFlowUrl(Misc.getHostAddress());
+
+            long startMs = System.currentTimeMillis();
+            new TraceReplay().replay(instance, traceFile, speed, webServiceType, webServiceUrl, timeoutMs);
+            long elapsedMs = System.currentTimeMillis() - startMs;
+
+            Statistics statistics = Statistics.getInstance();
+            statistics.add("Replay-Elapsed-MS", elapsedMs);
+            Log.info(TraceReplay.class, "Replayed %d records in %d ms: %d hits, %d misses, %d timeouts",
+                    statistics.getMetric("Replay-Record-Count").getCount(), elapsedMs, statistics.getMetric("Replay-Hit-Count").getCount(),
+                    statistics.getMetric("Replay-Miss-Count").getCount(), (long) statistics.getMetric("Replay-Timeout-Count").getSum());
+            ClientDriver.report(TraceReplay.class, "Miss latency (ms)", statistics.getMetric("Replay-Miss-Time-MS"));
+            ClientDriver.report(TraceReplay.class, "Upload latency (ms)", statistics.getMetric("Replay-Upload-Time-MS"));
+            ClientDriver.report(TraceReplay.class, "Replay lag (ms)", statistics.getMetric("Replay-Lag-MS"));
+            statistics.writeCsv(statisticsFile);
+
+            // the data stores poll for clients every five seconds
+            Thread.sleep(Math.max(0, registeredMs + 6000 - System.currentTimeMillis()));
+            mapClient.remove(replayId);
+
+            instance.getLifecycleService().shutdown();
+            if (embeddedDataStore != null) {
+                Log.info(TraceReplay.class, "Waiting for the data store to shut down");
+                embeddedDataStore.join();
+            }
+            simulator.stop();
+            Log.flush(5000);
+
+        } catch (Exception e) {
+            Log.error(TraceReplay.class, e);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.util.Log;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A local stand-in for the web services the data store talks to, so the
+ * whole fetch and delivery pipeline can be load tested on one machine.
+ * Serves:
+ *
+ *   /simplerest      SimpleRest GetValues
+ *   /simplerest/set  SimpleRest SetValues (what the delivery thread calls)
+ *   /wateroneflow    WaterOneFlow 1.0 and 1.1 SOAP GetValues
+ *   /wateroneflow/set SimpleRest SetValues, for uploads made when the
+ *                    test web service is a WaterOneFlow one
+ *
+ * Each request waits for a delay drawn from the latency model plus a cost
+ * per value, fails with the given probability, and may be held back by
+ * the concurrency and throughput caps. Values come from SyntheticValues.
+ * Compressed request bodies are accepted, and responses are compressed
+ * for clients that accept gzip if the simulator is told to.
+ */
+public class WebServiceSimulator {
+
+    private int port;
+    private LatencyModel latencyModel;
+    private double perValueLatencyMs;
+    private double errorRate;
+    private double missingRate;
+    private double maxRequestsPerSecond;
+    private Semaphore concurrency;
+    private Random random = new Random();
+    private long nextRequestSlotNs;
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean compressResponses;
+
+    /**
+     * A throughput cap of zero means requests are not paced.
+     */
+    public WebServiceSimulator(int port, LatencyModel latencyModel, double perValueLatencyMs, double errorRate, double missingRate,
+                               int maxConcurrentRequests, double maxRequestsPerSecond) {
+        this.port = port;
+        this.latencyModel = latencyModel;
+        this.perValueLatencyMs = perValueLatencyMs;
+        this.errorRate = errorRate;
+        this.missingRate = missingRate;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.concurrency = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    public void setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+    }
+
+    public void start() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress(port), 256);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(executor);
+        this.server.createContext("/simplerest", new SimpleRestGetValuesHandler());
+        this.server.createContext("/simplerest/set", new SimpleRestSetValuesHandler());
+        this.server.createContext("/wateroneflow", new WaterOneFlowHandler());
+        this.server.createContext("/wateroneflow/set", new SimpleRestSetValuesHandler());
+        this.server.start();
+        Log.info(this.getClass(), "Listening on port %d (latency %s, %.1f ms/value, error rate %.3f, missing rate %.3f, %d concurrent, %.1f req/s)",
+                port, latencyModel, perValueLatencyMs, errorRate, missingRate, concurrency.availablePermits(), maxRequestsPerSecond);
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public String getSimpleRestUrl(String host) {
+        return "http://" + host + ":" + port + "/simplerest";
+    }
+
+    public String getWaterOneFlowUrl(String host) {
+        return "http://" + host + ":" + port + "/wateroneflow";
+    }
+
+    /**
+     * Waits for the next request slot allowed by the throughput cap.
+     */
+    private void pace() throws InterruptedException {
+        if (maxRequestsPerSecond <= 0) {
+            return;
+        }
+        long waitNs;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextRequestSlotNs);
+            nextRequestSlotNs = slot + (long) (1000000000L / maxRequestsPerSecond);
+            waitNs = slot - now;
+        }
+        if (waitNs > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNs);
+        }
+    }
+
+    private static byte[] readRequest(HttpExchange exchange) throws Exception {
+        InputStream in = exchange.getRequestBody();
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if ("gzip".equalsIgnoreCase(contentEncoding) == true) {
+            in = new GZIPInputStream(in);
+        } else if ("deflate".equalsIgnoreCase(contentEncoding) == true) {
+            in = new InflaterInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[16000];
+        int len;
+        while (-1 != (len = in.read(buffer))) {
+            out.write(buffer, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static RequestHandler parseRequest(byte[] request) throws Exception {
+        RequestHandler handler = new RequestHandler();
+        InputSource source = new InputSource();
+        source.setByteStream(new ByteArrayInputStream(request));
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.parse(source);
+        return handler;
+    }
+
+    private void respond(HttpExchange exchange, int rc, String body) throws Exception {
+        byte[] response = body.getBytes("UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compressResponses == true && response.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip") == true) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(response.length / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(response);
+            gzip.close();
+            response = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(rc, response.length == 0 ? -1 : response.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(response);
+        out.close();
+    }
+
+    private abstract class SimulatedHandler implements HttpHandler {
+
+        private String name;
+
+        protected SimulatedHandler(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the response body.
+         */
+        protected abstract String createResponse(RequestHandler request, long serviceTimeMs) throws Exception;
+
+        protected abstract int countValues(RequestHandler request);
+
+        @Override
+        public void handle(HttpExchange exchange) {
+            long startMs = System.currentTimeMillis();
+            boolean acquired = false;
+            try {
+                RequestHandler request = parseRequest(readRequest(exchange));
+
+                // hold a slot for the whole time the request is being
+                // served, as a real server's worker would be
+                concurrency.acquire();
+                acquired = true;
+                pace();
+
+                long serviceTimeMs = latencyModel.nextDelayMs(random) + Math.round(perValueLatencyMs * countValues(request));
+                Thread.sleep(serviceTimeMs);
+
+                if (random.nextDouble() < errorRate) {
+                    Statistics.getInstance().add("Simulator-" + name + "-Error-Count", 1);
+                    respond(exchange, 500, "");
+                    return;
+                }
+
+                respond(exchange, 200, createResponse(request, serviceTimeMs));
+                Statistics.getInstance().add("Simulator-" + name + "-Request-Count", 1);
+                Statistics.getInstance().add("Simulator-" + name + "-Value-Count", countValues(request));
+            } catch (Exception e) {
+                Log.warn(WebServiceSimulator.class, name + ": " + e.getMessage());
+                try {
+                    respond(exchange, 400, "");
+                } catch (Exception ignored) {
+                    // the client has gone away
+                }
+            } finally {
+                if (acquired == true) {
+                    concurrency.release();
+                }
+                exchange.close();
+                Statistics.getInstance().add("Simulator-" + name + "-Time-MS", System.currentTimeMillis() - startMs);
+            }
+        }
+    }
+
+    private String formatValue(String locationId, String quantityId, String timeStamp) {
+        if (missingRate > 0 && random.nextDouble() < missingRate) {
+            return null;
+        }
+        return String.valueOf(SyntheticValues.getValue(locationId, quantityId, timeStamp));
+    }
+
+    private class SimpleRestGetValuesHandler extends SimulatedHandler {
+
+        public SimpleRestGetValuesHandler() {
+            super("SimpleRest-GetValues");
+        }
+
+        @Override
+        protected int countValues(RequestHandler request) {
+            return request.getLocationIds().size();
+        }
+
+        @Override
+        protected String createResponse(RequestHandler request, long serviceTimeMs) {
+            String quantityId = request.getText("quantityId");
+            String timeStamp = request.getText("dateTime");
+            StringBuilder sb = new StringBuilder();
+            sb.append("<result><serviceTime>").append(serviceTimeMs).append("</serviceTime><valueSet><values>");
+            for (String locationId : request.getLocationIds()) {
+                String value = formatValue(locationId, quantityId, timeStamp);
+                sb.append("<value>").append(value == null ? "NaN" : value).append("</value>");
+            }
+            sb.append("</values></valueSet></result>");
+            return sb.toString();
+        }
+    }
+
+    private class SimpleRestSetValuesHandler extends SimulatedHandler {
+
+        public SimpleRestSetValuesHandler() {
+            super("SimpleRest-SetValues");
+        }
+
+        @Override
+        protected int countValues(RequestHandler request) {
+            return request.getValueCount();
+        }
+
+        @Override
+        protected String createResponse(RequestHandler request, long serviceTimeMs) {
+            return "<result><serviceTime>" + serviceTimeMs + "</serviceTime></result>";
+        }
+    }
+
+    private class WaterOneFlowHandler extends SimulatedHandler {
+
+        public WaterOneFlowHandler() {
+            super("WaterOneFlow-GetValues");
+        }
+
+        @Override
+        protected int countValues(RequestHandler request) {
+            return 1;
+        }
+
+        @Override
+        protected String createResponse(RequestHandler request, long serviceTimeMs) {
+            String locationId = request.getText("location");
+            String timeStamp = request.getText("startDate");
+            String value = formatValue(locationId, request.getText("variable"), timeStamp);
+
+            StringBuilder timeSeries = new StringBuilder();
+            timeSeries.append("<timeSeriesResponse><timeSeries><values>");
+            if (value != null) {
+                timeSeries.append("<value dateTime=\"").append(timeStamp).append("\">").append(value).append("</value>");
+            }
+            timeSeries.append("</values></timeSeries></timeSeriesResponse>");
+
+            // the time series is returned as escaped text inside the soap
+            // response, as the real services do
+            StringBuilder sb = new StringBuilder();
+            sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+            sb.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>");
+            sb.append("<GetValuesResponse><GetValuesResult>");
+            sb.append(timeSeries.toString().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+            sb.append("</GetValuesResult></GetValuesResponse></soap:Body></soap:Envelope>");
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+
+            // set the default values
+            int port = 8090;
+            String latency = "lognormal:200:0.5";
+            double perValueLatencyMs = 0;
+            double errorRate = 0;
+            double missingRate = 0;
+            int maxConcurrentRequests = 64;
+            double maxRequestsPerSecond = 0;
+            boolean compressResponses = false;
+
+            int i = 0;
+            while (i + 1 < args.length) {
+
+                // get the next option/value pair
+                String option = args[i];
+                String value = args[i + 1];
+                i += 2;
+
+                Log.info(WebServiceSimulator.class, "Parameter: " + option + " = " + value);
+
+                if (option.equals("port") == true) {
+                    port = Integer.parseInt(value);
+                }
+
+                if (option.equals("latency") == true) {
+                    latency = value;
+                }
+
+                if (option.equals("perValueLatencyMs") == true) {
+                    perValueLatencyMs = Double.parseDouble(value);
+                }
+
+                if (option.equals("errorRate") == true) {
+                    errorRate = Double.parseDouble(value);
+                }
+
+                if (option.equals("missingRate") == true) {
+                    missingRate = Double.parseDouble(value);
+                }
+
+                if (option.equals("maxConcurrentRequests") == true) {
+                    maxConcurrentRequests = Integer.parseInt(value);
+                }
+
+                if (option.equals("maxRequestsPerSecond") == true) {
+                    maxRequestsPerSecond = Double.parseDouble(value);
+                }
+
+                if (option.equals("compressResponses") == true) {
+                    compressResponses = Boolean.parseBoolean(value);
+                }
+            }
+
+            WebServiceSimulator simulator = new WebServiceSimulator(port, new LatencyModel(latency), perValueLatencyMs, errorRate, missingRate,
+                    maxConcurrentRequests, maxRequestsPerSecond);
+            simulator.setCompressResponses(compressResponses);
+            simulator.start();
+
+            // report what has been served until we're killed
+            while (true) {
+                Thread.sleep(60000);
+                Log.info(WebServiceSimulator.class, Statistics.getInstance().toCsv().toString());
+            }
+
+        } catch (Exception e) {
+            Log.error(WebServiceSimulator.class, e);
+        }
+    }
+}
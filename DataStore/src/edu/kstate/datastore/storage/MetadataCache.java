@@ -0,0 +1,137 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage;
+
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A local copy of the element set and web service entries, shared by the
+ * pipeline threads so that their lookups don't go to the cluster each
+ * time. Each kind of entry keeps the most recently used entries up to the
+ * capacity. The map listeners invalidate an entry when it changes
+ * anywhere in the cluster, so the next lookup reads the new one.
+ */
+public class MetadataCache {
+
+    private Region<ElementSetEntry> elementSets;
+    private Region<WebServiceEntry> webServices;
+
+    public MetadataCache(Storage storage, int capacity) {
+        this.elementSets = new Region<ElementSetEntry>("ElementSet", storage.getElementSetRegistry(), capacity);
+        this.webServices = new Region<WebServiceEntry>("WebService", storage.getWebServiceRegistry(), capacity);
+    }
+
+    /**
+     * Returns the element set with the given id, or null if there isn't
+     * one in the cluster.
+     */
+    public ElementSetEntry getElementSet(String id) {
+        return this.elementSets.get(id);
+    }
+
+    /**
+     * Returns a copy of the element sets currently cached, which are the
+     * ones considered when assembling a value set from others.
+     */
+    public ArrayList<ElementSetEntry> getCachedElementSets() {
+        return this.elementSets.values();
+    }
+
+    public void invalidateElementSet(String id) {
+        this.elementSets.invalidate(id);
+    }
+
+    /**
+     * Returns the web service with the given id, or null if there isn't
+     * one in the cluster.
+     */
+    public WebServiceEntry getWebService(String id) {
+        return this.webServices.get(id);
+    }
+
+    public void invalidateWebService(String id) {
+        this.webServices.invalidate(id);
+    }
+
+    private static class Region<V> {
+
+        private String name;
+        private Registry<V> registry;
+        private LinkedHashMap<String, V> entries;
+
+        // counts the invalidations so that an entry read from the registry
+        // while it was being changed isn't cached after the invalidation
+        private long invalidationCount;
+
+        public Region(String name, Registry<V> registry, final int capacity) {
+            this.name = name;
+            this.registry = registry;
+            this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        public V get(String id) {
+            long startInvalidationCount;
+            synchronized (this) {
+                V entry = this.entries.get(id);
+                if (entry != null) {
+                    return entry;
+                }
+                startInvalidationCount = this.invalidationCount;
+            }
+
+            // read from the cluster without holding the lock, missing
+            // entries aren't cached since a client may add them later
+            Statistics.getInstance().add("MetadataCache-" + this.name + "-Miss-Count", 1);
+            V entry = this.registry.get(id);
+            if (entry != null) {
+                synchronized (this) {
+                    if (this.invalidationCount == startInvalidationCount) {
+                        this.entries.put(id, entry);
+                    }
+                }
+            }
+            return entry;
+        }
+
+        public synchronized ArrayList<V> values() {
+            return new ArrayList<V>(this.entries.values());
+        }
+
+        public synchronized void invalidate(String id) {
+            this.invalidationCount++;
+            this.entries.remove(id);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.storage;
+
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
+import edu.kstate.datastore.data.ValueSetEntry;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The value sets of each chunk of a series kept together as one block,
+ * alongside the per time step value set store the clients read. In a
+ * clustered binding each member owns part of the blocks, and the "local"
+ * methods only cover that part.
+ */
+public interface SeriesStore {
+
+    SeriesBlock get(SeriesKey key);
+
+    /**
+     * Adds the value sets to the block of the given chunk, creating the
+     * block if there isn't one yet. Concurrent merges into the same block
+     * don't lose each other's time steps. A merge may copy or rewrite the
+     * whole block, so its cost grows with the length of the chunk and it
+     * is cheaper to merge a batch of value sets at once. The block is left
+     * alone if none of the value sets change it.
+     */
+    void merge(SeriesKey key, List<ValueSetEntry> entries);
+
+    void remove(SeriesKey key);
+
+    /**
+     * Returns the keys of the blocks owned by this member.
+     */
+    Set<SeriesKey> localKeySet();
+
+    /**
+     * Returns the access statistics of a locally owned block, or null if
+     * it isn't here. Neither reads the block nor counts as a hit.
+     */
+    StoredValueSet getStored(SeriesKey key);
+
+    long getLocalEntryCount();
+
+    /**
+     * Returns the memory used by the locally owned blocks. It is kept to
+     * its own limit, apart from the memory used by the value sets.
+     */
+    long getLocalCostB();
+}
@@ -0,0 +1,117 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+
+/**
+ * The shared data structures the pipeline threads work on. The names in
+ * the comments are the Hazelcast structures the C# clients use, which any
+ * clustered binding has to keep.
+ */
+public interface Storage {
+
+    /**
+     * The cached value sets ("valueSet" map).
+     */
+    ValueSetStore getValueSetStore();
+
+    /**
+     * The cached value sets grouped into a block per chunk of a series
+     * ("valueSeries" map). Only the data store uses it.
+     */
+    SeriesStore getSeriesStore();
+
+    /**
+     * Requests that models are blocked on ("valueSetRequest" queue).
+     */
+    EntryQueue<ValueSetRequestEntry> getRequestQueue();
+
+    /**
+     * Speculative requests ("valueSetPrefetchRequest" queue).
+     */
+    EntryQueue<ValueSetRequestEntry> getPrefetchRequestQueue();
+
+    /**
+     * Returns the id of this member.
+     */
+    String getLocalMemberId();
+
+    /**
+     * Returns the id of the member that owns the value set with the given
+     * key, or null if the owner isn't known right now (for example while
+     * partitions are migrating).
+     */
+    String getOwnerMemberId(String valueSetKey);
+
+    /**
+     * Requests routed to the given member because it owns the value sets
+     * they ask for ("valueSetRequest.MEMBER" queue).
+     */
+    EntryQueue<ValueSetRequestEntry> getMemberRequestQueue(String memberId);
+
+    /**
+     * Prefetch requests routed to the given member
+     * ("valueSetPrefetchRequest.MEMBER" queue).
+     */
+    EntryQueue<ValueSetRequestEntry> getMemberPrefetchRequestQueue(String memberId);
+
+    /**
+     * Moves the requests routed to the given member back into the shared
+     * request queues, for when it stops or leaves.
+     */
+    void requeueMemberRequests(String memberId);
+
+    /**
+     * Value sets uploaded by models ("valueSet" queue).
+     */
+    EntryQueue<ValueSetEntry> getUploadQueue();
+
+    /**
+     * The keys of the cached value sets that still have to be delivered,
+     * with the time each was queued ("valueSetUpload" map). It is keyed
+     * like the value set store so a clustered binding keeps each marker on
+     * the member that owns the value set, and the upload state can be
+     * changed without touching the values.
+     */
+    Registry<Long> getUploadRegistry();
+
+    /**
+     * The element sets requests refer to ("elementSet" map).
+     */
+    Registry<ElementSetEntry> getElementSetRegistry();
+
+    /**
+     * The web services requests refer to ("webService" map).
+     */
+    Registry<WebServiceEntry> getWebServiceRegistry();
+
+    /**
+     * The clients that are running ("client" map).
+     */
+    Registry<String> getClientRegistry();
+}
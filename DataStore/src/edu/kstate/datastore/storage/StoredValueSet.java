@@ -0,0 +1,65 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage;
+
+/**
+ * The statistics the expiration thread orders stored value sets (and
+ * series blocks) by. The values themselves are left in the store.
+ */
+public class StoredValueSet {
+
+    private String key;
+    private int hits;
+    private long creationTime;
+    private long lastAccessTime;
+    private long costB;
+
+    public StoredValueSet(String key, int hits, long creationTime, long lastAccessTime, long costB) {
+        this.key = key;
+        this.hits = hits;
+        this.creationTime = creationTime;
+        this.lastAccessTime = lastAccessTime;
+        this.costB = costB;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public int getHits() {
+        return this.hits;
+    }
+
+    public long getCreationTime() {
+        return this.creationTime;
+    }
+
+    public long getLastAccessTime() {
+        return this.lastAccessTime;
+    }
+
+    public long getCostB() {
+        return this.costB;
+    }
+}
@@ -0,0 +1,90 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage;
+
+import edu.kstate.datastore.data.ValueSetEntry;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The value set cache. In a clustered binding each member owns part of
+ * the keys, and the "local" methods only cover that part.
+ */
+public interface ValueSetStore {
+
+    ValueSetEntry get(String key);
+
+    /**
+     * Returns the value sets with the given keys that are here, for reads
+     * that aren't on behalf of a client. The reads neither count as hits
+     * nor change the last access times, so expiration still sees entries
+     * no client has read as unused. A clustered binding reads a batch of
+     * keys at once, so callers should pass many keys per call.
+     */
+    Map<String, ValueSetEntry> peekAll(Collection<String> keys);
+
+    boolean containsKey(String key);
+
+    void put(String key, ValueSetEntry entry);
+
+    /**
+     * Puts an entry that is removed once the given time has passed, for
+     * entries that shouldn't be kept as long as the expiration thread
+     * would keep them.
+     */
+    void put(String key, ValueSetEntry entry, long ttlMs);
+
+    /**
+     * Puts a batch of entries, which a clustered binding may split up by
+     * the member that owns them.
+     */
+    void putAll(Map<String, ValueSetEntry> entries);
+
+    void remove(String key);
+
+    /**
+     * Returns the keys owned by this member.
+     */
+    Set<String> localKeySet();
+
+    /**
+     * Returns the access statistics of a locally owned entry, or null if
+     * it isn't here. Neither reads the values nor counts as a hit.
+     */
+    StoredValueSet getStored(String key);
+
+    long getLocalEntryCount();
+
+    /**
+     * Returns the memory used by the locally owned entries.
+     */
+    long getLocalCostB();
+
+    /**
+     * Returns the number of reads of locally owned entries.
+     */
+    long getLocalHits();
+}
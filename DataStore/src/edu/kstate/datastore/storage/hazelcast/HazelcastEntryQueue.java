@@ -0,0 +1,69 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.IQueue;
+import edu.kstate.datastore.storage.EntryQueue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+public class HazelcastEntryQueue<T> implements EntryQueue<T> {
+
+    private IQueue<T> queue;
+
+    public HazelcastEntryQueue(IQueue<T> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public T poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        return queue.drainTo(c, maxElements);
+    }
+
+    @Override
+    public void put(T entry) throws InterruptedException {
+        queue.put(entry);
+    }
+
+    @Override
+    public boolean offer(T entry) {
+        return queue.offer(entry);
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,74 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.IMap;
+import edu.kstate.datastore.storage.Registry;
+
+import java.util.Map;
+import java.util.Set;
+
+public class HazelcastRegistry<T> implements Registry<T> {
+
+    private IMap<String, T> map;
+
+    public HazelcastRegistry(IMap<String, T> map) {
+        this.map = map;
+    }
+
+    @Override
+    public T get(String id) {
+        return map.get(id);
+    }
+
+    @Override
+    public boolean containsKey(String id) {
+        return map.containsKey(id);
+    }
+
+    @Override
+    public void put(String id, T entry) {
+        map.put(id, entry);
+    }
+
+    @Override
+    public void putAll(Map<String, T> entries) {
+        map.putAll(entries);
+    }
+
+    @Override
+    public void remove(String id) {
+        map.remove(id);
+    }
+
+    @Override
+    public Set<String> localKeySet() {
+        return map.localKeySet();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+}
@@ -0,0 +1,109 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEntry;
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.StoredValueSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The blocks are keyed by their series key and spread over the members
+ * like any other key, so each block lives on the member that owns its
+ * chunk.
+ */
+public class HazelcastSeriesStore implements SeriesStore {
+
+    private IMap<SeriesKey, SeriesBlock> map;
+
+    public HazelcastSeriesStore(IMap<SeriesKey, SeriesBlock> map) {
+        this.map = map;
+    }
+
+    @Override
+    public SeriesBlock get(SeriesKey key) {
+        return map.get(key);
+    }
+
+    @Override
+    public void merge(SeriesKey key, List<ValueSetEntry> entries) {
+
+        // the block is read, changed and written back whole, so the key is
+        // locked in case another member merges into it at the same time.
+        // value sets that are already in the block (such as ones fetched
+        // again after expiring) don't cost the write.
+        map.lock(key);
+        try {
+            SeriesBlock block = map.get(key);
+            boolean isChanged = false;
+            for (ValueSetEntry nextEntry : entries) {
+                if (block == null) {
+                    block = new SeriesBlock(key, nextEntry.getValueCount());
+                }
+                if (block.put(nextEntry) == true) {
+                    isChanged = true;
+                }
+            }
+            if (isChanged == true) {
+                map.put(key, block);
+            }
+        } finally {
+            map.unlock(key);
+        }
+    }
+
+    @Override
+    public void remove(SeriesKey key) {
+        map.remove(key);
+    }
+
+    @Override
+    public Set<SeriesKey> localKeySet() {
+        return map.localKeySet();
+    }
+
+    @Override
+    public StoredValueSet getStored(SeriesKey key) {
+        MapEntry<SeriesKey, SeriesBlock> mapEntry = map.getMapEntry(key);
+        if (mapEntry == null) {
+            return null;
+        }
+        return new StoredValueSet(key.toString(), mapEntry.getHits(), mapEntry.getCreationTime(), mapEntry.getLastAccessTime(),
+                mapEntry.getCost());
+    }
+
+    @Override
+    public long getLocalEntryCount() {
+        return map.getLocalMapStats().getOwnedEntryCount();
+    }
+
+    @Override
+    public long getLocalCostB() {
+        return map.getLocalMapStats().getOwnedEntryMemoryCost();
+    }
+}
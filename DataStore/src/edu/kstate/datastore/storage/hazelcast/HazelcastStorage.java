@@ -0,0 +1,185 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import com.hazelcast.partition.Partition;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.storage.EntryQueue;
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.util.Log;
+
+/**
+ * Storage on a Hazelcast 2.x cluster, using the map and queue names the
+ * C# clients use.
+ */
+public class HazelcastStorage implements Storage {
+
+    private HazelcastInstance instance;
+    private ValueSetStore valueSetStore;
+    private SeriesStore seriesStore;
+    private EntryQueue<ValueSetRequestEntry> requestQueue;
+    private EntryQueue<ValueSetRequestEntry> prefetchRequestQueue;
+    private EntryQueue<ValueSetEntry> uploadQueue;
+    private Registry<Long> uploadRegistry;
+    private Registry<ElementSetEntry> elementSetRegistry;
+    private Registry<WebServiceEntry> webServiceRegistry;
+    private Registry<String> clientRegistry;
+
+    public HazelcastStorage(HazelcastInstance instance, boolean compressValueSets) {
+        this.instance = instance;
+        this.valueSetStore = new HazelcastValueSetStore(instance, instance.<String, ValueSetEntry>getMap("valueSet"), compressValueSets);
+        this.seriesStore = new HazelcastSeriesStore(instance.<SeriesKey, SeriesBlock>getMap("valueSeries"));
+        this.requestQueue = new HazelcastEntryQueue<ValueSetRequestEntry>(instance.<ValueSetRequestEntry>getQueue("valueSetRequest"));
+        this.prefetchRequestQueue = new HazelcastEntryQueue<ValueSetRequestEntry>(instance.<ValueSetRequestEntry>getQueue("valueSetPrefetchRequest"));
+        this.uploadQueue = new HazelcastEntryQueue<ValueSetEntry>(instance.<ValueSetEntry>getQueue("valueSet"));
+        this.uploadRegistry = new HazelcastRegistry<Long>(instance.<String, Long>getMap("valueSetUpload"));
+        this.elementSetRegistry = new HazelcastRegistry<ElementSetEntry>(instance.<String, ElementSetEntry>getMap("elementSet"));
+        this.webServiceRegistry = new HazelcastRegistry<WebServiceEntry>(instance.<String, WebServiceEntry>getMap("webService"));
+        this.clientRegistry = new HazelcastRegistry<String>(instance.<String, String>getMap("client"));
+
+        // requests routed to a member that leaves would never be fetched,
+        // so they go back into the shared queues
+        instance.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent event) {
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                requeueMemberRequests(event.getMember().getUuid());
+            }
+        });
+    }
+
+    @Override
+    public void requeueMemberRequests(String memberId) {
+        int count = requeue(getMemberRequestQueue(memberId), this.requestQueue)
+                + requeue(getMemberPrefetchRequestQueue(memberId), this.prefetchRequestQueue);
+        if (count > 0) {
+            Log.info(this.getClass(), "Requeued %d requests routed to %s", count, memberId);
+        }
+    }
+
+    private static int requeue(EntryQueue<ValueSetRequestEntry> from, EntryQueue<ValueSetRequestEntry> to) {
+        int count = 0;
+        ValueSetRequestEntry entry = from.poll();
+        while (entry != null) {
+            if (to.offer(entry) == false) {
+                Log.warn(HazelcastStorage.class, "Request queue full, dropped routed request " + ValueSetRequestEntry.createKey(entry));
+            }
+            count++;
+            entry = from.poll();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the instance, for the cluster features outside the SPI.
+     */
+    public HazelcastInstance getInstance() {
+        return this.instance;
+    }
+
+    @Override
+    public ValueSetStore getValueSetStore() {
+        return this.valueSetStore;
+    }
+
+    @Override
+    public SeriesStore getSeriesStore() {
+        return this.seriesStore;
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getRequestQueue() {
+        return this.requestQueue;
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getPrefetchRequestQueue() {
+        return this.prefetchRequestQueue;
+    }
+
+    @Override
+    public String getLocalMemberId() {
+        return this.instance.getCluster().getLocalMember().getUuid();
+    }
+
+    @Override
+    public String getOwnerMemberId(String valueSetKey) {
+        Partition partition = this.instance.getPartitionService().getPartition(valueSetKey);
+        Member owner = partition.getOwner();
+        if (owner == null) {
+            return null;
+        }
+        return owner.getUuid();
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getMemberRequestQueue(String memberId) {
+        return new HazelcastEntryQueue<ValueSetRequestEntry>(this.instance.<ValueSetRequestEntry>getQueue("valueSetRequest." + memberId));
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getMemberPrefetchRequestQueue(String memberId) {
+        return new HazelcastEntryQueue<ValueSetRequestEntry>(this.instance.<ValueSetRequestEntry>getQueue("valueSetPrefetchRequest." + memberId));
+    }
+
+    @Override
+    public EntryQueue<ValueSetEntry> getUploadQueue() {
+        return this.uploadQueue;
+    }
+
+    @Override
+    public Registry<Long> getUploadRegistry() {
+        return this.uploadRegistry;
+    }
+
+    @Override
+    public Registry<ElementSetEntry> getElementSetRegistry() {
+        return this.elementSetRegistry;
+    }
+
+    @Override
+    public Registry<WebServiceEntry> getWebServiceRegistry() {
+        return this.webServiceRegistry;
+    }
+
+    @Override
+    public Registry<String> getClientRegistry() {
+        return this.clientRegistry;
+    }
+}
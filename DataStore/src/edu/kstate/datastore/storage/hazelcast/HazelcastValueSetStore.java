@@ -0,0 +1,157 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEntry;
+import com.hazelcast.core.Member;
+import com.hazelcast.partition.PartitionService;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.StoredValueSet;
+import edu.kstate.datastore.storage.ValueSetStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class HazelcastValueSetStore implements ValueSetStore {
+
+    private IMap<String, ValueSetEntry> map;
+    private PartitionService partitionService;
+    private boolean compress;
+
+    /**
+     * Compressed value sets are smaller in the map and so in its memory
+     * cost, but only clients with the codec can read them.
+     */
+    public HazelcastValueSetStore(HazelcastInstance instance, IMap<String, ValueSetEntry> map, boolean compress) {
+        this.map = map;
+        this.compress = compress;
+        this.partitionService = instance.getPartitionService();
+    }
+
+    @Override
+    public ValueSetEntry get(String key) {
+        return map.get(key);
+    }
+
+    @Override
+    public Map<String, ValueSetEntry> peekAll(Collection<String> keys) {
+        // the values of a get or a map entry are read as an access, so
+        // they're read by a query instead, which visits every member once
+        HashMap<String, ValueSetEntry> entries = new HashMap<String, ValueSetEntry>();
+        if (keys.isEmpty() == true) {
+            return entries;
+        }
+        for (Map.Entry<String, ValueSetEntry> nextEntry : map.entrySet(new KeyPredicate(keys))) {
+            entries.put(nextEntry.getKey(), nextEntry.getValue());
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public void put(String key, ValueSetEntry entry) {
+        if (this.compress == true) {
+            entry.compress();
+        }
+        map.put(key, entry);
+    }
+
+    @Override
+    public void put(String key, ValueSetEntry entry, long ttlMs) {
+        if (this.compress == true) {
+            entry.compress();
+        }
+        map.put(key, entry, ttlMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void putAll(Map<String, ValueSetEntry> entries) {
+
+        // group the entries by the member that owns them so that each
+        // putAll only goes to one member
+        HashMap<Member, HashMap<String, ValueSetEntry>> entriesByOwner = new HashMap<Member, HashMap<String, ValueSetEntry>>();
+        for (Map.Entry<String, ValueSetEntry> nextEntry : entries.entrySet()) {
+            if (this.compress == true) {
+                nextEntry.getValue().compress();
+            }
+            Member owner = partitionService.getPartition(nextEntry.getKey()).getOwner();
+            HashMap<String, ValueSetEntry> ownerEntries = entriesByOwner.get(owner);
+            if (ownerEntries == null) {
+                ownerEntries = new HashMap<String, ValueSetEntry>();
+                entriesByOwner.put(owner, ownerEntries);
+            }
+            ownerEntries.put(nextEntry.getKey(), nextEntry.getValue());
+        }
+
+        for (HashMap<String, ValueSetEntry> ownerEntries : entriesByOwner.values()) {
+            map.putAll(ownerEntries);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    @Override
+    public Set<String> localKeySet() {
+        return map.localKeySet();
+    }
+
+    @Override
+    public StoredValueSet getStored(String key) {
+        // the map entry neither counts as a hit nor deserializes the value
+        // unless it's asked for
+        MapEntry<String, ValueSetEntry> mapEntry = map.getMapEntry(key);
+        if (mapEntry == null) {
+            return null;
+        }
+        return new StoredValueSet(key, mapEntry.getHits(), mapEntry.getCreationTime(), mapEntry.getLastAccessTime(),
+                mapEntry.getCost());
+    }
+
+    @Override
+    public long getLocalEntryCount() {
+        return map.getLocalMapStats().getOwnedEntryCount();
+    }
+
+    @Override
+    public long getLocalCostB() {
+        return map.getLocalMapStats().getOwnedEntryMemoryCost();
+    }
+
+    @Override
+    public long getLocalHits() {
+        return map.getLocalMapStats().getHits();
+    }
+}
@@ -0,0 +1,77 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.hazelcast;
+
+import com.hazelcast.core.MapEntry;
+import com.hazelcast.nio.DataSerializable;
+import com.hazelcast.query.Predicate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * Matches the map entries with the given keys. The entries are read by a
+ * query on the members that own them, and unlike a get a query doesn't
+ * count as a hit or change the last access time.
+ */
+public class KeyPredicate implements Predicate, DataSerializable {
+    private static final long serialVersionUID = 1L;
+    private HashSet<String> keys;
+
+    /**
+     * Required for serialization;
+     */
+    public KeyPredicate() {
+
+    }
+
+    public KeyPredicate(Collection<String> keys) {
+        this.keys = new HashSet<String>(keys);
+    }
+
+    @Override
+    public boolean apply(MapEntry mapEntry) {
+        return this.keys.contains(mapEntry.getKey());
+    }
+
+    @Override
+    public void readData(DataInput in) throws IOException {
+        int keyCount = in.readInt();
+        this.keys = new HashSet<String>(keyCount * 2);
+        for (int i = 0; i < keyCount; i++) {
+            this.keys.add(in.readUTF());
+        }
+    }
+
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeInt(this.keys.size());
+        for (String key : this.keys) {
+            out.writeUTF(key);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.storage.memory;
+
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.StoredValueSet;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the same per-block statistics Hazelcast does. A block is changed
+ * in place while its slot is locked, and its cost is updated afterwards.
+ */
+public class MemorySeriesStore implements SeriesStore {
+
+    private ConcurrentHashMap<SeriesKey, Slot> slots = new ConcurrentHashMap<SeriesKey, Slot>();
+    private AtomicLong costB = new AtomicLong();
+
+    private static class Slot {
+        private SeriesBlock block;
+        private final long creationTime;
+        private long costB;
+        private final AtomicInteger hits = new AtomicInteger();
+        private volatile long lastAccessTime;
+        private boolean removed;
+
+        Slot(long creationTime) {
+            this.creationTime = creationTime;
+            this.lastAccessTime = creationTime;
+        }
+    }
+
+    @Override
+    public SeriesBlock get(SeriesKey key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        slot.hits.incrementAndGet();
+        slot.lastAccessTime = System.currentTimeMillis();
+        synchronized (slot) {
+            return slot.block;
+        }
+    }
+
+    @Override
+    public void merge(SeriesKey key, List<ValueSetEntry> entries) {
+        if (entries.isEmpty() == true) {
+            return;
+        }
+        while (true) {
+            Slot slot = slots.get(key);
+            if (slot == null) {
+                Slot newSlot = new Slot(System.currentTimeMillis());
+                slot = slots.putIfAbsent(key, newSlot);
+                if (slot == null) {
+                    slot = newSlot;
+                }
+            }
+            synchronized (slot) {
+
+                // the slot was removed while we were waiting for it
+                if (slot.removed == true) {
+                    continue;
+                }
+
+                // readers may be holding the current block, so the changes
+                // are made to a copy
+                SeriesBlock block = slot.block == null ? null : new SeriesBlock(slot.block);
+                boolean isChanged = false;
+                for (ValueSetEntry nextEntry : entries) {
+                    if (block == null) {
+                        block = new SeriesBlock(key, nextEntry.getValueCount());
+                    }
+                    if (block.put(nextEntry) == true) {
+                        isChanged = true;
+                    }
+                }
+                if (isChanged == true) {
+                    long blockCostB = block.getCostB();
+                    costB.addAndGet(blockCostB - slot.costB);
+                    slot.block = block;
+                    slot.costB = blockCostB;
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void remove(SeriesKey key) {
+        Slot previous = slots.remove(key);
+        if (previous != null) {
+            synchronized (previous) {
+                previous.removed = true;
+                costB.addAndGet(-previous.costB);
+            }
+        }
+    }
+
+    @Override
+    public Set<SeriesKey> localKeySet() {
+        return slots.keySet();
+    }
+
+    @Override
+    public StoredValueSet getStored(SeriesKey key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        synchronized (slot) {
+            return new StoredValueSet(key.toString(), slot.hits.get(), slot.creationTime, slot.lastAccessTime, slot.costB);
+        }
+    }
+
+    @Override
+    public long getLocalEntryCount() {
+        return slots.size();
+    }
+
+    @Override
+    public long getLocalCostB() {
+        return costB.get();
+    }
+}
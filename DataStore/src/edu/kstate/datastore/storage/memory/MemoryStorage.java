@@ -0,0 +1,160 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.memory;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.storage.EntryQueue;
+import edu.kstate.datastore.storage.Registry;
+import edu.kstate.datastore.storage.SeriesStore;
+import edu.kstate.datastore.storage.Storage;
+import edu.kstate.datastore.storage.ValueSetStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage held in this JVM only, for running the pipeline threads in
+ * tests and benchmarks without a cluster. Everything is local, so the
+ * local views cover the whole store and this is the only member. Each
+ * member id still gets its own routed request queues, so routing can be
+ * exercised by overriding getOwnerMemberId.
+ */
+public class MemoryStorage implements Storage {
+
+    private static final String LOCAL_MEMBER_ID = "local";
+
+    private ValueSetStore valueSetStore;
+    private SeriesStore seriesStore = new MemorySeriesStore();
+    private EntryQueue<ValueSetRequestEntry> requestQueue;
+    private EntryQueue<ValueSetRequestEntry> prefetchRequestQueue;
+    private EntryQueue<ValueSetEntry> uploadQueue;
+    private ConcurrentHashMap<String, EntryQueue<ValueSetRequestEntry>> memberRequestQueues = new ConcurrentHashMap<String, EntryQueue<ValueSetRequestEntry>>();
+    private ConcurrentHashMap<String, EntryQueue<ValueSetRequestEntry>> memberPrefetchRequestQueues = new ConcurrentHashMap<String, EntryQueue<ValueSetRequestEntry>>();
+    private Registry<Long> uploadRegistry = new MemoryRegistry<Long>();
+    private Registry<ElementSetEntry> elementSetRegistry = new MemoryRegistry<ElementSetEntry>();
+    private Registry<WebServiceEntry> webServiceRegistry = new MemoryRegistry<WebServiceEntry>();
+    private Registry<String> clientRegistry = new MemoryRegistry<String>();
+
+    /**
+     * The capacities match the data store's queue capacity options.
+     */
+    public MemoryStorage(int requestQueueCapacity, int prefetchQueueCapacity, int valueSetQueueCapacity, boolean compressValueSets) {
+        this.valueSetStore = new MemoryValueSetStore(compressValueSets);
+        this.requestQueue = new MemoryEntryQueue<ValueSetRequestEntry>(requestQueueCapacity);
+        this.prefetchRequestQueue = new MemoryEntryQueue<ValueSetRequestEntry>(prefetchQueueCapacity);
+        this.uploadQueue = new MemoryEntryQueue<ValueSetEntry>(valueSetQueueCapacity);
+    }
+
+    @Override
+    public ValueSetStore getValueSetStore() {
+        return this.valueSetStore;
+    }
+
+    @Override
+    public SeriesStore getSeriesStore() {
+        return this.seriesStore;
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getRequestQueue() {
+        return this.requestQueue;
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getPrefetchRequestQueue() {
+        return this.prefetchRequestQueue;
+    }
+
+    @Override
+    public String getLocalMemberId() {
+        return LOCAL_MEMBER_ID;
+    }
+
+    @Override
+    public String getOwnerMemberId(String valueSetKey) {
+        return LOCAL_MEMBER_ID;
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getMemberRequestQueue(String memberId) {
+        return getMemberQueue(this.memberRequestQueues, memberId);
+    }
+
+    @Override
+    public EntryQueue<ValueSetRequestEntry> getMemberPrefetchRequestQueue(String memberId) {
+        return getMemberQueue(this.memberPrefetchRequestQueues, memberId);
+    }
+
+    private static EntryQueue<ValueSetRequestEntry> getMemberQueue(ConcurrentHashMap<String, EntryQueue<ValueSetRequestEntry>> queues, String memberId) {
+        EntryQueue<ValueSetRequestEntry> queue = queues.get(memberId);
+        if (queue == null) {
+            queues.putIfAbsent(memberId, new MemoryEntryQueue<ValueSetRequestEntry>(Integer.MAX_VALUE));
+            queue = queues.get(memberId);
+        }
+        return queue;
+    }
+
+    @Override
+    public void requeueMemberRequests(String memberId) {
+        EntryQueue<ValueSetRequestEntry> memberRequestQueue = getMemberRequestQueue(memberId);
+        ValueSetRequestEntry entry = memberRequestQueue.poll();
+        while (entry != null) {
+            this.requestQueue.offer(entry);
+            entry = memberRequestQueue.poll();
+        }
+        EntryQueue<ValueSetRequestEntry> memberPrefetchRequestQueue = getMemberPrefetchRequestQueue(memberId);
+        entry = memberPrefetchRequestQueue.poll();
+        while (entry != null) {
+            this.prefetchRequestQueue.offer(entry);
+            entry = memberPrefetchRequestQueue.poll();
+        }
+    }
+
+    @Override
+    public EntryQueue<ValueSetEntry> getUploadQueue() {
+        return this.uploadQueue;
+    }
+
+    @Override
+    public Registry<Long> getUploadRegistry() {
+        return this.uploadRegistry;
+    }
+
+    @Override
+    public Registry<ElementSetEntry> getElementSetRegistry() {
+        return this.elementSetRegistry;
+    }
+
+    @Override
+    public Registry<WebServiceEntry> getWebServiceRegistry() {
+        return this.webServiceRegistry;
+    }
+
+    @Override
+    public Registry<String> getClientRegistry() {
+        return this.clientRegistry;
+    }
+}
@@ -0,0 +1,182 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.storage.memory;
+
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.StoredValueSet;
+import edu.kstate.datastore.storage.ValueSetStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the same per-entry statistics Hazelcast does: reads count as hits
+ * except for peekAll, which like a Hazelcast query leaves them alone, and
+ * the cost is an estimate of the serialized key and entry, using the
+ * stored (possibly compressed) size of the values.
+ */
+public class MemoryValueSetStore implements ValueSetStore {
+
+    // the strings and flags of a value set, roughly
+    private static final long ENTRY_OVERHEAD_B = 128;
+
+    private ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+    private AtomicLong costB = new AtomicLong();
+    private AtomicLong hits = new AtomicLong();
+    private boolean compress;
+
+    public MemoryValueSetStore(boolean compress) {
+        this.compress = compress;
+    }
+
+    private static class Slot {
+        private final ValueSetEntry value;
+        private final long creationTime;
+        private final long costB;
+        private final long expirationTime;
+        private final AtomicInteger hits = new AtomicInteger();
+        private volatile long lastAccessTime;
+
+        Slot(ValueSetEntry value, long creationTime, long costB, long expirationTime) {
+            this.value = value;
+            this.creationTime = creationTime;
+            this.costB = costB;
+            this.expirationTime = expirationTime;
+            this.lastAccessTime = creationTime;
+        }
+    }
+
+    /**
+     * Returns the slot of the key, or null if there is none or it has
+     * outlived its time to live, in which case it is removed.
+     */
+    private Slot getSlot(String key) {
+        Slot slot = slots.get(key);
+        if (slot == null || slot.expirationTime == 0 || slot.expirationTime > System.currentTimeMillis()) {
+            return slot;
+        }
+        if (slots.remove(key, slot) == true) {
+            costB.addAndGet(-slot.costB);
+        }
+        return null;
+    }
+
+    private static long estimateCostB(String key, ValueSetEntry entry) {
+        return 2L * key.length() + entry.getDataLength() + ENTRY_OVERHEAD_B;
+    }
+
+    @Override
+    public ValueSetEntry get(String key) {
+        Slot slot = getSlot(key);
+        if (slot == null) {
+            return null;
+        }
+        slot.hits.incrementAndGet();
+        slot.lastAccessTime = System.currentTimeMillis();
+        hits.incrementAndGet();
+        return slot.value;
+    }
+
+    @Override
+    public Map<String, ValueSetEntry> peekAll(Collection<String> keys) {
+        HashMap<String, ValueSetEntry> entries = new HashMap<String, ValueSetEntry>();
+        for (String key : keys) {
+            Slot slot = getSlot(key);
+            if (slot != null) {
+                entries.put(key, slot.value);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return getSlot(key) != null;
+    }
+
+    @Override
+    public void put(String key, ValueSetEntry entry) {
+        put(key, entry, 0);
+    }
+
+    @Override
+    public void put(String key, ValueSetEntry entry, long ttlMs) {
+        if (this.compress == true) {
+            entry.compress();
+        }
+        long now = System.currentTimeMillis();
+        Slot slot = new Slot(entry, now, estimateCostB(key, entry), ttlMs > 0 ? now + ttlMs : 0);
+        Slot previous = slots.put(key, slot);
+        costB.addAndGet(slot.costB - (previous == null ? 0 : previous.costB));
+    }
+
+    @Override
+    public void putAll(Map<String, ValueSetEntry> entries) {
+        for (Map.Entry<String, ValueSetEntry> nextEntry : entries.entrySet()) {
+            put(nextEntry.getKey(), nextEntry.getValue());
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        Slot previous = slots.remove(key);
+        if (previous != null) {
+            costB.addAndGet(-previous.costB);
+        }
+    }
+
+    @Override
+    public Set<String> localKeySet() {
+        return slots.keySet();
+    }
+
+    @Override
+    public StoredValueSet getStored(String key) {
+        Slot slot = getSlot(key);
+        if (slot == null) {
+            return null;
+        }
+        return new StoredValueSet(key, slot.hits.get(), slot.creationTime, slot.lastAccessTime, slot.costB);
+    }
+
+    @Override
+    public long getLocalEntryCount() {
+        return slots.size();
+    }
+
+    @Override
+    public long getLocalCostB() {
+        return costB.get();
+    }
+
+    @Override
+    public long getLocalHits() {
+        return hits.get();
+    }
+}
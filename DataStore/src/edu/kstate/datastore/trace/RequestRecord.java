@@ -0,0 +1,106 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.trace;
+
+/**
+ * One entry read back from a request trace: a demand or prefetch request,
+ * an upload, or an element set the requests and uploads refer to. Only the
+ * identity of an upload is kept, not its values.
+ */
+public class RequestRecord {
+
+    public static final byte TYPE_REQUEST = 0;
+    public static final byte TYPE_PREFETCH_REQUEST = 1;
+    public static final byte TYPE_UPLOAD = 2;
+    public static final byte TYPE_ELEMENT_SET = 3;
+
+    private byte type;
+    private long timeUs;
+    private String webServiceId;
+    private String quantityId;
+    private String elementSetId;
+    private String timeStamp;
+    private String scenarioId;
+    private int valueCount;
+    private String[] elementIds;
+
+    public RequestRecord(byte type, long timeUs, String webServiceId, String quantityId, String elementSetId, String timeStamp,
+                         String scenarioId, int valueCount, String[] elementIds) {
+        this.type = type;
+        this.timeUs = timeUs;
+        this.webServiceId = webServiceId;
+        this.quantityId = quantityId;
+        this.elementSetId = elementSetId;
+        this.timeStamp = timeStamp;
+        this.scenarioId = scenarioId;
+        this.valueCount = valueCount;
+        this.elementIds = elementIds;
+    }
+
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns when the record was captured, in microseconds since the
+     * trace started.
+     */
+    public long getTimeUs() {
+        return this.timeUs;
+    }
+
+    public String getWebServiceId() {
+        return this.webServiceId;
+    }
+
+    public String getQuantityId() {
+        return this.quantityId;
+    }
+
+    public String getElementSetId() {
+        return this.elementSetId;
+    }
+
+    public String getTimeStamp() {
+        return this.timeStamp;
+    }
+
+    public String getScenarioId() {
+        return this.scenarioId;
+    }
+
+    /**
+     * Returns the number of values in an upload.
+     */
+    public int getValueCount() {
+        return this.valueCount;
+    }
+
+    /**
+     * Returns the element ids of an element set record.
+     */
+    public String[] getElementIds() {
+        return this.elementIds;
+    }
+}
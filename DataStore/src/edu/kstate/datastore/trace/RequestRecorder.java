@@ -0,0 +1,200 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.trace;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Records the requests, prefetch requests and uploads that reach the data
+ * store, and the element sets they refer to, so the same workload can be
+ * replayed later against other configurations.
+ *
+ * The file starts with a magic number, a version and the wall clock start
+ * time. Each record is a type byte, the microseconds since the previous
+ * record as a variable length number, and the record's strings. Strings
+ * are written once and referred to by index afterwards, so a request for a
+ * key seen before costs a handful of bytes. Uploads keep only their value
+ * count.
+ *
+ * The listeners call in from Hazelcast's event threads, so writes are
+ * serialized on the recorder. Nothing is recorded until it's started.
+ */
+public class RequestRecorder {
+
+    public static final int MAGIC = 0x44535254; // "DSRT"
+    public static final int VERSION = 1;
+
+    private static final RequestRecorder instance = new RequestRecorder();
+
+    private volatile boolean enabled;
+    private DataOutputStream out;
+    private HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    private long lastTimeNs;
+    private long recordCount;
+
+    private RequestRecorder() {
+    }
+
+    public static RequestRecorder getInstance() {
+        return instance;
+    }
+
+    public synchronized void start(String filename) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 65536));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        this.stringIndexes.clear();
+        this.lastTimeNs = System.nanoTime();
+        this.recordCount = 0;
+        this.enabled = true;
+        Log.info(this.getClass(), "Recording requests to " + filename);
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public synchronized void stop() {
+        if (enabled == false) {
+            return;
+        }
+        enabled = false;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Log.error(this.getClass(), e);
+        }
+        Log.info(this.getClass(), "Recorded %d requests and uploads", recordCount);
+    }
+
+    public void recordRequest(ValueSetRequestEntry entry, boolean isPrefetch) {
+        if (enabled == false) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                writeHeader(isPrefetch == true ? RequestRecord.TYPE_PREFETCH_REQUEST : RequestRecord.TYPE_REQUEST);
+                writeKey(entry.getWebServiceId(), entry.getQuantityId(), entry.getElementSetId(), entry.getTimeStamp(), entry.getScenarioId());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    public void recordUpload(ValueSetEntry entry) {
+        if (enabled == false) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                writeHeader(RequestRecord.TYPE_UPLOAD);
+                writeKey(entry.getWebServiceId(), entry.getQuantityId(), entry.getElementSetId(), entry.getTimeStamp(), entry.getScenarioId());
+                writeVarLong(entry.getValueCount());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    public void recordElementSet(ElementSetEntry entry) {
+        if (enabled == false) {
+            return;
+        }
+        String[] elementIds = entry.getElementIds();
+        synchronized (this) {
+            try {
+                writeHeader(RequestRecord.TYPE_ELEMENT_SET);
+                writeString(entry.getElementSetId());
+                writeVarLong(elementIds.length);
+                for (String elementId : elementIds) {
+                    writeString(elementId);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void writeHeader(byte type) throws IOException {
+        if (enabled == false) {
+            throw new IOException("Recorder has been stopped");
+        }
+        long now = System.nanoTime();
+        out.writeByte(type);
+        writeVarLong((now - lastTimeNs) / 1000L);
+
+        // only advance by whole microseconds so rounding doesn't accumulate
+        lastTimeNs += ((now - lastTimeNs) / 1000L) * 1000L;
+        recordCount++;
+    }
+
+    private void writeKey(String webServiceId, String quantityId, String elementSetId, String timeStamp, String scenarioId) throws IOException {
+        writeString(webServiceId);
+        writeString(quantityId);
+        writeString(elementSetId);
+        writeString(timeStamp);
+        writeString(scenarioId);
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer index = stringIndexes.get(s);
+        if (index != null) {
+            writeVarLong(index);
+        } else {
+            // a new string is written in full after the next free index
+            int newIndex = stringIndexes.size();
+            stringIndexes.put(s, newIndex);
+            writeVarLong(newIndex);
+            out.writeUTF(s);
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private void fail(IOException e) {
+        Log.error(this.getClass(), "Stopping request recording", e);
+        enabled = false;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // already failing
+        }
+    }
+}
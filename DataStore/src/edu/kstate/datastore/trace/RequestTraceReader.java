@@ -0,0 +1,119 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Reads back a file written by RequestRecorder, one record at a time.
+ */
+public class RequestTraceReader {
+
+    private DataInputStream in;
+    private long startTimeMs;
+    private long timeUs;
+    private ArrayList<String> strings = new ArrayList<String>();
+
+    public RequestTraceReader(String filename) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 65536));
+        if (in.readInt() != RequestRecorder.MAGIC) {
+            in.close();
+            throw new IOException("Not a request trace: " + filename);
+        }
+        int version = in.readByte();
+        if (version != RequestRecorder.VERSION) {
+            in.close();
+            throw new IOException("Unsupported request trace version " + version + ": " + filename);
+        }
+        this.startTimeMs = in.readLong();
+    }
+
+    /**
+     * Returns the wall clock time the recording started.
+     */
+    public long getStartTimeMs() {
+        return this.startTimeMs;
+    }
+
+    /**
+     * Returns the next record, or null at the end of the trace. A trace
+     * cut short by a crash ends at the last complete record.
+     */
+    public RequestRecord next() throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        try {
+            timeUs += readVarLong();
+            if (type == RequestRecord.TYPE_ELEMENT_SET) {
+                String elementSetId = readString();
+                String[] elementIds = new String[(int) readVarLong()];
+                for (int i = 0; i < elementIds.length; i++) {
+                    elementIds[i] = readString();
+                }
+                return new RequestRecord((byte) type, timeUs, null, null, elementSetId, null, null, elementIds.length, elementIds);
+            }
+
+            String webServiceId = readString();
+            String quantityId = readString();
+            String elementSetId = readString();
+            String timeStamp = readString();
+            String scenarioId = readString();
+            int valueCount = type == RequestRecord.TYPE_UPLOAD ? (int) readVarLong() : 0;
+            return new RequestRecord((byte) type, timeUs, webServiceId, quantityId, elementSetId, timeStamp, scenarioId, valueCount, null);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readString() throws IOException {
+        int index = (int) readVarLong();
+        if (index == strings.size()) {
+            strings.add(in.readUTF());
+        }
+        return strings.get(index);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,77 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.trace;
+
+/**
+ * One timed step in the handling of a value set request. Spans are
+ * immutable so they can be published to the ring buffer without locking.
+ */
+public class Span {
+
+    private String name;
+    private String traceId;
+    private long startNs;
+    private long endNs;
+    private long threadId;
+    private String detail;
+
+    public Span(String name, String traceId, long startNs, long endNs, long threadId, String detail) {
+        this.name = name;
+        this.traceId = traceId;
+        this.startNs = startNs;
+        this.endNs = endNs;
+        this.threadId = threadId;
+        this.detail = detail;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the key of the value set request this span belongs to.
+     */
+    public String getTraceId() {
+        return this.traceId;
+    }
+
+    public long getStartNs() {
+        return this.startNs;
+    }
+
+    public long getEndNs() {
+        return this.endNs;
+    }
+
+    public long getThreadId() {
+        return this.threadId;
+    }
+
+    /**
+     * Returns extra information about the outcome of the step, or null.
+     */
+    public String getDetail() {
+        return this.detail;
+    }
+}
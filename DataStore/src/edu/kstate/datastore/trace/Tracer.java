@@ -0,0 +1,236 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.trace;
+
+import edu.kstate.datastore.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the spans of value set requests as they move from the request
+ * queue, through the fetch thread and the web service, to the value set
+ * map. Spans go into a fixed-size ring buffer that keeps the most recent
+ * ones; writers claim a slot with a single atomic increment and never
+ * block each other. Nothing is recorded until the tracer is started, so
+ * the cost when tracing is off is one volatile read per span.
+ *
+ * The buffer can be written as a Chrome trace (chrome://tracing or
+ * Perfetto) where each request key appears in the span arguments.
+ */
+public class Tracer {
+
+    private static final Tracer instance = new Tracer();
+
+    // request keys are hashed into this many slots to remember when they
+    // were queued, older keys are simply overwritten
+    private static final int ENQUEUE_SLOT_COUNT = 4096;
+
+    private volatile boolean enabled;
+    private AtomicReferenceArray<Span> spans;
+    private AtomicLong nextSpanIndex = new AtomicLong();
+    private AtomicReferenceArray<Span> enqueueTimes = new AtomicReferenceArray<Span>(ENQUEUE_SLOT_COUNT);
+    private ThreadLocal<String> currentTraceId = new ThreadLocal<String>();
+    private long originNs = System.nanoTime();
+
+    private Tracer() {
+    }
+
+    public static Tracer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts recording, keeping the given number of the most recent spans.
+     * The capacity is rounded up to a power of two.
+     */
+    public synchronized void start(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.spans = new AtomicReferenceArray<Span>(size);
+        this.nextSpanIndex.set(0);
+        this.enabled = true;
+        Log.info(this.getClass(), "Tracing enabled, buffer holds " + size + " spans");
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a span that started at the given time and ends now.
+     */
+    public void record(String name, String traceId, long startNs) {
+        record(name, traceId, startNs, System.nanoTime(), null);
+    }
+
+    public void record(String name, String traceId, long startNs, String detail) {
+        record(name, traceId, startNs, System.nanoTime(), detail);
+    }
+
+    public void record(String name, String traceId, long startNs, long endNs, String detail) {
+        if (this.enabled == false) {
+            return;
+        }
+        AtomicReferenceArray<Span> buffer = this.spans;
+        int index = (int) (this.nextSpanIndex.getAndIncrement() & (buffer.length() - 1));
+        buffer.set(index, new Span(name, traceId, startNs, endNs, Thread.currentThread().getId(), detail));
+    }
+
+    /**
+     * Remembers when a request was added to a request queue, so the time it
+     * spent waiting can be recorded when it's removed.
+     */
+    public void markEnqueued(String traceId) {
+        if (this.enabled == false) {
+            return;
+        }
+        int slot = (traceId.hashCode() & 0x7fffffff) % ENQUEUE_SLOT_COUNT;
+        enqueueTimes.set(slot, new Span("enqueue", traceId, System.nanoTime(), 0, Thread.currentThread().getId(), null));
+    }
+
+    /**
+     * Records the time the request spent in the queue, if we saw it being
+     * added.
+     */
+    public void markDequeued(String traceId, String queueName) {
+        if (this.enabled == false) {
+            return;
+        }
+        int slot = (traceId.hashCode() & 0x7fffffff) % ENQUEUE_SLOT_COUNT;
+        Span enqueued = enqueueTimes.get(slot);
+        if (enqueued != null && enqueued.getTraceId().equals(traceId) == true && enqueueTimes.compareAndSet(slot, enqueued, null) == true) {
+            record("queue", traceId, enqueued.getStartNs(), System.nanoTime(), queueName);
+        }
+    }
+
+    /**
+     * The trace id of the request the current thread is working on, used by
+     * the service adapters which don't otherwise know the request.
+     */
+    public String getCurrentTraceId() {
+        return this.currentTraceId.get();
+    }
+
+    public void setCurrentTraceId(String traceId) {
+        if (traceId == null) {
+            this.currentTraceId.remove();
+        } else {
+            this.currentTraceId.set(traceId);
+        }
+    }
+
+    /**
+     * Returns the recorded spans ordered by start time.
+     */
+    public ArrayList<Span> getSpans() {
+        ArrayList<Span> result = new ArrayList<Span>();
+        AtomicReferenceArray<Span> buffer = this.spans;
+        if (buffer == null) {
+            return result;
+        }
+        for (int i = 0; i < buffer.length(); i++) {
+            Span span = buffer.get(i);
+            if (span != null) {
+                result.add(span);
+            }
+        }
+        Collections.sort(result, new Comparator<Span>() {
+            @Override
+            public int compare(Span a, Span b) {
+                return a.getStartNs() < b.getStartNs() ? -1 : (a.getStartNs() == b.getStartNs() ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Writes the recorded spans in the Chrome trace event format. The
+     * process id is the data store instance id so the files from several
+     * instances can be loaded together.
+     */
+    public void writeChromeTrace(String filename, String processId) throws Exception {
+        ArrayList<Span> recordedSpans = getSpans();
+        BufferedWriter out = new BufferedWriter(new FileWriter(filename));
+        try {
+            out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean first = true;
+            for (Span span : recordedSpans) {
+                if (first == false) {
+                    out.write(",");
+                }
+                first = false;
+                out.write("\n{\"name\":\"");
+                out.write(escape(span.getName()));
+                out.write("\",\"cat\":\"datastore\",\"ph\":\"X\",\"ts\":");
+                out.write(String.valueOf((span.getStartNs() - originNs) / 1000L));
+                out.write(",\"dur\":");
+                out.write(String.valueOf(Math.max(0, span.getEndNs() - span.getStartNs()) / 1000L));
+                out.write(",\"pid\":");
+                out.write(processId);
+                out.write(",\"tid\":");
+                out.write(String.valueOf(span.getThreadId()));
+                out.write(",\"args\":{\"request\":\"");
+                out.write(escape(span.getTraceId()));
+                out.write("\"");
+                if (span.getDetail() != null) {
+                    out.write(",\"detail\":\"");
+                    out.write(escape(span.getDetail()));
+                    out.write("\"");
+                }
+                out.write("}}");
+            }
+            out.write("\n]}\n");
+        } finally {
+            out.close();
+        }
+        Log.info(this.getClass(), "Wrote %d spans to %s", recordedSpans.size(), filename);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
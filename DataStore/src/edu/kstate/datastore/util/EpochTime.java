@@ -0,0 +1,53 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.util;
+
+import java.text.ParsePosition;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The data store's time type: whole seconds since the epoch in a long.
+ * Time stamps travel between the clients, the data store and the web
+ * services as "yyyy-MM-ddTHH:mm:ss" strings without a zone, which are
+ * read as UTC so that every time stamp maps to exactly one instant (there
+ * is no skipped or repeated hour). The formatter is immutable, so one
+ * instance is shared by every thread.
+ */
+public class EpochTime {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    /**
+     * Returns the time of the given time stamp. Anything after the seconds
+     * (such as fractions of a second) is ignored. Throws an unchecked
+     * exception if it isn't a valid time stamp.
+     */
+    public static long parse(String timeStamp) {
+        return LocalDateTime.from(FORMATTER.parse(timeStamp, new ParsePosition(0))).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static String format(long timeS) {
+        return FORMATTER.format(LocalDateTime.ofEpochSecond(timeS, 0, ZoneOffset.UTC));
+    }
+}
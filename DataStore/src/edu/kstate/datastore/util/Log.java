@@ -0,0 +1,407 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.util;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging for the data store. Callers put a record into a
+ * fixed-size ring buffer and return; a single daemon thread formats the
+ * records and writes them to standard out. When a message is below the
+ * configured level nothing is formatted or allocated, so hot paths can
+ * log at debug level without paying for it in normal runs.
+ *
+ * If the buffer is full the record is dropped and counted rather than
+ * blocking the caller. The writer also limits how often the same message
+ * from the same class is printed, and reports how many were suppressed.
+ */
+public class Log {
+
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+    private static final int BUFFER_SIZE = 8192;
+    private static final long RATE_WINDOW_MS = 1000;
+    private static final long MIN_IDLE_NS = 1000000L;
+    private static final long MAX_IDLE_NS = 100000000L;
+
+    private static volatile int level = INFO;
+    private static volatile boolean json = false;
+    private static volatile int maxRepeatsPerSecond = 10;
+
+    private static final AtomicReferenceArray<Record> buffer = new AtomicReferenceArray<Record>(BUFFER_SIZE);
+    private static final AtomicLong head = new AtomicLong();
+    private static volatile long tail = 0;
+    private static final AtomicLong droppedCount = new AtomicLong();
+    private static final Writer writer = new Writer(System.out);
+
+    static {
+        writer.start();
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Sets the lowest level that is written, one of DEBUG, INFO, WARN, ERROR
+     * or OFF.
+     */
+    public static void setLevel(int newLevel) {
+        level = newLevel;
+    }
+
+    public static void setLevel(String levelName) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(levelName) == true) {
+                setLevel(i);
+                return;
+            }
+        }
+        if ("OFF".equalsIgnoreCase(levelName) == true) {
+            setLevel(OFF);
+            return;
+        }
+        warn(Log.class, "Unknown log level: " + levelName);
+    }
+
+    /**
+     * Writes each record as a line of JSON instead of plain text.
+     */
+    public static void setJson(boolean enabled) {
+        json = enabled;
+    }
+
+    /**
+     * Sets how many times per second the same message from the same class
+     * is written before the repeats are suppressed. Zero turns the limit off.
+     */
+    public static void setMaxRepeatsPerSecond(int maxRepeats) {
+        maxRepeatsPerSecond = maxRepeats;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level <= DEBUG;
+    }
+
+    public static boolean isEnabled(int messageLevel) {
+        return level <= messageLevel;
+    }
+
+    public static void debug(Class<?> c, String message) {
+        if (level <= DEBUG) {
+            add(DEBUG, c, message, null);
+        }
+    }
+
+    public static void debug(Class<?> c, String format, Object... args) {
+        if (level <= DEBUG) {
+            add(DEBUG, c, String.format(format, args), null);
+        }
+    }
+
+    public static void info(Class<?> c, String message) {
+        if (level <= INFO) {
+            add(INFO, c, message, null);
+        }
+    }
+
+    public static void info(Class<?> c, String format, Object... args) {
+        if (level <= INFO) {
+            add(INFO, c, String.format(format, args), null);
+        }
+    }
+
+    public static void warn(Class<?> c, String message) {
+        if (level <= WARN) {
+            add(WARN, c, message, null);
+        }
+    }
+
+    public static void warn(Class<?> c, String format, Object... args) {
+        if (level <= WARN) {
+            add(WARN, c, String.format(format, args), null);
+        }
+    }
+
+    public static void error(Class<?> c, String message) {
+        if (level <= ERROR) {
+            add(ERROR, c, message, null);
+        }
+    }
+
+    public static void error(Class<?> c, Throwable t) {
+        if (level <= ERROR) {
+            add(ERROR, c, t.getMessage(), t);
+        }
+    }
+
+    public static void error(Class<?> c, String message, Throwable t) {
+        if (level <= ERROR) {
+            add(ERROR, c, message, t);
+        }
+    }
+
+    private static void add(int messageLevel, Class<?> c, String message, Throwable t) {
+
+        // claim the next slot, unless the writer has fallen a whole buffer
+        // behind in which case the record is dropped
+        long sequence;
+        while (true) {
+            sequence = head.get();
+            if (sequence - tail >= BUFFER_SIZE) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            if (head.compareAndSet(sequence, sequence + 1) == true) {
+                break;
+            }
+        }
+
+        Record record = new Record(System.currentTimeMillis(), messageLevel, c.getSimpleName(), Thread.currentThread().getName(), message, t);
+        buffer.set((int) (sequence & (BUFFER_SIZE - 1)), record);
+    }
+
+    /**
+     * Waits up to the given time for the records logged so far to be
+     * written. Used at shutdown.
+     */
+    public static void flush(long timeoutMs) {
+        long target = head.get();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        // the writer may be in a long wait while idle
+        LockSupport.unpark(writer);
+        while (tail < target && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(1000000L);
+        }
+        writer.out.flush();
+    }
+
+    private static class Record {
+        private long timeMs;
+        private int level;
+        private String logger;
+        private String thread;
+        private String message;
+        private Throwable throwable;
+
+        public Record(long timeMs, int level, String logger, String thread, String message, Throwable throwable) {
+            this.timeMs = timeMs;
+            this.level = level;
+            this.logger = logger;
+            this.thread = thread;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
+    private static class RateWindow {
+        private long startMs;
+        private int count;
+    }
+
+    private static class Writer extends Thread {
+
+        private PrintStream out;
+
+        // only used by the writer thread, so none of these need locking
+        private SimpleDateFormat secondFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        private long cachedSecond = -1;
+        private String cachedSecondText;
+        private HashMap<String, RateWindow> rateWindows = new HashMap<String, RateWindow>();
+        private long reportedDroppedCount;
+        private StringBuilder line = new StringBuilder(256);
+
+        public Writer(PrintStream out) {
+            super("Log");
+            this.out = out;
+            setDaemon(true);
+        }
+
+        public void run() {
+            long idleNs = MIN_IDLE_NS;
+            boolean written = false;
+            while (true) {
+                long sequence = tail;
+                int index = (int) (sequence & (BUFFER_SIZE - 1));
+                Record record = buffer.get(index);
+
+                // either nothing has been logged or the slot was claimed
+                // but not yet filled in, so wait a moment. the wait grows
+                // while nothing is logged so an idle writer barely wakes up,
+                // and the output is only flushed after something was written.
+                if (record == null) {
+                    reportDropped();
+                    if (written == true) {
+                        out.flush();
+                        written = false;
+                    }
+                    LockSupport.parkNanos(idleNs);
+                    idleNs = Math.min(idleNs * 2, MAX_IDLE_NS);
+                    continue;
+                }
+
+                buffer.set(index, null);
+                tail = sequence + 1;
+                idleNs = MIN_IDLE_NS;
+                written = true;
+
+                try {
+                    write(record);
+                } catch (Exception e) {
+                    // there's nowhere to report a failure to log
+                }
+            }
+        }
+
+        private void reportDropped() {
+            long dropped = droppedCount.get();
+            if (dropped > reportedDroppedCount) {
+                writeLine(new Record(System.currentTimeMillis(), WARN, "Log", getName(), (dropped - reportedDroppedCount) + " messages dropped, log buffer full", null));
+                reportedDroppedCount = dropped;
+                out.flush();
+            }
+        }
+
+        private void write(Record record) {
+            if (isRateLimited(record) == true) {
+                return;
+            }
+            writeLine(record);
+            if (record.throwable != null) {
+                for (StackTraceElement nextLine : record.throwable.getStackTrace()) {
+                    writeLine(new Record(record.timeMs, record.level, record.logger, record.thread, nextLine.toString(), null));
+                }
+            }
+        }
+
+        private boolean isRateLimited(Record record) {
+            int maxRepeats = maxRepeatsPerSecond;
+            if (maxRepeats <= 0 || record.throwable != null) {
+                return false;
+            }
+
+            String key = record.logger + " " + record.message;
+            RateWindow window = rateWindows.get(key);
+            if (window == null) {
+                flushRateWindows(record.timeMs);
+                window = new RateWindow();
+                window.startMs = record.timeMs;
+                rateWindows.put(key, window);
+            }
+
+            // at the start of a new window report how many were suppressed
+            // in the last one
+            if (record.timeMs - window.startMs >= RATE_WINDOW_MS) {
+                if (window.count > maxRepeats) {
+                    writeLine(new Record(record.timeMs, record.level, record.logger, record.thread,
+                            "(suppressed " + (window.count - maxRepeats) + " repeats) " + record.message, null));
+                }
+                window.startMs = record.timeMs;
+                window.count = 0;
+            }
+
+            window.count++;
+            return window.count > maxRepeats;
+        }
+
+        /**
+         * Forgets the windows that have ended so the table doesn't grow with
+         * every distinct message.
+         */
+        private void flushRateWindows(long nowMs) {
+            if (rateWindows.size() < 1024) {
+                return;
+            }
+            Iterator<Map.Entry<String, RateWindow>> i = rateWindows.entrySet().iterator();
+            while (i.hasNext() == true) {
+                Map.Entry<String, RateWindow> entry = i.next();
+                if (nowMs - entry.getValue().startMs >= RATE_WINDOW_MS) {
+                    i.remove();
+                }
+            }
+        }
+
+        private String formatTime(long timeMs) {
+
+            // the date and time only change once a second, so only the
+            // milliseconds are formatted for each record
+            long second = timeMs / 1000;
+            if (second != cachedSecond) {
+                cachedSecond = second;
+                cachedSecondText = secondFormatter.format(new Date(second * 1000));
+            }
+            long ms = timeMs % 1000;
+            return cachedSecondText + (ms < 10 ? ".00" : (ms < 100 ? ".0" : ".")) + ms;
+        }
+
+        private void writeLine(Record record) {
+            line.setLength(0);
+            if (json == true) {
+                line.append("{\"time\":\"").append(formatTime(record.timeMs));
+                line.append("\",\"level\":\"").append(LEVEL_NAMES[record.level]);
+                line.append("\",\"logger\":\"").append(record.logger);
+                line.append("\",\"thread\":\"");
+                appendEscaped(record.thread);
+                line.append("\",\"message\":\"");
+                appendEscaped(record.message);
+                line.append("\"}");
+            } else {
+                line.append(formatTime(record.timeMs));
+                line.append(' ').append(LEVEL_NAMES[record.level]);
+                line.append(' ').append(record.logger);
+                line.append(' ').append(record.message);
+            }
+            out.println(line);
+        }
+
+        private void appendEscaped(String value) {
+            if (value == null) {
+                return;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c < 0x20) {
+                    line.append(String.format("\\u%04x", (int) c));
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+    }
+}
@@ -26,10 +26,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.text.Format;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.UUID;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -42,53 +39,12 @@ import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 
-import com.hazelcast.core.IMap;
+import edu.kstate.datastore.storage.Storage;
 
 public class Misc
 {
-	public static boolean maxDataExceeded(long maxSizeB, IMap map) {
-		return (maxSizeB - map.getLocalMapStats().getOwnedEntryMemoryCost() < 0);
-	}
-
-	public static String formatDateForXml(Calendar c)
-	{
-		Format formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-		return formatter.format(c.getTime());
-	}
-
-	public static void logInfo(Class<?> c, String s)
-	{
-		Format formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-		System.out.println(formatter.format(new Date()) + " " + c.getSimpleName() + " " + s);
-	}
-	
-	public static void logException(Class<?> c, Exception e)
-	{
-		Format formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-		System.out.println(formatter.format(new Date()) + " " + c.getSimpleName() + " " + e.getMessage());
-		for(StackTraceElement nextLine : e.getStackTrace()) {
-			System.out.println(formatter.format(new Date()) + " " + c.getSimpleName() + " " + nextLine.toString());			
-		}
-	}
-	
-	public static String formatDateForXml(Date d)
-	{
-		Calendar c = Calendar.getInstance();
-		c.setTime(d);
-		return formatDateForXml(c);
-	}
-
-	public static String formatDateForXml(long ms)
-	{
-		Date d = new Date();
-		d.setTime(ms);
-		return formatDateForXml(d);
-	}
-
-	public static Date parseDateFromXml(String s) throws Exception
-	{
-		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-		return format.parse(s);
+	public static boolean maxDataExceeded(long maxSizeB, Storage storage) {
+		return (maxSizeB - storage.getValueSetStore().getLocalCostB() < 0);
 	}
 
 	public static String formatDouble(double d, int precision)
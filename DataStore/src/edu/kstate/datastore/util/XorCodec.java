@@ -0,0 +1,253 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.util;
+
+import java.util.Arrays;
+
+/**
+ * Compresses a value set's doubles by XORing each value with the one
+ * before it (as in Facebook's Gorilla), so neighbouring sites with close
+ * or equal values take a few bits each. Runs of zeros and NaNs, which are
+ * common in streamflow and precipitation data, are stored as a single
+ * run length.
+ *
+ * An encoded payload starts with the codec id and the number of values,
+ * and is padded so that its length is never a multiple of 8. A raw
+ * payload always is, which is how the two are told apart.
+ *
+ * After the header each value starts with a control code:
+ * 0 repeats the previous value, 10 stores the XOR within the previous
+ * window of meaningful bits, 110 stores a new window (5 bits of leading
+ * zeros and 6 bits of length - 1) then the XOR, and 111 starts a run of
+ * zeros (then a 0 bit) or NaNs (then a 1 bit), with the run length - 1 in
+ * 8 bits.
+ */
+public class XorCodec {
+
+    public static final byte CODEC_ID = 1;
+    private static final int HEADER_LENGTH = 5;
+    private static final int MAX_RUN_LENGTH = 256;
+    private static final long ZERO_BITS = Double.doubleToRawLongBits(0.0);
+    private static final long NAN_BITS = Double.doubleToRawLongBits(Double.NaN);
+
+    /**
+     * Returns true if a payload of the given length is encoded.
+     */
+    public static boolean isEncoded(int dataLength) {
+        return dataLength % 8 != 0;
+    }
+
+    public static int getValueCount(byte[] data) {
+        return ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+    }
+
+    public static byte[] encode(double[] values) {
+        BitWriter writer = new BitWriter(HEADER_LENGTH + values.length * 2 + 16);
+        writer.writeBits(CODEC_ID, 8);
+        writer.writeBits(values.length, 32);
+
+        long previous = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        int i = 0;
+        while (i < values.length) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+
+            // count the run of zeros or NaNs starting here
+            if (bits == ZERO_BITS || bits == NAN_BITS) {
+                int runLength = 1;
+                while (i + runLength < values.length && runLength < MAX_RUN_LENGTH
+                        && Double.doubleToRawLongBits(values[i + runLength]) == bits) {
+                    runLength++;
+                }
+                if (runLength > 1 || bits != previous) {
+                    writer.writeBits(7, 3);
+                    writer.writeBits(bits == ZERO_BITS ? 0 : 1, 1);
+                    writer.writeBits(runLength - 1, 8);
+                    previous = bits;
+                    i += runLength;
+                    continue;
+                }
+            }
+
+            long xor = bits ^ previous;
+            if (xor == 0) {
+                writer.writeBits(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    writer.writeBits(2, 2);
+                    writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int length = 64 - leading - trailing;
+                    writer.writeBits(6, 3);
+                    writer.writeBits(leading, 5);
+                    writer.writeBits(length - 1, 6);
+                    writer.writeBits(xor >>> trailing, length);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = bits;
+            i++;
+        }
+
+        byte[] data = writer.toByteArray();
+        if (isEncoded(data.length) == false) {
+            data = Arrays.copyOf(data, data.length + 1);
+        }
+        return data;
+    }
+
+    public static double[] decode(byte[] data) {
+        double[] values = new double[getValueCount(data)];
+        BitReader reader = new BitReader(data, HEADER_LENGTH);
+
+        long previous = 0;
+        int previousLeading = 0;
+        int previousTrailing = 0;
+        int i = 0;
+        while (i < values.length) {
+            if (reader.readBit() == 0) {
+                values[i++] = Double.longBitsToDouble(previous);
+                continue;
+            }
+            if (reader.readBit() == 0) {
+                int length = 64 - previousLeading - previousTrailing;
+                previous ^= reader.readBits(length) << previousTrailing;
+                values[i++] = Double.longBitsToDouble(previous);
+                continue;
+            }
+            if (reader.readBit() == 0) {
+                previousLeading = (int) reader.readBits(5);
+                int length = (int) reader.readBits(6) + 1;
+                previousTrailing = 64 - previousLeading - length;
+                previous ^= reader.readBits(length) << previousTrailing;
+                values[i++] = Double.longBitsToDouble(previous);
+                continue;
+            }
+
+            // a run of zeros or NaNs
+            previous = reader.readBit() == 0 ? ZERO_BITS : NAN_BITS;
+            int runLength = (int) reader.readBits(8) + 1;
+            Arrays.fill(values, i, i + runLength, Double.longBitsToDouble(previous));
+            i += runLength;
+        }
+        return values;
+    }
+
+    private static class BitWriter {
+        private byte[] buffer;
+        private int length;
+        private long pending;
+        private int pendingCount;
+
+        public BitWriter(int initialLength) {
+            this.buffer = new byte[initialLength];
+        }
+
+        /**
+         * Writes the low count bits of the value, most significant first.
+         */
+        public void writeBits(long value, int count) {
+            if (count > 32) {
+                writeBits(value >>> 32, count - 32);
+                count = 32;
+            }
+            this.pending = (this.pending << count) | (value & ((1L << count) - 1));
+            this.pendingCount += count;
+            while (this.pendingCount >= 8) {
+                this.pendingCount -= 8;
+                writeByte((int) (this.pending >>> this.pendingCount));
+            }
+        }
+
+        private void writeByte(int b) {
+            if (this.length == this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            }
+            this.buffer[this.length++] = (byte) b;
+        }
+
+        public byte[] toByteArray() {
+            if (this.pendingCount > 0) {
+                writeByte((int) (this.pending << (8 - this.pendingCount)));
+                this.pendingCount = 0;
+            }
+            return Arrays.copyOf(this.buffer, this.length);
+        }
+    }
+
+    private static class BitReader {
+        private byte[] buffer;
+        private int bitPosition;
+
+        public BitReader(byte[] buffer, int byteOffset) {
+            this.buffer = buffer;
+            this.bitPosition = byteOffset * 8;
+        }
+
+        public int readBit() {
+            int bit = (this.buffer[this.bitPosition >> 3] >> (7 - (this.bitPosition & 7))) & 1;
+            this.bitPosition++;
+            return bit;
+        }
+
+        /**
+         * Reads up to 64 bits. Up to 56 come from a single 64 bit load.
+         */
+        public long readBits(int count) {
+            if (count > 56) {
+                long high = readBits(count - 32);
+                return (high << 32) | readBits(32);
+            }
+            long word = load(this.bitPosition >> 3);
+            long value = (word << (this.bitPosition & 7)) >>> (64 - count);
+            this.bitPosition += count;
+            return value;
+        }
+
+        /**
+         * Returns the 8 bytes from the given index as a big-endian long,
+         * with zeros past the end of the buffer.
+         */
+        private long load(int index) {
+            byte[] b = this.buffer;
+            if (index + 8 <= b.length) {
+                return ((long) b[index] << 56) | ((long) (b[index + 1] & 0xFF) << 48) | ((long) (b[index + 2] & 0xFF) << 40)
+                        | ((long) (b[index + 3] & 0xFF) << 32) | ((long) (b[index + 4] & 0xFF) << 24) | ((b[index + 5] & 0xFF) << 16)
+                        | ((b[index + 6] & 0xFF) << 8) | (b[index + 7] & 0xFF);
+            }
+            long word = 0;
+            for (int i = 0; i < 8; i++) {
+                word <<= 8;
+                if (index + i < b.length) {
+                    word |= b[index + i] & 0xFF;
+                }
+            }
+            return word;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import edu.kstate.datastore.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors that service adapters run their individual calls
+ * on. A platform executor is a pool with one thread for each call the
+ * service's limiter could allow, so extra calls queue until a thread is
+ * free. A virtual executor starts a virtual thread for each call, so
+ * thousands of calls blocked on the network cost little more than their
+ * stacks; it needs Java 21, older runtimes get a platform executor.
+ */
+public class CallExecutors {
+
+    /**
+     * Each call runs on a pooled platform thread.
+     */
+    public static final String PLATFORM = "platform";
+
+    /**
+     * Each call runs on its own virtual thread.
+     */
+    public static final String VIRTUAL = "virtual";
+
+    public static ExecutorService create(String mode, int poolSize) {
+        if (VIRTUAL.equals(mode) == true) {
+            ExecutorService executor = createVirtual();
+            if (executor != null) {
+                return executor;
+            }
+            Log.warn(CallExecutors.class, "Virtual threads need Java 21, using a pool of %d threads", poolSize);
+        }
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    private static ExecutorService createVirtual() {
+        // virtual threads need Java 21 but the build targets release 11,
+        // so the factory is looked up by name when the runtime has it
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.webservice;
+
+import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.util.Log;
+
+/**
+ * Stops calls to a web service after a run of consecutive failures. Once
+ * the circuit has been open for a while a single trial call is let through;
+ * if it succeeds the circuit closes again, otherwise it stays open for
+ * another period. This keeps a dead service from tying up threads and
+ * concurrency slots on calls that are bound to fail.
+ */
+public class CircuitBreaker {
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private String name;
+    private int failureThreshold;
+    private long openMs;
+    private int state = CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMs;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMs) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+    }
+
+    public synchronized boolean isOpen() {
+        return this.state == OPEN;
+    }
+
+    /**
+     * Returns true if a call may be made now. Every call that is allowed
+     * must be followed by recordSuccess or recordFailure.
+     */
+    public synchronized boolean allowRequest() {
+        if (this.state == CLOSED) {
+            return true;
+        }
+        if (this.state == OPEN && System.currentTimeMillis() - this.openedAtMs >= this.openMs) {
+            this.state = HALF_OPEN;
+            this.trialInFlight = false;
+        }
+        if (this.state == HALF_OPEN && this.trialInFlight == false) {
+            this.trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (this.state != CLOSED) {
+            Log.info(this.getClass(), "Closed circuit for " + this.name);
+        }
+        this.state = CLOSED;
+        this.consecutiveFailures = 0;
+        this.trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        this.consecutiveFailures++;
+        if (this.state == HALF_OPEN || (this.state == CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+            Log.info(this.getClass(), "Opened circuit for %s after %d failures", this.name, this.consecutiveFailures);
+            Statistics.getInstance().add("Web-CircuitOpen-Count", 1);
+            this.state = OPEN;
+            this.openedAtMs = System.currentTimeMillis();
+            this.trialInFlight = false;
+        }
+    }
+}
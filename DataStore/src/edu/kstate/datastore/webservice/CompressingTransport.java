@@ -0,0 +1,78 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the request bodies before another transport sends them. Only
+ * useful with services that accept compressed requests, which not all
+ * do, but the XML bodies (uploads especially) shrink to a fraction of
+ * their size. Small bodies are sent as they are.
+ */
+public class CompressingTransport implements HttpTransport {
+
+    // below this the gzip header and the time spent outweigh the saving
+    private static final int MIN_COMPRESS_B = 1024;
+
+    private HttpTransport transport;
+
+    public CompressingTransport(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public TransportResponse post(String url, Map<String, String> headers, byte[] request, long timeoutMs) throws IOException, InterruptedException {
+        if (request.length < MIN_COMPRESS_B) {
+            return this.transport.post(url, headers, request, timeoutMs);
+        }
+        Map<String, String> compressedHeaders = new LinkedHashMap<String, String>(headers);
+        compressedHeaders.put("Content-Encoding", "gzip");
+        return this.transport.post(url, compressedHeaders, compress(request), timeoutMs);
+    }
+
+    private static byte[] compress(byte[] request) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(request.length / 4 + 64);
+        OutputStream gzip = new FastGZIPOutputStream(compressed);
+        gzip.write(request);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * The XML compresses well even at the fastest level, and the uploads
+     * are large enough for the slower levels to cost more than they save.
+     */
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 8192);
+            this.def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
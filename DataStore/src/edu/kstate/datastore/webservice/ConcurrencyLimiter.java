@@ -0,0 +1,213 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.webservice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent calls to one web service and adapts the
+ * limit to how the service responds (additive increase, multiplicative
+ * decrease). The limit grows by about one call for each round of
+ * successful calls that complete within the latency threshold, and shrinks
+ * when calls fail or take much longer than the service's baseline, so fast
+ * services are driven as hard as they allow while slow ones are not
+ * overloaded.
+ * <p/>
+ * The baseline is the configured service time if one was given, otherwise
+ * it is the fastest call observed so far.
+ * <p/>
+ * Waiting calls park on a lock condition rather than a monitor, so calls
+ * running on virtual threads give up their carrier thread while they wait.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double ERROR_DECREASE_RATIO = 0.5;
+    private static final double LATENCY_DECREASE_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private String name;
+    private int minLimit;
+    private int maxLimit;
+    private long serviceTimeMs;
+    private double limit;
+    private int inFlight;
+    private long minLatencyMs = Long.MAX_VALUE;
+    private long lastDecreaseMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+
+    /**
+     * Creates a limiter that starts at the given limit (typically the
+     * service's maxRequests) and stays between minLimit and maxLimit. A
+     * service time of zero means the baseline latency is learned.
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long serviceTimeMs) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.serviceTimeMs = serviceTimeMs;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) this.limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return this.inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasCapacity() {
+        lock.lock();
+        try {
+            return this.inFlight < (int) this.limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until a call may be made.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (this.inFlight >= (int) this.limit) {
+                slotFreed.await();
+            }
+            this.inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the given time for a call to be allowed and returns
+     * whether it was.
+     */
+    public boolean tryAcquire(long timeoutMs) throws InterruptedException {
+        long remainingNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (this.inFlight >= (int) this.limit) {
+                if (remainingNs <= 0) {
+                    return false;
+                }
+                remainingNs = slotFreed.awaitNanos(remainingNs);
+            }
+            this.inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot from acquire when no call was made, without affecting
+     * the limit.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            this.inFlight--;
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports the outcome of a call made after acquire and frees its slot.
+     */
+    public void release(long latencyMs, boolean success) {
+        lock.lock();
+        try {
+
+            // only a limit that was actually reached says anything about
+            // whether the service can take more
+            boolean wasLimited = this.inFlight >= (int) this.limit;
+            this.inFlight--;
+
+            if (success == true) {
+                this.minLatencyMs = Math.min(this.minLatencyMs, latencyMs);
+            }
+
+            long baselineMs = this.serviceTimeMs > 0 ? this.serviceTimeMs : this.minLatencyMs;
+            long now = System.currentTimeMillis();
+
+            if (success == false) {
+                decrease(ERROR_DECREASE_RATIO, now, latencyMs);
+            } else if (baselineMs != Long.MAX_VALUE && latencyMs > LATENCY_TOLERANCE * Math.max(1, baselineMs)) {
+                decrease(LATENCY_DECREASE_RATIO, now, latencyMs);
+            } else if (wasLimited == true) {
+                this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+            }
+
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(double ratio, long now, long latencyMs) {
+
+        // the calls that were in flight together all see the same slow
+        // service, so only back off once per round trip
+        if (now - this.lastDecreaseMs < latencyMs) {
+            return;
+        }
+        this.lastDecreaseMs = now;
+        this.limit = Math.max(this.minLimit, this.limit * ratio);
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("%s:limit=%d:inFlight=%d", this.name, (int) this.limit, this.inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the requests on one shared HttpClient. Its connections are kept
+ * open and reused, and a service that speaks HTTP/2 multiplexes all the
+ * calls in flight to it over a single connection, so many concurrent calls
+ * share a few connections and the client's selector thread instead of
+ * each holding a socket of its own. The response body is handed to the
+ * caller as it arrives, so it can be parsed while it is still being
+ * received.
+ * <p/>
+ * Certificates are trusted as they are with the other transport, but host
+ * names are still checked, the client has no per-client switch for that.
+ */
+public class HttpClientTransport implements HttpTransport {
+
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+
+    private HttpClient client;
+
+    public HttpClientTransport() {
+
+        // the client only runs its own bookkeeping on the executor (the
+        // callers block on their responses), so a few threads are plenty
+        int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HttpClientTransport-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor);
+        try {
+            builder.sslContext(TrustModifier.getTrustingContext());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to relax host checking: " + e.getMessage(), e);
+        }
+        this.client = builder.build();
+    }
+
+    @Override
+    public TransportResponse post(String url, Map<String, String> headers, byte[] request, long timeoutMs) throws IOException, InterruptedException {
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                .header("Accept-Encoding", TransportResponse.ACCEPTED_ENCODINGS);
+        for (Map.Entry<String, String> nextHeader : headers.entrySet()) {
+            builder.header(nextHeader.getKey(), nextHeader.getValue());
+        }
+        if (timeoutMs > 0) {
+            builder.timeout(Duration.ofMillis(timeoutMs));
+        }
+
+        HttpResponse<InputStream> response = this.client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        // throw the error here, before reading a response that may not exist
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Http Error:" + response.statusCode());
+        }
+
+        return new TransportResponse(response.body(), response.headers().firstValue("Content-Encoding").orElse(null), request.length, null);
+    }
+}
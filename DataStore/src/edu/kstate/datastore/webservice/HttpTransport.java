@@ -0,0 +1,41 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Sends the HTTP requests of the service adapters. A transport only posts
+ * the request and opens the response, the caller reads the body from the
+ * response, typically straight into its parser, and closes it.
+ */
+public interface HttpTransport {
+
+    /**
+     * Posts the request with the given headers and returns the response
+     * once its status is known, or throws an IOException if the status was
+     * not 200. A timeout of zero waits as long as the service takes.
+     */
+    public TransportResponse post(String url, Map<String, String> headers, byte[] request, long timeoutMs) throws IOException, InterruptedException;
+}
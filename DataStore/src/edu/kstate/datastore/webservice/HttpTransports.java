@@ -0,0 +1,68 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+/**
+ * Creates the transport the service adapters send their requests with.
+ */
+public class HttpTransports {
+
+    /**
+     * Each request is sent on its own blocking HttpURLConnection.
+     */
+    public static final String URL_CONNECTION = "urlconnection";
+
+    /**
+     * The requests share the connections of one non-blocking HttpClient,
+     * using HTTP/2 where the service supports it.
+     */
+    public static final String HTTP_CLIENT = "httpclient";
+
+    private static final HttpTransport DEFAULT_TRANSPORT = new UrlConnectionTransport();
+
+    /**
+     * Responses are always accepted compressed, requests are only
+     * compressed if asked to since the service has to support it.
+     */
+    public static HttpTransport create(String name, boolean compressRequests) {
+        HttpTransport transport;
+        if (HTTP_CLIENT.equals(name) == true) {
+            transport = new HttpClientTransport();
+        } else if (URL_CONNECTION.equals(name) == true) {
+            transport = DEFAULT_TRANSPORT;
+        } else {
+            throw new IllegalArgumentException("Unknown http transport: " + name);
+        }
+        if (compressRequests == true) {
+            transport = new CompressingTransport(transport);
+        }
+        return transport;
+    }
+
+    /**
+     * Returns the transport used by the tools that don't choose one.
+     */
+    public static HttpTransport getDefault() {
+        return DEFAULT_TRANSPORT;
+    }
+}
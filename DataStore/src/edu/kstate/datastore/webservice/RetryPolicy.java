@@ -0,0 +1,72 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.webservice;
+
+import java.util.Random;
+
+/**
+ * Decides how many times a web service call is attempted, how long to wait
+ * between attempts and how long a whole fetch may take. The wait doubles
+ * after each failed attempt, up to a maximum, and half of it is random so
+ * that calls which failed together don't all retry at the same moment.
+ */
+public class RetryPolicy {
+
+    private int maxAttempts;
+    private long baseDelayMs;
+    private long maxDelayMs;
+    private long deadlineMs;
+    private Random random = new Random();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, long deadlineMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.deadlineMs = deadlineMs;
+    }
+
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * The time a single fetch (all of its calls and retries) may take.
+     */
+    public long getDeadlineMs() {
+        return this.deadlineMs;
+    }
+
+    /**
+     * Returns how long to wait after the given (zero based) failed attempt.
+     */
+    public long getBackoffMs(int attempt) {
+        long ceilingMs = Math.min(this.maxDelayMs, this.baseDelayMs << Math.min(attempt, 20));
+        return ceilingMs / 2 + (long) (this.random.nextDouble() * (ceilingMs / 2));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("attempts=%d:baseDelayMs=%d:maxDelayMs=%d:deadlineMs=%d", maxAttempts, baseDelayMs, maxDelayMs, deadlineMs);
+    }
+}
@@ -24,9 +24,19 @@ package edu.kstate.datastore.webservice;
 
 public interface ServiceAdapter {
 
+    /**
+     * The value reported for an element whose value could not be retrieved.
+     */
+    public static final double MISSING_VALUE = Double.NaN;
+
     public void start();
 
     public void stop();
 
+    /**
+     * Returns one value for each site, using MISSING_VALUE for the sites
+     * that could not be retrieved, or null if no values could be retrieved
+     * at all (for example because the service's circuit is open).
+     */
     public double[] getValues(final String variableName, final String[] siteNames, final String timeStamp);
 }
@@ -0,0 +1,115 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.webservice;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Wraps every call a service adapter makes to its web service with the
+ * service's concurrency limiter, circuit breaker and retry policy. A call
+ * only holds a concurrency slot while it is talking to the service, not
+ * while it waits to retry, so failures free capacity for other calls
+ * straight away.
+ */
+public class ServiceGuard {
+
+    private String name;
+    private ConcurrencyLimiter limiter;
+    private CircuitBreaker circuitBreaker;
+    private RetryPolicy retryPolicy;
+
+    public ServiceGuard(String name, ConcurrencyLimiter limiter, CircuitBreaker circuitBreaker, RetryPolicy retryPolicy) {
+        this.name = name;
+        this.limiter = limiter;
+        this.circuitBreaker = circuitBreaker;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return this.limiter;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
+    /**
+     * Returns the deadline (in epoch milliseconds) of a fetch starting now.
+     */
+    public long createDeadline() {
+        return System.currentTimeMillis() + this.retryPolicy.getDeadlineMs();
+    }
+
+    /**
+     * Makes the call, retrying it as the retry policy allows, and returns
+     * its result. Throws ServiceUnavailableException if the call did not
+     * succeed before the deadline or the service's circuit is open.
+     */
+    public <T> T call(Callable<T> call, long deadlineMs) throws ServiceUnavailableException, InterruptedException {
+
+        Exception lastException = null;
+        for (int attempt = 0; attempt < this.retryPolicy.getMaxAttempts(); attempt++) {
+
+            long remainingMs = deadlineMs - System.currentTimeMillis();
+            if (remainingMs <= 0) {
+                break;
+            }
+            if (this.limiter.tryAcquire(remainingMs) == false) {
+                break;
+            }
+            if (this.circuitBreaker.allowRequest() == false) {
+                this.limiter.cancel();
+                throw new ServiceUnavailableException("Circuit open for " + this.name);
+            }
+
+            long startMs = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                T result = call.call();
+                success = true;
+                return result;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                lastException = e;
+            } finally {
+                this.limiter.release(System.currentTimeMillis() - startMs, success);
+                if (success == true) {
+                    this.circuitBreaker.recordSuccess();
+                } else {
+                    this.circuitBreaker.recordFailure();
+                }
+            }
+
+            // don't wait for a retry that would start after the deadline
+            long backoffMs = this.retryPolicy.getBackoffMs(attempt);
+            if (System.currentTimeMillis() + backoffMs >= deadlineMs) {
+                break;
+            }
+            Thread.sleep(backoffMs);
+        }
+
+        throw new ServiceUnavailableException("Call to " + this.name + " failed", lastException);
+    }
+}
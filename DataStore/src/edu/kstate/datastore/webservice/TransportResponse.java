@@ -0,0 +1,176 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The response to a request sent by a transport. The body is decoded as it
+ * is read if the service compressed it, and the bytes are counted as they
+ * came over the wire, so the statistics show what was actually sent.
+ */
+public class TransportResponse implements Closeable {
+
+    /**
+     * The encodings a transport tells services it can decode.
+     */
+    public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private CountingInputStream wireStream;
+    private InputStream body;
+    private long sentB;
+    private Closeable connection;
+
+    /**
+     * The connection is closed along with the response, it may be null if
+     * closing the stream is enough.
+     */
+    public TransportResponse(InputStream wireStream, String contentEncoding, long sentB, Closeable connection) throws IOException {
+        this.wireStream = new CountingInputStream(wireStream);
+        this.sentB = sentB;
+        this.connection = connection;
+        this.body = decode(this.wireStream, contentEncoding);
+    }
+
+    private static InputStream decode(InputStream stream, String contentEncoding) throws IOException {
+        if (contentEncoding == null || contentEncoding.length() == 0 || contentEncoding.equalsIgnoreCase("identity") == true) {
+            return stream;
+        }
+        if (contentEncoding.equalsIgnoreCase("gzip") == true || contentEncoding.equalsIgnoreCase("x-gzip") == true) {
+            return new GZIPInputStream(stream, 8192);
+        }
+        if (contentEncoding.equalsIgnoreCase("deflate") == true) {
+            return inflate(stream);
+        }
+        throw new IOException("Unsupported content encoding: " + contentEncoding);
+    }
+
+    private static InputStream inflate(InputStream stream) throws IOException {
+
+        // deflate should be zlib wrapped, but some servers send the raw
+        // deflate data, which is told apart by the zlib header's checksum
+        PushbackInputStream pushbackStream = new PushbackInputStream(stream, 2);
+        int first = pushbackStream.read();
+        int second = pushbackStream.read();
+        if (second != -1) {
+            pushbackStream.unread(second);
+        }
+        if (first != -1) {
+            pushbackStream.unread(first);
+        }
+        boolean zlibWrapped = first != -1 && second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        return new InflaterInputStream(pushbackStream, new Inflater(zlibWrapped == false));
+    }
+
+    /**
+     * Returns the (decoded) response body.
+     */
+    public InputStream getBody() {
+        return this.body;
+    }
+
+    /**
+     * Returns the number of bytes of the request body that were sent.
+     */
+    public long getSentB() {
+        return this.sentB;
+    }
+
+    /**
+     * Returns the number of bytes of the response body received so far, as
+     * they came over the wire.
+     */
+    public long getReceivedB() {
+        return this.wireStream.count;
+    }
+
+    /**
+     * Reads the rest of the body into a byte array.
+     */
+    public byte[] readFully() throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = this.body.read(buffer)) != -1) {
+            bodyBytes.write(buffer, 0, len);
+        }
+        return bodyBytes.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.body.close();
+        } catch (IOException e) {
+            // we don't care if we fail to close it
+        }
+        try {
+            if (this.connection != null) {
+                this.connection.close();
+            }
+        } catch (IOException e) {
+            // or the connection
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -34,6 +34,7 @@ public class TrustModifier {
     private static final TrustingHostnameVerifier
             TRUSTING_HOSTNAME_VERIFIER = new TrustingHostnameVerifier();
     private static SSLSocketFactory factory;
+    private static SSLContext context;
 
     /** Call this with any HttpURLConnection, and it will
      modify the trust settings if it is an HTTPS connection. */
@@ -53,11 +54,22 @@ public class TrustModifier {
             throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
 
         if (factory == null) {
+            factory = getTrustingContext().getSocketFactory();
+        }
+        return factory;
+    }
+
+    /** Returns a context that trusts any certificate, for clients that
+     take a context instead of a socket factory. */
+    public static synchronized SSLContext getTrustingContext()
+            throws NoSuchAlgorithmException, KeyManagementException {
+
+        if (context == null) {
             SSLContext ctx = SSLContext.getInstance("TLS");
             ctx.init(null, new TrustManager[]{ new AlwaysTrustManager() }, null);
-            factory = ctx.getSocketFactory();
+            context = ctx;
         }
-        return factory;
+        return context;
     }
 
     private static final class TrustingHostnameVerifier implements HostnameVerifier {
@@ -0,0 +1,117 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import edu.kstate.datastore.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends each request on its own HttpURLConnection, which is closed after
+ * the response has been read. The calling thread blocks for the whole
+ * exchange.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    @Override
+    public TransportResponse post(String url, Map<String, String> headers, byte[] request, long timeoutMs) throws IOException {
+
+        // create a connection to the URL
+        URL connectUrl = new URL(url);
+        final HttpURLConnection httpURLConnection = (HttpURLConnection) connectUrl.openConnection();
+
+        boolean opened = false;
+        try {
+
+            // configure the request
+            httpURLConnection.setDoInput(true);
+            httpURLConnection.setDoOutput(true);
+            httpURLConnection.setUseCaches(false);
+            httpURLConnection.setRequestMethod("POST");
+            if (timeoutMs > 0) {
+                httpURLConnection.setConnectTimeout((int) timeoutMs);
+                httpURLConnection.setReadTimeout((int) timeoutMs);
+            }
+
+            // the request is streamed to the service as it is written
+            // instead of being buffered by the connection first
+            httpURLConnection.setFixedLengthStreamingMode(request.length);
+
+            // set the request properties
+            httpURLConnection.setRequestProperty("Keep-Alive", "close");
+            httpURLConnection.setRequestProperty("Connection", "close");
+            httpURLConnection.setRequestProperty("Accept-Encoding", TransportResponse.ACCEPTED_ENCODINGS);
+            for (Map.Entry<String, String> nextHeader : headers.entrySet()) {
+                httpURLConnection.setRequestProperty(nextHeader.getKey(), nextHeader.getValue());
+            }
+
+            try {
+                TrustModifier.relaxHostChecking(httpURLConnection);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to relax host checking: " + e.getMessage());
+            }
+
+            // send the request
+            OutputStream connectionOutputStream = httpURLConnection.getOutputStream();
+            connectionOutputStream.write(request);
+            connectionOutputStream.close();
+
+            // get the response code from the server
+            int rc = httpURLConnection.getResponseCode();
+
+            if (rc == 301) {
+                Map<String, List<String>> fields = httpURLConnection.getHeaderFields();
+                for (String nextHeader : fields.keySet()) {
+                    Log.warn(UrlConnectionTransport.class, nextHeader + " = " + fields.get(nextHeader));
+                }
+            }
+
+            // throw the error here, before reading a response that may not exist
+            if (rc != 200) {
+                throw new IOException("Http Error:" + rc);
+            }
+
+            TransportResponse response = new TransportResponse(httpURLConnection.getInputStream(), httpURLConnection.getContentEncoding(),
+                    request.length, new Closeable() {
+                @Override
+                public void close() {
+                    httpURLConnection.disconnect();
+                }
+            });
+            opened = true;
+            return response;
+
+        } finally {
+            if (opened == false) {
+                httpURLConnection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.webservice.simplerest;
+
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.webservice.HttpTransport;
+import edu.kstate.datastore.webservice.ServiceAdapter;
+import edu.kstate.datastore.webservice.ServiceGuard;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Adapter for the simple REST service used in the performance study. All
+ * the values of a value set are retrieved in a single call.
+ */
+public class SimpleRest implements ServiceAdapter {
+
+    private String url;
+    private ServiceGuard serviceGuard;
+    private HttpTransport transport;
+
+    public SimpleRest(String url, ServiceGuard serviceGuard, HttpTransport transport) {
+        this.url = url;
+        this.serviceGuard = serviceGuard;
+        this.transport = transport;
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public double[] getValues(final String variableName, final String[] siteNames, final String timeStamp) {
+        try {
+            // each attempt only gets the time left before the deadline, so a
+            // service that hangs can't hold the call (and its slot) past it
+            final long deadlineMs = serviceGuard.createDeadline();
+            double[] values = serviceGuard.call(new Callable<double[]>() {
+                @Override
+                public double[] call() throws Exception {
+                    long remainingMs = Math.max(1, deadlineMs - System.currentTimeMillis());
+                    return SimpleRestService.getValues(transport, url, variableName, siteNames, timeStamp, remainingMs);
+                }
+            }, deadlineMs);
+
+            // the service should return a value for every site, anything
+            // less can't be matched up with the sites so none are used
+            if (values.length != siteNames.length) {
+                Log.warn(this.getClass(), "Expected %d values but received %d", siteNames.length, values.length);
+                return null;
+            }
+            return values;
+        } catch (Exception e) {
+            Log.warn(this.getClass(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -24,132 +24,91 @@ package edu.kstate.datastore.webservice.simplerest;
 
 import edu.kstate.datastore.Statistics;
 import edu.kstate.datastore.data.ValueSetEntry;
-import edu.kstate.datastore.util.Misc;
+import edu.kstate.datastore.trace.Tracer;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.webservice.HttpTransport;
+import edu.kstate.datastore.webservice.TransportResponse;
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 // http://localhost/ObservationsService.php
 // http://10.5.0.50/ObservationsService.php
 
 public class SimpleRestService {
 
-    public static void setValuesSync(HashMap<String, String[]> elementIds, String url, ArrayList<ValueSetEntry> entries) {
+    public static void setValuesSync(HttpTransport transport, HashMap<String, String[]> elementIds, String url, ArrayList<ValueSetEntry> entries) {
         try {
-            byte[] request = SimpleXmlWriter.writeRequestForSetValues(elementIds, entries);
-            callWebService(url, request, "SetValues");
+            setValues(transport, elementIds, url, entries);
         } catch (Exception e) {
-            Misc.logException(SimpleRestService.class, e);
+            Log.error(SimpleRestService.class, e);
         }
     }
 
-    public static double[] getValuesSync(String url, String quantityId, String elementSetIds[], String timeStamp) {
+    /**
+     * Sends the values to the web service or throws an exception if there
+     * was an error, so the caller knows whether they were delivered.
+     */
+    public static void setValues(HttpTransport transport, HashMap<String, String[]> elementIds, String url, ArrayList<ValueSetEntry> entries) throws Exception {
+        byte[] request = SimpleXmlWriter.writeRequestForSetValues(elementIds, entries);
+        callWebService(transport, url, request, "SetValues", 0);
+    }
+
+    public static double[] getValuesSync(HttpTransport transport, String url, String quantityId, String elementSetIds[], String timeStamp, long timeoutMs) {
         try {
-            byte[] request = SimpleXmlWriter.writeRequestForGetValues(quantityId, elementSetIds,
-                    timeStamp);
-            SimpleXmlHandler xmlHandler = callWebService(url, request, "GetValues");
-            return xmlHandler.getValues();
+            return getValues(transport, url, quantityId, elementSetIds, timeStamp, timeoutMs);
         } catch (Exception e) {
-            Misc.logException(SimpleRestService.class, e);
+            Log.error(SimpleRestService.class, e);
             return null;
         }
     }
 
-    private static SimpleXmlHandler callWebService(String url, byte[] request, String serviceName) {
-
-        SimpleXmlHandler xmlHandler = null;
-        HttpURLConnection httpURLConnection = null;
-        InputStream connectionInputStream = null;
-        OutputStream connectionOutputStream = null;
-
-        try {
-
-            // create a connection to the URL
-            URL connectUrl = new URL(url);
-            httpURLConnection = (HttpURLConnection) connectUrl.openConnection();
-
-            // configure the request
-            httpURLConnection.setDoInput(true);
-            httpURLConnection.setDoOutput(true);
-            httpURLConnection.setUseCaches(false);
-            httpURLConnection.setRequestMethod("POST");
-
-            // enable chunked streaming mode so that the the data is streamed to
-            // the web service instead of loaded into memory and sent at once
-            httpURLConnection.setChunkedStreamingMode(16000);
-
-            // set the request properties
-            httpURLConnection.setRequestProperty("Keep-Alive", "close");
-            httpURLConnection.setRequestProperty("Connection", "close");
-            httpURLConnection.setRequestProperty("User-Agent", "Profile/MIDP-2.0 Configuration/CLDC-1.0");
-            httpURLConnection.setRequestProperty("Content-Language", "en-CA");
-            httpURLConnection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
-            httpURLConnection.setRequestProperty("SOAPAction", "http://tempuri.org/" + serviceName);
-            httpURLConnection.setRequestProperty("Content-Length", String.valueOf(request.length));
-
-            // open an output stream
-            connectionOutputStream = httpURLConnection.getOutputStream();
+    /**
+     * Returns the values from the web service or throws an exception if
+     * there was an error, including the service not answering within the
+     * timeout.
+     */
+    public static double[] getValues(HttpTransport transport, String url, String quantityId, String elementSetIds[], String timeStamp, long timeoutMs) throws Exception {
+        byte[] request = SimpleXmlWriter.writeRequestForGetValues(quantityId, elementSetIds,
+                timeStamp);
+        SimpleXmlHandler xmlHandler = callWebService(transport, url, request, "GetValues", timeoutMs);
+        return xmlHandler.getValues();
+    }
 
-            // measure how long it takes to send the data
-            long startSendMs = System.currentTimeMillis();
+    /**
+     * A timeout of zero waits as long as the service takes.
+     */
+    private static SimpleXmlHandler callWebService(HttpTransport transport, String url, byte[] request, String serviceName, long timeoutMs) throws Exception {
 
-            // create a stream so we can stream the request to the server
-            ByteArrayInputStream requestStream = new ByteArrayInputStream(request);
+        // set the request properties
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("User-Agent", "Profile/MIDP-2.0 Configuration/CLDC-1.0");
+        headers.put("Content-Language", "en-CA");
+        headers.put("Content-Type", "text/xml; charset=utf-8");
+        headers.put("SOAPAction", "http://tempuri.org/" + serviceName);
 
-            // stream the request to the server
-            int len;
-            byte[] buffer = new byte[16000];
-            while (-1 != (len = requestStream.read(buffer))) {
-                connectionOutputStream.write(buffer, 0, len);
-                connectionOutputStream.flush();
-            }
-            connectionOutputStream.flush();
+        // measure how long it takes to send the data
+        long startSendMs = System.currentTimeMillis();
 
-            // get the response code from the server
-            int rc = httpURLConnection.getResponseCode();
+        TransportResponse response = transport.post(url, headers, request, timeoutMs);
+        try {
 
             // measure how long it takes to send the data
             long stopSendMs = System.currentTimeMillis();
 
-            // throw the error here so that we get the error message
-            if (rc != 200) {
-                throw new IOException("Http Error:" + rc);
-            }
-
-            // measure how long it takes to receive the response
+            // the response is parsed as it is received, so receiving and
+            // parsing it are measured together
             long startReceiveMs = System.currentTimeMillis();
-
-            // get the input stream
-            connectionInputStream = httpURLConnection.getInputStream();
-
-            // write the response to a byte array
-            ByteArrayOutputStream responseStream = new ByteArrayOutputStream(8092);
-            while (-1 != (len = connectionInputStream.read(buffer)))
-                responseStream.write(buffer, 0, len);
-            byte[] response = responseStream.toByteArray();
-            responseStream.close();
-
-            //String s0 = new String(request);
-            //String s1 = new String(response);
-
-            //Misc.logInfo(SimpleRestService.class, s1);
-
-            // measure how long it takes to receive the response
-            long stopReceiveMs = System.currentTimeMillis();
-
-            // measure how long it takes to parse the response
-            long startParseMs = System.currentTimeMillis();
+            long startParseNs = Tracer.now();
 
             // create the handler and input source
-            xmlHandler = new SimpleXmlHandler();
-            InputSource source = new InputSource();
-            source.setByteStream(new ByteArrayInputStream(response));
+            SimpleXmlHandler xmlHandler = new SimpleXmlHandler();
+            InputSource source = new InputSource(response.getBody());
 
             // create the reader and begin parsing
             XMLReader reader = XMLReaderFactory.createXMLReader();
@@ -157,18 +116,19 @@ public class SimpleRestService {
             reader.setErrorHandler(xmlHandler);
             reader.parse(source);
 
-            // measure how long it takes to parse the response
-            long stopParseMs = System.currentTimeMillis();
+            // measure how long it takes to receive and parse the response
+            long stopReceiveMs = System.currentTimeMillis();
+            Tracer.getInstance().record("parse", Tracer.getInstance().getCurrentTraceId(), startParseNs);
 
             // record the number of bytes in the web service request
-            Statistics.getInstance().add(String.format("Web-%s-DataSent-Byte", serviceName), request.length);
+            Statistics.getInstance().add(String.format("Web-%s-DataSent-Byte", serviceName), response.getSentB());
 
             // record the number of bytes in the web service response
-            Statistics.getInstance().add(String.format("Web-%s-DataReceived-Byte", serviceName), response.length);
+            Statistics.getInstance().add(String.format("Web-%s-DataReceived-Byte", serviceName), response.getReceivedB());
 
             // record the request and response sum
             Statistics.getInstance().add(String.format("Web-%s-Data-Byte", serviceName),
-                    request.length + response.length);
+                    response.getSentB() + response.getReceivedB());
 
             Statistics.getInstance().add(String.format("Web-%s-TimeSend-MS", serviceName), stopSendMs - startSendMs);
 
@@ -177,29 +137,15 @@ public class SimpleRestService {
 
             Statistics.getInstance().add(String.format("Web-%s-Time-MS", serviceName), stopReceiveMs - startSendMs);
 
-            Statistics.getInstance().add(String.format("Web-%s-TimeParse-MS", serviceName), stopParseMs - startParseMs);
+            Statistics.getInstance().add(String.format("Web-%s-TimeParse-MS", serviceName), stopReceiveMs - startReceiveMs);
 
             Statistics.getInstance().add(String.format("Web-%s-TimeService-MS", serviceName),
                     xmlHandler.getServiceTime());
 
-        } catch (Exception e) {
-            Misc.logException(SimpleRestService.class, e);
-        } finally {
+            return xmlHandler;
 
-            // close the streams
-            try {
-                if (connectionInputStream != null)
-                    connectionInputStream.close();
-                if (connectionOutputStream != null)
-                    connectionOutputStream.close();
-                if (httpURLConnection != null)
-                    httpURLConnection.disconnect();
-
-            } catch (IOException e) {
-                // we don't care if we fail to close these
-            }
+        } finally {
+            response.close();
         }
-
-        return xmlHandler;
     }
 }
@@ -22,6 +22,13 @@
 
 package edu.kstate.datastore.webservice.wateroneflow;
 
+import edu.kstate.datastore.webservice.CallExecutors;
+import edu.kstate.datastore.webservice.CircuitBreaker;
+import edu.kstate.datastore.webservice.ConcurrencyLimiter;
+import edu.kstate.datastore.webservice.HttpTransports;
+import edu.kstate.datastore.webservice.RetryPolicy;
+import edu.kstate.datastore.webservice.ServiceGuard;
+
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -61,7 +68,8 @@ public class TestApp {
     }
 
     private static void testGetValues(String url, String variableName, String[] siteNames, String apiVersion, Calendar beginDate, Calendar endDate, int increment) {
-        WaterOneFlow waterOneFlow = new WaterOneFlow(url, apiVersion);
+        ServiceGuard serviceGuard = new ServiceGuard(url, new ConcurrencyLimiter(url, 2, 1, 25, 0), new CircuitBreaker(url, 10, 30000), new RetryPolicy(4, 200, 5000, 60000));
+        WaterOneFlow waterOneFlow = new WaterOneFlow(url, apiVersion, serviceGuard, CallExecutors.PLATFORM, HttpTransports.getDefault());
         waterOneFlow.start();
         while (beginDate.getTime().compareTo(endDate.getTime()) < 0) {
             String date = formatDateForXml(beginDate.getTime());
@@ -72,13 +80,21 @@ public class TestApp {
     }
 
     private static void testGetSites(String url, String apiVersion) {
-        String xml = WebServiceApi.getSites(url, apiVersion);
-        System.out.println(xml);
+        try {
+            String xml = WebServiceApi.getSites(url, apiVersion);
+            System.out.println(xml);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
     }
 
     private static void testGetSite(String url, String siteName, String apiVersion) {
-        String xml = WebServiceApi.getSite(url, siteName, apiVersion);
-        System.out.println(xml);
+        try {
+            String xml = WebServiceApi.getSite(url, siteName, apiVersion);
+            System.out.println(xml);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
     }
 
     private static String formatDateForXml(Date date) {
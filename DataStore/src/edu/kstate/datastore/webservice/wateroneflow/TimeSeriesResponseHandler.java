@@ -22,6 +22,7 @@
 
 package edu.kstate.datastore.webservice.wateroneflow;
 
+import edu.kstate.datastore.webservice.ServiceAdapter;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -32,6 +33,9 @@ public class TimeSeriesResponseHandler extends DefaultHandler {
 
     public TimeSeriesResponseHandler() {
         this.xpath = new StringBuilder();
+
+        // a response without a value means the site has no data for the time
+        this.value = ServiceAdapter.MISSING_VALUE;
     }
 
     public double getValue() {
@@ -20,131 +20,181 @@
 //  SOFTWARE.
 // -----------------------------------------------------------------------
 
+
 package edu.kstate.datastore.webservice.wateroneflow;
 
 import edu.kstate.datastore.Statistics;
+import edu.kstate.datastore.trace.Tracer;
+import edu.kstate.datastore.util.Log;
+import edu.kstate.datastore.webservice.CallExecutors;
+import edu.kstate.datastore.webservice.HttpTransport;
 import edu.kstate.datastore.webservice.ServiceAdapter;
+import edu.kstate.datastore.webservice.ServiceGuard;
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import java.io.ByteArrayInputStream;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 public class WaterOneFlow implements ServiceAdapter {
 
-    private ThreadPoolExecutor threadPool;
+    private ExecutorService executor;
+    private Semaphore callPermits;
     private String url;
     private String apiVersion;
-    private int activeCallCount;
-    double[] values;
-
-    public WaterOneFlow(String url, String apiVersion) {
+    private ServiceGuard serviceGuard;
+    private String executionMode;
+    private HttpTransport transport;
+
+    /**
+     * The execution mode is one of the CallExecutors modes and decides
+     * whether each site call gets a pooled or a virtual thread.
+     */
+    public WaterOneFlow(String url, String apiVersion, ServiceGuard serviceGuard, String executionMode, HttpTransport transport) {
         this.url = url;
         this.apiVersion = apiVersion;
+        this.serviceGuard = serviceGuard;
+        this.executionMode = executionMode;
+        this.transport = transport;
     }
 
     public void start() {
-        int poolSize = 25;
-        this.threadPool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        // the limiter decides how many site calls are in flight, so a pool
+        // only needs as many threads as the limiter could ever allow
+        int maxCalls = serviceGuard.getLimiter().getMaxLimit();
+        this.executor = CallExecutors.create(this.executionMode, maxCalls);
+
+        // with a thread per site call, the permits keep all but the calls
+        // the limiter could allow parked cheaply instead of piling up in
+        // the limiter. a pool never has more threads than permits.
+        this.callPermits = new Semaphore(maxCalls, true);
     }
 
     public void stop() {
-        threadPool.shutdown();
-    }
-
-    private synchronized void updateActiveCallCount(int value) {
-        this.activeCallCount += value;
+        executor.shutdown();
     }
 
     public double[] getValues(final String variableName, final String[] siteNames, final String timeStamp) {
 
         long startSendMs = System.currentTimeMillis();
+        final long deadlineMs = serviceGuard.createDeadline();
+
+        // several fetches may be using this adapter at the same time, so
+        // each call collects its values in its own array. sites that don't
+        // answer before the deadline are reported as missing.
+        final double[] values = new double[siteNames.length];
+        Arrays.fill(values, MISSING_VALUE);
+        final CountDownLatch remainingCalls = new CountDownLatch(siteNames.length);
 
-        this.activeCallCount = 0;
-        this.values = new double[siteNames.length];
+        // the site calls run on their own threads, so they need to be told
+        // which request they're working on
+        final String traceId = Tracer.getInstance().getCurrentTraceId();
 
         for (int i = 0; i < siteNames.length; i++) {
             final int index = i;
             final String siteName = siteNames[i];
-            updateActiveCallCount(1);
             Runnable task = new Runnable() {
                 @Override
                 public void run() {
-                    getValuesForSite(index, siteName, variableName, timeStamp, apiVersion);
+                    Tracer.getInstance().setCurrentTraceId(traceId);
+                    long siteCallStartNs = Tracer.now();
+                    boolean permitted = false;
+                    try {
+                        permitted = callPermits.tryAcquire(deadlineMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                        if (permitted == true) {
+                            double value = getValuesForSite(siteName, variableName, timeStamp, deadlineMs);
+                            synchronized (values) {
+                                values[index] = value;
+                            }
+                        }
+                    } catch (Exception e) {
+                        Log.warn(WaterOneFlow.class, siteName + ": " + e.getMessage());
+                    } finally {
+                        if (permitted == true) {
+                            callPermits.release();
+                        }
+                    }
+                    Tracer.getInstance().record("site-call", traceId, siteCallStartNs, siteName);
+                    Tracer.getInstance().setCurrentTraceId(null);
+                    remainingCalls.countDown();
                 }
             };
-            threadPool.submit(task);
+            executor.submit(task);
         }
 
-        while (this.activeCallCount > 0) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                break;
-            }
-            if (this.activeCallCount > 0) {
-                System.out.println("Waiting..(" + this.activeCallCount + ")");
+        try {
+            long remainingMs = deadlineMs - System.currentTimeMillis();
+            while (remainingMs > 0 && remainingCalls.await(Math.min(remainingMs, 1000), TimeUnit.MILLISECONDS) == false) {
+                Log.debug(WaterOneFlow.class, "Waiting..(%d, %s)", remainingCalls.getCount(), serviceGuard.getLimiter());
+                remainingMs = deadlineMs - System.currentTimeMillis();
             }
+        } catch (InterruptedException e) {
+            Log.error(WaterOneFlow.class, e);
+        }
+
+        // take a copy so that calls finishing after the deadline don't
+        // change the values once they've been returned
+        double[] result;
+        synchronized (values) {
+            result = values.clone();
         }
 
         long stopSendMs = System.currentTimeMillis();
         Statistics.getInstance().add(String.format("Web-GetValues-Time-MS"), stopSendMs - startSendMs);
 
-        System.out.print(variableName + ", " + timeStamp + ": ");
-        for (double nextValue : values) {
-            System.out.print(nextValue + ", ");
+        int missingCount = 0;
+        for (double nextValue : result) {
+            if (Double.isNaN(nextValue) == true) {
+                missingCount++;
+            }
         }
-        System.out.println();
 
-        return values;
+        // printing every value is only useful when debugging a service
+        if (Log.isDebugEnabled() == true) {
+            Log.debug(WaterOneFlow.class, "%s, %s: %s", variableName, timeStamp, Arrays.toString(result));
+        }
+
+        Statistics.getInstance().add("Web-GetValues-Missing-Count", missingCount);
+        if (missingCount == result.length && result.length > 0) {
+            return null;
+        }
+        return result;
     }
 
-    private void getValuesForSite(int index, String siteName, String variableName, String timeStamp, String version) {
-        try {
-            String responseXml = null;
-            boolean success = false;
-
-            // we keep retrying indefinitely (could place a limit on the number of attempts here)
-            while (success == false) {
-                try {
-                    responseXml = WebServiceApi.getValues(url, variableName, siteName, timeStamp, version);
-                    //System.out.println(responseXml);
-                    success = true;
-                } catch (Exception e) {
-                    System.out.println(e);
-                    success = false;
-                }
+    private double getValuesForSite(final String siteName, final String variableName, final String timeStamp, long deadlineMs) throws Exception {
+
+        // the response is parsed inside the guarded call so that a response
+        // that can't be parsed is retried like any other failure
+        return serviceGuard.call(new Callable<Double>() {
+            @Override
+            public Double call() throws Exception {
+                // the soap response is parsed as it is received, only the
+                // time series document embedded in it is held in memory
+                GetValuesResponseHandler getValuesResponseHandler = new GetValuesResponseHandler();
+                WebServiceApi.getValues(transport, url, variableName, siteName, timeStamp, apiVersion, getValuesResponseHandler);
+                return parseValue(getValuesResponseHandler.getTimeSeriesXml());
             }
+        }, deadlineMs);
+    }
 
-            // get the xml response inside the getvalues response
-            GetValuesResponseHandler getValuesResponseHandler = new GetValuesResponseHandler();
-            InputSource getValuesResponseSource = new InputSource();
-            getValuesResponseSource.setByteStream(new ByteArrayInputStream(responseXml.getBytes()));
-            XMLReader getValuesResponseReader = XMLReaderFactory.createXMLReader();
-            getValuesResponseReader.setContentHandler(getValuesResponseHandler);
-            getValuesResponseReader.setErrorHandler(getValuesResponseHandler);
-            getValuesResponseReader.parse(getValuesResponseSource);
-            String timeSeriesResponseXml = getValuesResponseHandler.getTimeSeriesXml();
-
-            // parse the value from the time series response
-            TimeSeriesResponseHandler timeSeriesResponseHandler = new TimeSeriesResponseHandler();
-            InputSource timeSeriesResponseSource = new InputSource();
-            timeSeriesResponseSource.setByteStream(new ByteArrayInputStream(timeSeriesResponseXml.getBytes()));
-            XMLReader timeSeriesResponseReader = XMLReaderFactory.createXMLReader();
-            timeSeriesResponseReader.setContentHandler(timeSeriesResponseHandler);
-            timeSeriesResponseReader.setErrorHandler(timeSeriesResponseHandler);
-            timeSeriesResponseReader.parse(timeSeriesResponseSource);
-            double value = timeSeriesResponseHandler.getValue();
-
-            values[index] = value;
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-        }
-        updateActiveCallCount(-1);
+    private static double parseValue(String timeSeriesResponseXml) throws Exception {
+        long startNs = Tracer.now();
+
+        // parse the value from the time series response
+        TimeSeriesResponseHandler timeSeriesResponseHandler = new TimeSeriesResponseHandler();
+        InputSource timeSeriesResponseSource = new InputSource(new StringReader(timeSeriesResponseXml));
+        XMLReader timeSeriesResponseReader = XMLReaderFactory.createXMLReader();
+        timeSeriesResponseReader.setContentHandler(timeSeriesResponseHandler);
+        timeSeriesResponseReader.setErrorHandler(timeSeriesResponseHandler);
+        timeSeriesResponseReader.parse(timeSeriesResponseSource);
+
+        Tracer.getInstance().record("parse", Tracer.getInstance().getCurrentTraceId(), startNs);
+        return timeSeriesResponseHandler.getValue();
     }
 }
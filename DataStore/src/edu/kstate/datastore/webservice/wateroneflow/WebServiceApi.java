@@ -23,12 +23,16 @@
 package edu.kstate.datastore.webservice.wateroneflow;
 
 import edu.kstate.datastore.Statistics;
-import edu.kstate.datastore.webservice.TrustModifier;
-
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.List;
+import edu.kstate.datastore.webservice.HttpTransport;
+import edu.kstate.datastore.webservice.HttpTransports;
+import edu.kstate.datastore.webservice.TransportResponse;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class WebServiceApi {
@@ -36,7 +40,9 @@ public class WebServiceApi {
     public static final String API_10 = "1.0";
     public static final String API_11 = "1.1";
 
-    public static String getSites(String url, String apiVersion) {
+    private static final long TIMEOUT_MS = 5 * 1000;
+
+    public static String getSites(String url, String apiVersion) throws IOException {
         StringBuilder sb = new StringBuilder();
         sb.append("<GetSites xmlns=\"http://www.cuahsi.org/his/" + apiVersion + "/ws/\">");
         sb.append("<site></site>");
@@ -47,7 +53,7 @@ public class WebServiceApi {
         return new String(response);
     }
 
-    public static String getSite(String url, String siteName, String apiVersion) {
+    public static String getSite(String url, String siteName, String apiVersion) throws IOException {
         String serviceName = null;
         StringBuilder sb = new StringBuilder();
         if (apiVersion.equals(API_10) == true) {
@@ -69,7 +75,12 @@ public class WebServiceApi {
         return new String(response);
     }
 
-    public static String getValues(String url, String variableName, String locationName, String timeStamp, String apiVersion) {
+    /**
+     * Calls GetValues and parses the response into the handler as it is
+     * received.
+     */
+    public static void getValues(HttpTransport transport, String url, String variableName, String locationName, String timeStamp, String apiVersion,
+                                 DefaultHandler handler) throws Exception {
         StringBuilder sb = new StringBuilder();
         sb.append("<GetValues xmlns=\"http://www.cuahsi.org/his/" + apiVersion + "/ws/\">");
         sb.append("<location>" + locationName + "</location>");
@@ -79,8 +90,7 @@ public class WebServiceApi {
         sb.append("<authToken></authToken>");
         sb.append("</GetValues>");
         byte[] request = createSoapEnvelope(sb.toString()).getBytes();
-        byte[] response = callWebService(url, request, "http://www.cuahsi.org/his/" + apiVersion + "/ws/GetValues");
-        return new String(response);
+        callWebService(transport, url, request, "http://www.cuahsi.org/his/" + apiVersion + "/ws/GetValues", handler);
     }
 
     private static String createSoapEnvelope(String content) {
@@ -94,110 +104,63 @@ public class WebServiceApi {
         return sb.toString();
     }
 
+    private static Map<String, String> createHeaders(String soapAction) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("User-Agent", "Profile/MIDP-2.0 Configuration/CLDC-1.0");
+        headers.put("Content-Language", "en-us");
+        headers.put("Content-Type", "text/xml; charset=utf-8");
+        headers.put("SOAPAction", soapAction);
+        return headers;
+    }
+
     /**
-     * Returns the web service response as a byte array or returns null if there
-     * was an error.
+     * Returns the web service response as a byte array or throws an
+     * IOException if there was an error.
      */
-    public static byte[] callWebService(String url, byte[] request, String soapAction) {
-
+    public static byte[] callWebService(String url, byte[] request, String soapAction) throws IOException {
         long startSendMs = System.currentTimeMillis();
-
-        byte[] response = null;
-        HttpURLConnection httpURLConnection = null;
-        InputStream connectionInputStream = null;
-        OutputStream connectionOutputStream = null;
-
+        TransportResponse response = null;
         try {
-
-            // create a connection to the URL
-            URL connectUrl = new URL(url);
-            httpURLConnection = (HttpURLConnection) connectUrl.openConnection();
-
-            // configure the request
-            httpURLConnection.setDoInput(true);
-            httpURLConnection.setDoOutput(true);
-            httpURLConnection.setUseCaches(false);
-            httpURLConnection.setRequestMethod("POST");
-
-            httpURLConnection.setConnectTimeout(5*1000);
-            httpURLConnection.setReadTimeout(5*1000);
-
-            // set the request properties
-            httpURLConnection.setRequestProperty("Keep-Alive", "close");
-            httpURLConnection.setRequestProperty("Connection", "close");
-            httpURLConnection.setRequestProperty("User-Agent", "Profile/MIDP-2.0 Configuration/CLDC-1.0");
-            httpURLConnection.setRequestProperty("Content-Language", "en-us");
-            httpURLConnection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
-            httpURLConnection.setRequestProperty("SOAPAction", soapAction);
-            httpURLConnection.setRequestProperty("Content-Length", String.valueOf(request.length));
-
-            TrustModifier.relaxHostChecking(httpURLConnection);
-
-            // open an output stream
-            connectionOutputStream = httpURLConnection.getOutputStream();
-
-            // create a stream so we can stream the request to the server
-            ByteArrayInputStream requestStream = new ByteArrayInputStream(request);
-
-            // stream the request to the server
-            int len;
-            byte[] buffer = new byte[16184];
-            while (-1 != (len = requestStream.read(buffer))) {
-                connectionOutputStream.write(buffer, 0, len);
-                connectionOutputStream.flush();
-            }
-            connectionOutputStream.flush();
-
-            // get the response code from the server
-            int rc = httpURLConnection.getResponseCode();
-
-            // get the input stream
-            connectionInputStream = httpURLConnection.getInputStream();
-
-            // write the response to a byte array
-            ByteArrayOutputStream responseStream = new ByteArrayOutputStream(8092);
-            while (-1 != (len = connectionInputStream.read(buffer))) {
-                responseStream.write(buffer, 0, len);
-            }
-            response = responseStream.toByteArray();
-            responseStream.close();
-
-            if (rc == 301) {
-                Map<String, List<String>> fields = httpURLConnection.getHeaderFields();
-                for (String nextHeader : fields.keySet()) {
-                    System.out.println(nextHeader + " = " + fields.get(nextHeader));
-                }
-            }
-
-            if (rc != 200) {
-                throw new Exception("HTTP ERROR");
+            response = HttpTransports.getDefault().post(url, createHeaders(soapAction), request, TIMEOUT_MS);
+            byte[] responseBytes = response.readFully();
+            recordStatistics(startSendMs, response);
+            return responseBytes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted calling " + url);
+        } finally {
+            if (response != null) {
+                response.close();
             }
+        }
+    }
 
-            long stopSendMs = System.currentTimeMillis();
-            String serviceName = "Http";
-
-            Statistics.getInstance().add(String.format("Web-%s-Time-MS", serviceName), stopSendMs - startSendMs);
-            Statistics.getInstance().add(String.format("Web-%s-Data-Byte", serviceName),
-                    request.length + response.length);
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
+    /**
+     * Parses the web service response into the handler as it is received,
+     * without holding the whole response in memory, or throws an exception
+     * if there was an error.
+     */
+    public static void callWebService(HttpTransport transport, String url, byte[] request, String soapAction, DefaultHandler handler) throws Exception {
+        long startSendMs = System.currentTimeMillis();
+        TransportResponse response = transport.post(url, createHeaders(soapAction), request, TIMEOUT_MS);
+        try {
+            InputSource source = new InputSource(response.getBody());
+            XMLReader reader = XMLReaderFactory.createXMLReader();
+            reader.setContentHandler(handler);
+            reader.setErrorHandler(handler);
+            reader.parse(source);
+            recordStatistics(startSendMs, response);
         } finally {
-
-            // close the streams
-            try {
-                if (connectionInputStream != null)
-                    connectionInputStream.close();
-                if (connectionOutputStream != null)
-                    connectionOutputStream.close();
-                if (httpURLConnection != null)
-                    httpURLConnection.disconnect();
-
-            } catch (IOException e) {
-                // we don't care if we fail to close these
-            }
+            response.close();
         }
+    }
+
+    private static void recordStatistics(long startSendMs, TransportResponse response) {
+        long stopSendMs = System.currentTimeMillis();
+        String serviceName = "Http";
 
-        return response;
+        Statistics.getInstance().add(String.format("Web-%s-Time-MS", serviceName), stopSendMs - startSendMs);
+        Statistics.getInstance().add(String.format("Web-%s-Data-Byte", serviceName),
+                response.getSentB() + response.getReceivedB());
     }
 }
@@ -0,0 +1,98 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs one expiration pass over a full map of value sets that no client
+ * has read, apart from the one read in some tests.
+ */
+public class ExpirationThreadTest {
+
+    private static final long WAIT_MS = 10000;
+    private static final int ENTRY_COUNT = 10;
+
+    private MemoryStorage storage = new MemoryStorage(16, 16, 16, false);
+    private ExpirationThread expirationThread;
+
+    @After
+    public void tearDown() {
+        if (this.expirationThread != null) {
+            this.expirationThread.requestStop();
+        }
+    }
+
+    private static String createKey(int index) {
+        return ValueSetEntry.createKey("TestWebService", "flow", "es", String.format("2012-01-01T%02d:00:00", index), "s");
+    }
+
+    private void fillAndExpire(long maxUnreadAgeMs) throws Exception {
+        ValueSetStore mapValueSet = this.storage.getValueSetStore();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            ValueSetEntry entry = new ValueSetEntry("TestWebService", "flow", String.format("2012-01-01T%02d:00:00", i), "es", "s", new double[] {i});
+            mapValueSet.put(createKey(i), entry);
+            Thread.sleep(2); // so they're created in order
+        }
+        long entryCount = mapValueSet.getLocalEntryCount();
+
+        this.expirationThread = new ExpirationThread(this.storage, mapValueSet.getLocalCostB(), 0, maxUnreadAgeMs, false, Long.MAX_VALUE);
+        this.expirationThread.setDaemon(true);
+        this.expirationThread.start();
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while (mapValueSet.getLocalEntryCount() == entryCount && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void expiresValueSetsThatHaveGoneUnreadTooLong() throws Exception {
+        fillAndExpire(0);
+        assertTrue(this.storage.getValueSetStore().getLocalEntryCount() < ENTRY_COUNT);
+
+        // the oldest go first
+        assertFalse(this.storage.getValueSetStore().containsKey(createKey(0)));
+    }
+
+    @Test
+    public void sparesRecentlyPrefetchedValueSets() throws Exception {
+        this.storage.getValueSetStore().put(createKey(ENTRY_COUNT), new ValueSetEntry("TestWebService", "flow", "2012-01-01T23:00:00", "es", "s", new double[] {0}));
+        this.storage.getValueSetStore().get(createKey(ENTRY_COUNT));
+        fillAndExpire(3600000);
+
+        // only the value set that was read could be expired
+        assertEquals(ENTRY_COUNT, this.storage.getValueSetStore().getLocalEntryCount());
+        assertFalse(this.storage.getValueSetStore().containsKey(createKey(ENTRY_COUNT)));
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            assertTrue(this.storage.getValueSetStore().containsKey(createKey(i)));
+        }
+    }
+}
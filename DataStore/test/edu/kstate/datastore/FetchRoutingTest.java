@@ -0,0 +1,150 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.storage.EntryQueue;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import edu.kstate.datastore.webservice.CallExecutors;
+import edu.kstate.datastore.webservice.HttpTransports;
+import edu.kstate.datastore.webservice.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Runs the fetch thread against storage where another member owns every
+ * value set, so each request it polls from the shared queues is routed.
+ */
+public class FetchRoutingTest {
+
+    private static final long WAIT_MS = 10000;
+    private static final String REMOTE_MEMBER_ID = "remote";
+
+    private MemoryStorage storage;
+    private FetchThread fetchThread;
+
+    @Before
+    public void setUp() {
+        this.storage = new MemoryStorage(16, 16, 16, false) {
+            @Override
+            public String getOwnerMemberId(String valueSetKey) {
+                return REMOTE_MEMBER_ID;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        if (this.fetchThread != null) {
+            this.fetchThread.requestStop();
+        }
+    }
+
+    private void startFetchThread(boolean stopRequested) {
+        RetryPolicy retryPolicy = new RetryPolicy(1, 0, 0, 1000);
+        this.fetchThread = new FetchThread(this.storage, new MetadataCache(this.storage, 16), Long.MAX_VALUE, false, 1, 1,
+                retryPolicy, 1, 1000, true, 86400, false, new Interpolation(null, 0),
+                CallExecutors.PLATFORM, HttpTransports.getDefault(), 60000);
+        this.fetchThread.setDaemon(true);
+        if (stopRequested == true) {
+            this.fetchThread.requestStop();
+        }
+        this.fetchThread.start();
+    }
+
+    private static ValueSetRequestEntry createRequest(String timeStamp) {
+        return new ValueSetRequestEntry("TestWebService", "flow", "es", timeStamp, "s");
+    }
+
+    private static void waitForSize(EntryQueue<ValueSetRequestEntry> queue, int size) throws Exception {
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while (queue.size() != size && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void routesDemandRequestsToTheOwner() throws Exception {
+        ValueSetRequestEntry request = createRequest("2012-01-01T00:00:00");
+        this.storage.getRequestQueue().offer(request);
+        startFetchThread(false);
+
+        EntryQueue<ValueSetRequestEntry> ownerQueue = this.storage.getMemberRequestQueue(REMOTE_MEMBER_ID);
+        waitForSize(ownerQueue, 1);
+        assertEquals(1, ownerQueue.size());
+        assertEquals(0, this.storage.getRequestQueue().size());
+        assertEquals(0, this.storage.getMemberRequestQueue(this.storage.getLocalMemberId()).size());
+        assertEquals(0, this.storage.getMemberPrefetchRequestQueue(REMOTE_MEMBER_ID).size());
+        assertEquals(ValueSetRequestEntry.createKey(request), ValueSetRequestEntry.createKey(ownerQueue.poll()));
+    }
+
+    @Test
+    public void routesPrefetchRequestsToTheOwner() throws Exception {
+        ValueSetRequestEntry request = createRequest("2012-01-01T00:00:00");
+        this.storage.getPrefetchRequestQueue().offer(request);
+        startFetchThread(false);
+
+        EntryQueue<ValueSetRequestEntry> ownerQueue = this.storage.getMemberPrefetchRequestQueue(REMOTE_MEMBER_ID);
+        waitForSize(ownerQueue, 1);
+        assertEquals(1, ownerQueue.size());
+        assertEquals(0, this.storage.getPrefetchRequestQueue().size());
+        assertEquals(0, this.storage.getMemberRequestQueue(REMOTE_MEMBER_ID).size());
+        assertEquals(ValueSetRequestEntry.createKey(request), ValueSetRequestEntry.createKey(ownerQueue.poll()));
+    }
+
+    @Test
+    public void requeuesTheRequestsRoutedToAMember() {
+        this.storage.getMemberRequestQueue(REMOTE_MEMBER_ID).offer(createRequest("2012-01-01T00:00:00"));
+        this.storage.getMemberPrefetchRequestQueue(REMOTE_MEMBER_ID).offer(createRequest("2012-01-01T01:00:00"));
+        this.storage.getMemberRequestQueue(this.storage.getLocalMemberId()).offer(createRequest("2012-01-01T02:00:00"));
+
+        this.storage.requeueMemberRequests(REMOTE_MEMBER_ID);
+        assertEquals(0, this.storage.getMemberRequestQueue(REMOTE_MEMBER_ID).size());
+        assertEquals(0, this.storage.getMemberPrefetchRequestQueue(REMOTE_MEMBER_ID).size());
+        assertEquals(1, this.storage.getRequestQueue().size());
+        assertEquals(1, this.storage.getPrefetchRequestQueue().size());
+
+        // the other members keep what was routed to them
+        assertEquals(1, this.storage.getMemberRequestQueue(this.storage.getLocalMemberId()).size());
+    }
+
+    @Test
+    public void givesBackItsRoutedRequestsWhenItStops() throws Exception {
+        String localMemberId = this.storage.getLocalMemberId();
+        this.storage.getMemberRequestQueue(localMemberId).offer(createRequest("2012-01-01T00:00:00"));
+        this.storage.getMemberPrefetchRequestQueue(localMemberId).offer(createRequest("2012-01-01T01:00:00"));
+
+        startFetchThread(true);
+        this.fetchThread.join(WAIT_MS);
+        assertFalse(this.fetchThread.isAlive());
+        assertEquals(0, this.storage.getMemberRequestQueue(localMemberId).size());
+        assertEquals(0, this.storage.getMemberPrefetchRequestQueue(localMemberId).size());
+        assertEquals(1, this.storage.getRequestQueue().size());
+        assertEquals(1, this.storage.getPrefetchRequestQueue().size());
+    }
+}
@@ -0,0 +1,107 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import edu.kstate.datastore.webservice.CallExecutors;
+import edu.kstate.datastore.webservice.HttpTransports;
+import edu.kstate.datastore.webservice.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the fetch thread against requests it can't fetch, which must still
+ * be answered so the clients waiting for them aren't left waiting.
+ */
+public class FetchThreadTest {
+
+    private static final long WAIT_MS = 10000;
+
+    private MemoryStorage storage;
+    private FetchThread fetchThread;
+
+    @Before
+    public void setUp() {
+        this.storage = new MemoryStorage(16, 16, 16, false);
+        this.storage.getElementSetRegistry().put("es", new ElementSetEntry("es", new String[] {"a", "b"}));
+
+        RetryPolicy retryPolicy = new RetryPolicy(1, 0, 0, 1000);
+        this.fetchThread = new FetchThread(this.storage, new MetadataCache(this.storage, 16), Long.MAX_VALUE, false, 1, 1,
+                retryPolicy, 1, 1000, false, 86400, false, new Interpolation(null, 0),
+                CallExecutors.PLATFORM, HttpTransports.getDefault(), 60000);
+        this.fetchThread.setDaemon(true);
+        this.fetchThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.fetchThread.requestStop();
+    }
+
+    private ValueSetEntry request(String webServiceId, String timeStamp) throws Exception {
+        ValueSetRequestEntry request = new ValueSetRequestEntry(webServiceId, "flow", "es", timeStamp, "s");
+        this.storage.getRequestQueue().offer(request);
+        String key = ValueSetEntry.createKey(webServiceId, "flow", "es", timeStamp, "s");
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while (this.storage.getValueSetStore().containsKey(key) == false && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+        return this.storage.getValueSetStore().get(key);
+    }
+
+    private static void assertMissing(ValueSetEntry entry) {
+        assertNotNull(entry);
+        double[] values = entry.getValues();
+        assertEquals(2, values.length);
+        for (double nextValue : values) {
+            assertTrue(Double.isNaN(nextValue));
+        }
+    }
+
+    @Test
+    public void publishesMissingValuesForAnUnknownWebService() throws Exception {
+        assertMissing(request("UnknownWebService", "2012-01-01T00:00:00"));
+
+        // the thread keeps going
+        assertMissing(request("UnknownWebService", "2012-01-01T01:00:00"));
+        assertTrue(this.fetchThread.isAlive());
+    }
+
+    @Test
+    public void publishesMissingValuesForAnUnsupportedType() throws Exception {
+        this.storage.getWebServiceRegistry().put("TestWebService", new WebServiceEntry("TestWebService", "Unsupported", "", "http://localhost/", "0", "1", "flow"));
+        assertMissing(request("TestWebService", "2012-01-01T00:00:00"));
+        assertMissing(request("TestWebService", "2012-01-01T01:00:00"));
+        assertTrue(this.fetchThread.isAlive());
+    }
+}
@@ -0,0 +1,125 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void returnsZeroWhenEmpty() {
+        assertEquals(0, new Histogram().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void keepsSmallValuesExactly() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(63, histogram.getValueAtPercentile(63));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void roundsAndClampsTheRecordedValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getValueAtPercentile(100));
+        histogram.record(2.6);
+        assertEquals(3, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void keepsLargeValuesWithinThePrecision() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000000);
+        long value = histogram.getValueAtPercentile(100);
+        assertTrue("got " + value, value >= 1000000 && value <= 1000000 * 1.04);
+    }
+
+    @Test
+    public void recordsTheLargestValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        histogram.record(Double.POSITIVE_INFINITY);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        histogram.record(5e18);
+        long value = histogram.getValueAtPercentile(1);
+        assertTrue("got " + value, value >= 5e18 && value <= 5e18 * 1.04);
+    }
+
+    @Test
+    public void everyValueFallsInABucketThatCoversIt() {
+        for (long value = 0; value < 1000000; value = value * 3 / 2 + 1) {
+            long highestValue = Histogram.highestValueInBucket(Histogram.bucketIndex(value));
+            assertTrue("value " + value, highestValue >= value && highestValue - value <= value / 32);
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValueInBucket(Histogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void metricCapsThePercentilesAtTheLargestValue() {
+        Metric metric = new Metric("test");
+        for (int value = 1; value <= 100; value++) {
+            metric.record(value);
+        }
+        assertEquals(100, metric.getCount());
+        assertEquals(5050.0, metric.getSum(), 0.0);
+        assertEquals(50.5, metric.getMean(), 0.0);
+        assertEquals(100.0, metric.getMax(), 0.0);
+
+        // 100 falls in the bucket that runs up to 101
+        assertEquals(100, metric.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void metricCountsEveryValueRecordedConcurrently() throws Exception {
+        final Metric metric = new Metric("test");
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        metric.record(threadIndex);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, metric.getCount());
+        assertEquals(60000.0, metric.getSum(), 0.0);
+        assertEquals(3.0, metric.getMax(), 0.0);
+    }
+}
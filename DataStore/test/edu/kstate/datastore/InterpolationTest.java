@@ -0,0 +1,100 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InterpolationTest {
+
+    @Test
+    public void isOffByDefault() {
+        Interpolation interpolation = new Interpolation(null, 3600);
+        assertFalse(interpolation.isEnabled());
+        assertNull(interpolation.getMode("Discharge"));
+    }
+
+    @Test
+    public void readsTheModeAndStepOfEachQuantity() {
+        Interpolation interpolation = new Interpolation("Discharge=linear:900, *=nearest", 3600);
+        assertTrue(interpolation.isEnabled());
+        assertEquals(Interpolation.LINEAR, interpolation.getMode("Discharge"));
+        assertEquals(900, interpolation.getMaxGapS("Discharge"));
+        assertEquals(Interpolation.NEAREST, interpolation.getMode("Precipitation"));
+        assertEquals(3600, interpolation.getMaxGapS("Precipitation"));
+    }
+
+    @Test
+    public void neverInterpolatesAQuantityWithoutAStep() {
+        Interpolation interpolation = new Interpolation("Discharge=linear,*=nearest:3600", 0);
+        assertNull(interpolation.getMode("Discharge"));
+        assertEquals(Interpolation.NEAREST, interpolation.getMode("Precipitation"));
+
+        assertFalse(new Interpolation("Discharge=linear", 0).isEnabled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownMode() {
+        new Interpolation("Discharge=cubic:900", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAQuantityWithoutAMode() {
+        new Interpolation("Discharge", 900);
+    }
+
+    @Test
+    public void interpolatesLinearlyBetweenTheTimeSteps() {
+        double[] values = Interpolation.interpolate(Interpolation.LINEAR, 0, new double[] { 0, 10, -4 }, 900, new double[] { 9, 10, 4 }, 300);
+        assertArrayEquals(new double[] { 3, 10, -4 + 8.0 / 3.0 }, values, 1e-12);
+    }
+
+    @Test
+    public void takesTheNearestTimeStepEarliestOnATie() {
+        double[] before = new double[] { 1 };
+        double[] after = new double[] { 2 };
+        assertArrayEquals(before, Interpolation.interpolate(Interpolation.NEAREST, 0, before, 900, after, 449), 0.0);
+        assertArrayEquals(before, Interpolation.interpolate(Interpolation.NEAREST, 0, before, 900, after, 450), 0.0);
+        assertArrayEquals(after, Interpolation.interpolate(Interpolation.NEAREST, 0, before, 900, after, 451), 0.0);
+    }
+
+    @Test
+    public void copiesTheValuesOfAnExactTimeStep() {
+        double[] before = new double[] { 1, 2 };
+        double[] values = Interpolation.interpolate(Interpolation.LINEAR, 900, before, 900, before, 900);
+        assertArrayEquals(before, values, 0.0);
+        values[0] = 5;
+        assertEquals(1.0, before[0], 0.0);
+    }
+
+    @Test
+    public void keepsMissingValuesMissing() {
+        double[] values = Interpolation.interpolate(Interpolation.LINEAR, 0, new double[] { Double.NaN }, 900, new double[] { 1 }, 450);
+        assertTrue(Double.isNaN(values[0]));
+    }
+}
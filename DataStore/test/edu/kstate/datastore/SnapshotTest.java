@@ -0,0 +1,132 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("snapshot", ".bin");
+        this.file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        this.file.delete();
+        new File(this.file.getPath() + ".tmp").delete();
+    }
+
+    private static ValueSetEntry createValueSet(String timeStamp, double[] values) {
+        return new ValueSetEntry("TestWebService", "flow", timeStamp, "es", "s", values);
+    }
+
+    private static void put(MemoryStorage storage, ValueSetEntry entry) {
+        storage.getValueSetStore().put(ValueSetEntry.createKey(entry), entry);
+    }
+
+    @Test
+    public void loadsWhatWasWritten() throws Exception {
+        MemoryStorage storage = new MemoryStorage(16, 16, 16, false);
+        storage.getElementSetRegistry().put("es", new ElementSetEntry("es", new String[] {"a", "b", "c"}));
+        ValueSetEntry first = createValueSet("2012-01-01T00:00:00", new double[] {1.5, Double.NaN, -3});
+        ValueSetEntry second = createValueSet("2012-01-01T01:00:00", new double[] {0, 0, 0});
+        put(storage, first);
+        put(storage, second);
+        Snapshot.write(storage, this.file.getPath());
+        assertFalse(new File(this.file.getPath() + ".tmp").exists());
+
+        MemoryStorage loaded = new MemoryStorage(16, 16, 16, false);
+        assertEquals(2, Snapshot.load(loaded, this.file.getPath(), 2, Long.MAX_VALUE));
+        ElementSetEntry elementSet = loaded.getElementSetRegistry().get("es");
+        assertNotNull(elementSet);
+        assertEquals(3, elementSet.getElementIds().length);
+        assertEquals("c", elementSet.getElementIds()[2]);
+        for (ValueSetEntry expected : new ValueSetEntry[] {first, second}) {
+            ValueSetEntry actual = loaded.getValueSetStore().get(ValueSetEntry.createKey(expected));
+            assertNotNull(actual);
+            assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+            assertArrayEquals(expected.getValues(), actual.getValues(), 0);
+        }
+    }
+
+    @Test
+    public void leavesOutValueSetsThatStillNeedToBeUploaded() throws Exception {
+        MemoryStorage storage = new MemoryStorage(16, 16, 16, false);
+        ValueSetEntry fetched = createValueSet("2012-01-01T00:00:00", new double[] {1});
+        ValueSetEntry upload = createValueSet("2012-01-01T01:00:00", new double[] {2});
+        put(storage, fetched);
+        put(storage, upload);
+        storage.getUploadRegistry().put(ValueSetEntry.createKey(upload), System.currentTimeMillis());
+        Snapshot.write(storage, this.file.getPath());
+
+        MemoryStorage loaded = new MemoryStorage(16, 16, 16, false);
+        assertEquals(1, Snapshot.load(loaded, this.file.getPath(), 1, Long.MAX_VALUE));
+        assertNotNull(loaded.getValueSetStore().get(ValueSetEntry.createKey(fetched)));
+        assertNull(loaded.getValueSetStore().get(ValueSetEntry.createKey(upload)));
+    }
+
+    @Test
+    public void doesNotCountHitsWhenWriting() throws Exception {
+        MemoryStorage storage = new MemoryStorage(16, 16, 16, false);
+        ValueSetEntry entry = createValueSet("2012-01-01T00:00:00", new double[] {1});
+        put(storage, entry);
+        Snapshot.write(storage, this.file.getPath());
+
+        // expiration treats value sets no client has read as prefetched
+        assertEquals(0, storage.getValueSetStore().getStored(ValueSetEntry.createKey(entry)).getHits());
+        assertEquals(0, storage.getValueSetStore().getLocalHits());
+    }
+
+    @Test
+    public void replacesThePreviousSnapshot() throws Exception {
+        MemoryStorage storage = new MemoryStorage(16, 16, 16, false);
+        put(storage, createValueSet("2012-01-01T00:00:00", new double[] {1}));
+        Snapshot.write(storage, this.file.getPath());
+        put(storage, createValueSet("2012-01-01T01:00:00", new double[] {2}));
+        Snapshot.write(storage, this.file.getPath());
+
+        assertEquals(2, Snapshot.load(new MemoryStorage(16, 16, 16, false), this.file.getPath(), 1, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void loadsNothingWithoutASnapshot() throws Exception {
+        assertEquals(0, Snapshot.load(new MemoryStorage(16, 16, 16, false), this.file.getPath(), 1, Long.MAX_VALUE));
+    }
+}
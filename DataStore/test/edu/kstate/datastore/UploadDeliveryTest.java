@@ -0,0 +1,259 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.WebServiceEntry;
+import edu.kstate.datastore.storage.MetadataCache;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import edu.kstate.datastore.webservice.HttpTransports;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs uploads through the queue-to-map and delivery threads against a
+ * local SetValues endpoint.
+ */
+public class UploadDeliveryTest {
+
+    private static final long WAIT_MS = 10000;
+
+    private HttpServer server;
+    private List<String> setValuesRequests = new CopyOnWriteArrayList<String>();
+    private volatile boolean failSetValues;
+    private AtomicInteger failedRequestCount = new AtomicInteger();
+    private MemoryStorage storage;
+    private QueueToMapThread queueToMapThread;
+    private DeliveryThread deliveryThread;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/simplerest/set", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) {
+                try {
+                    String request = readBody(exchange.getRequestBody());
+                    if (failSetValues == true) {
+                        failedRequestCount.incrementAndGet();
+                        exchange.sendResponseHeaders(500, -1);
+                        return;
+                    }
+                    setValuesRequests.add(request);
+                    byte[] response = "<result><serviceTime>0</serviceTime></result>".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, response.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(response);
+                    out.close();
+                } catch (Exception e) {
+                    // the test fails when the request doesn't arrive
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+
+        this.storage = new MemoryStorage(16, 16, 16, false);
+        String url = "http://localhost:" + this.server.getAddress().getPort() + "/simplerest";
+        this.storage.getWebServiceRegistry().put("TestWebService", new WebServiceEntry("TestWebService", "SimpleRest", "", url, "0", "1", "flow"));
+        this.storage.getElementSetRegistry().put("es", new ElementSetEntry("es", new String[] {"a", "b"}));
+
+        this.queueToMapThread = new QueueToMapThread(this.storage, Long.MAX_VALUE, 1, 8, 86400, false);
+        this.queueToMapThread.setDaemon(true);
+        this.queueToMapThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.queueToMapThread.requestStop();
+        if (this.deliveryThread != null) {
+            this.deliveryThread.requestStop();
+        }
+        this.server.stop(0);
+    }
+
+    private void startDelivery() {
+        this.deliveryThread = new DeliveryThread(this.storage, new MetadataCache(this.storage, 16), 1, 1, 86400, HttpTransports.getDefault());
+        this.deliveryThread.setDaemon(true);
+        this.deliveryThread.start();
+    }
+
+    private static String readBody(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while (-1 != (len = in.read(buffer))) {
+            out.write(buffer, 0, len);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static ValueSetEntry createValueSet(String timeStamp, boolean needsUpload) {
+        return createValueSet(timeStamp, "s", needsUpload);
+    }
+
+    private static ValueSetEntry createValueSet(String timeStamp, String scenarioId, boolean needsUpload) {
+        ValueSetEntry entry = new ValueSetEntry("TestWebService", "flow", timeStamp, "es", scenarioId, new double[] {1.5, 2.5});
+        entry.setNeedsUpload(needsUpload);
+        return entry;
+    }
+
+    private void waitForValueSet(String key) throws Exception {
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while (this.storage.getValueSetStore().containsKey(key) == false && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitForDelivery(String key) throws Exception {
+        waitForDelivery(key, 1);
+    }
+
+    private void waitForDelivery(String key, int requestCount) throws Exception {
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while ((this.setValuesRequests.size() < requestCount || this.storage.getUploadRegistry().containsKey(key) == true) && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void marksUploadsOnceTheyAreStored() throws Exception {
+        ValueSetEntry upload = createValueSet("2012-01-01T00:00:00", true);
+        ValueSetEntry fetched = createValueSet("2012-01-01T01:00:00", false);
+        this.storage.getUploadQueue().offer(fetched);
+        this.storage.getUploadQueue().offer(upload);
+        waitForValueSet(ValueSetEntry.createKey(upload));
+
+        // the flag only hands the upload over, the marker tracks it
+        ValueSetEntry stored = this.storage.getValueSetStore().get(ValueSetEntry.createKey(upload));
+        assertNotNull(stored);
+        assertFalse(stored.getNeedsUpload());
+        assertTrue(this.storage.getUploadRegistry().containsKey(ValueSetEntry.createKey(upload)));
+        assertNotNull(this.storage.getValueSetStore().get(ValueSetEntry.createKey(fetched)));
+        assertFalse(this.storage.getUploadRegistry().containsKey(ValueSetEntry.createKey(fetched)));
+    }
+
+    @Test
+    public void deliversOnlyTheUploadsAndClearsTheirMarkers() throws Exception {
+        ValueSetEntry upload = createValueSet("2012-01-01T00:00:00", true);
+        ValueSetEntry fetched = createValueSet("2012-01-01T01:00:00", false);
+        this.storage.getUploadQueue().offer(fetched);
+        this.storage.getUploadQueue().offer(upload);
+        waitForValueSet(ValueSetEntry.createKey(upload));
+        startDelivery();
+        waitForDelivery(ValueSetEntry.createKey(upload));
+
+        assertEquals(1, this.setValuesRequests.size());
+        String request = this.setValuesRequests.get(0);
+        assertTrue(request.contains("<timeStamp>2012-01-01T00:00:00</timeStamp>"));
+        assertFalse(request.contains("<timeStamp>2012-01-01T01:00:00</timeStamp>"));
+        assertFalse(this.storage.getUploadRegistry().containsKey(ValueSetEntry.createKey(upload)));
+
+        // the delivered value set stays cached for the models
+        ValueSetEntry stored = this.storage.getValueSetStore().get(ValueSetEntry.createKey(upload));
+        assertNotNull(stored);
+        assertFalse(stored.getNeedsUpload());
+    }
+
+    @Test
+    public void keepsTheMarkersOfAFailedSendUntilItIsDelivered() throws Exception {
+        this.failSetValues = true;
+        ValueSetEntry upload = createValueSet("2012-01-01T00:00:00", true);
+        this.storage.getUploadQueue().offer(upload);
+        waitForValueSet(ValueSetEntry.createKey(upload));
+        startDelivery();
+        long endMs = System.currentTimeMillis() + WAIT_MS;
+        while (this.failedRequestCount.get() == 0 && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+        assertTrue(this.failedRequestCount.get() > 0);
+        assertTrue(this.storage.getUploadRegistry().containsKey(ValueSetEntry.createKey(upload)));
+
+        // the upload is sent again once the service is back
+        this.failSetValues = false;
+        waitForDelivery(ValueSetEntry.createKey(upload));
+        assertEquals(1, this.setValuesRequests.size());
+        assertTrue(this.setValuesRequests.get(0).contains("<timeStamp>2012-01-01T00:00:00</timeStamp>"));
+        assertFalse(this.storage.getUploadRegistry().containsKey(ValueSetEntry.createKey(upload)));
+    }
+
+    @Test
+    public void doesNotCountHitsWhenDelivering() throws Exception {
+        ValueSetEntry upload = createValueSet("2012-01-01T00:00:00", true);
+        this.storage.getUploadQueue().offer(upload);
+        waitForValueSet(ValueSetEntry.createKey(upload));
+        startDelivery();
+        waitForDelivery(ValueSetEntry.createKey(upload));
+
+        assertEquals(1, this.setValuesRequests.size());
+        assertEquals(0, this.storage.getValueSetStore().getStored(ValueSetEntry.createKey(upload)).getHits());
+        assertEquals(0, this.storage.getValueSetStore().getLocalHits());
+    }
+
+    @Test
+    public void deliversAChunkOfASeriesInOneSend() throws Exception {
+        ValueSetEntry first = createValueSet("2012-01-01T00:00:00", true);
+        ValueSetEntry second = createValueSet("2012-01-01T01:00:00", true);
+        ValueSetEntry other = createValueSet("2012-01-05T00:00:00", "other", true);
+        this.storage.getUploadQueue().offer(first);
+        this.storage.getUploadQueue().offer(other);
+        this.storage.getUploadQueue().offer(second);
+        waitForValueSet(ValueSetEntry.createKey(first));
+        waitForValueSet(ValueSetEntry.createKey(other));
+        waitForValueSet(ValueSetEntry.createKey(second));
+
+        // each value set alone fills a send, but the rest of its chunk
+        // goes along with it
+        startDelivery();
+        waitForDelivery(ValueSetEntry.createKey(other), 2);
+        assertEquals(2, this.setValuesRequests.size());
+        for (String request : this.setValuesRequests) {
+            if (request.contains("<timeStamp>2012-01-05T00:00:00</timeStamp>") == true) {
+                assertFalse(request.contains("<timeStamp>2012-01-01T00:00:00</timeStamp>"));
+            } else {
+                assertTrue(request.contains("<timeStamp>2012-01-01T00:00:00</timeStamp>"));
+                assertTrue(request.contains("<timeStamp>2012-01-01T01:00:00</timeStamp>"));
+            }
+        }
+    }
+}
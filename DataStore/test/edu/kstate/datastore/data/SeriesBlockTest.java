@@ -0,0 +1,170 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.data;
+
+import edu.kstate.datastore.util.EpochTime;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesBlockTest {
+
+    private static final long START_S = EpochTime.parse("2014-06-01T00:00:00");
+    private static final long STEP_S = 3600;
+
+    private static ValueSetEntry entry(int step, double... values) {
+        return new ValueSetEntry("ws", "Discharge", EpochTime.format(START_S + step * STEP_S), "es", "sc", values);
+    }
+
+    private static SeriesBlock block(int elementCount) {
+        return new SeriesBlock(SeriesKey.create("ws", "Discharge", "es", START_S, "sc", 86400), elementCount);
+    }
+
+    @Test
+    public void keepsTimeStepsInOrderWhenAddedOutOfOrder() {
+        SeriesBlock block = block(2);
+        int[] steps = { 5, 1, 9, 0, 3, 7, 2 };
+        for (int step : steps) {
+            block.put(entry(step, step, -step));
+        }
+        assertEquals(steps.length, block.getTimeCount());
+        for (int i = 1; i < block.getTimeCount(); i++) {
+            assertTrue(block.getTimeS(i - 1) < block.getTimeS(i));
+        }
+        assertArrayEquals(new double[] { 9, -9 }, block.getValues(block.getTimeCount() - 1), 0.0);
+    }
+
+    @Test
+    public void slicesOutTheValueSetOfATimeStep() {
+        SeriesBlock block = block(3);
+        block.put(entry(0, 1, 2, 3));
+        block.put(entry(1, 4, 5, 6));
+
+        ValueSetEntry valueSet = block.getValueSet(START_S + STEP_S);
+        assertEquals("ws", valueSet.getWebServiceId());
+        assertEquals("Discharge", valueSet.getQuantityId());
+        assertEquals("es", valueSet.getElementSetId());
+        assertEquals("sc", valueSet.getScenarioId());
+        assertEquals(EpochTime.format(START_S + STEP_S), valueSet.getTimeStamp());
+        assertArrayEquals(new double[] { 4, 5, 6 }, valueSet.getValues(), 0.0);
+
+        assertNull(block.getValueSet(START_S + STEP_S / 2));
+    }
+
+    @Test
+    public void slicesARangeUpToButNotIncludingItsEnd() {
+        SeriesBlock block = block(1);
+        for (int step = 0; step < 10; step++) {
+            block.put(entry(step, step));
+        }
+        ArrayList<ValueSetEntry> valueSets = block.getValueSets(START_S + 2 * STEP_S + 1, START_S + 6 * STEP_S);
+        assertEquals(3, valueSets.size());
+        assertArrayEquals(new double[] { 3 }, valueSets.get(0).getValues(), 0.0);
+        assertArrayEquals(new double[] { 5 }, valueSets.get(2).getValues(), 0.0);
+    }
+
+    @Test
+    public void findsTheTimeStepsEitherSideOfATime() {
+        SeriesBlock block = block(1);
+        block.put(entry(2, 2));
+        block.put(entry(4, 4));
+
+        long betweenS = START_S + 3 * STEP_S;
+        assertEquals(0, block.floorIndex(betweenS));
+        assertEquals(1, block.ceilingIndex(betweenS));
+        assertEquals(1, block.floorIndex(START_S + 4 * STEP_S));
+        assertEquals(1, block.ceilingIndex(START_S + 4 * STEP_S));
+        assertEquals(-1, block.floorIndex(START_S));
+        assertEquals(-1, block.ceilingIndex(START_S + 5 * STEP_S));
+    }
+
+    @Test
+    public void reportsWhetherAPutChangedTheBlock() {
+        SeriesBlock block = block(2);
+        assertTrue(block.put(entry(0, 1, 2)));
+        assertFalse(block.put(entry(0, 1, 2)));
+        assertTrue(block.put(entry(0, 1, 3)));
+        assertEquals(1, block.getTimeCount());
+        assertArrayEquals(new double[] { 1, 3 }, block.getValues(0), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAValueSetOfTheWrongSize() {
+        block(2).put(entry(0, 1, 2, 3));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        SeriesBlock block = block(1);
+        block.put(entry(0, 1));
+        SeriesBlock copy = new SeriesBlock(block);
+        copy.put(entry(0, 2));
+        copy.put(entry(1, 3));
+        assertEquals(1, block.getTimeCount());
+        assertArrayEquals(new double[] { 1 }, block.getValues(0), 0.0);
+    }
+
+    @Test
+    public void roundTripsThroughSerialization() throws Exception {
+        SeriesBlock block = block(2);
+        for (int step = 0; step < 6; step++) {
+            block.put(entry(step, step, step * 0.5));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        block.writeData(new DataOutputStream(bytes));
+
+        SeriesBlock read = new SeriesBlock();
+        read.readData(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(block.getTimeCount(), read.getTimeCount());
+        assertEquals(block.getCostB(), read.getCostB());
+        for (int i = 0; i < block.getTimeCount(); i++) {
+            assertEquals(block.getTimeS(i), read.getTimeS(i));
+            assertArrayEquals(block.getValues(i), read.getValues(i), 0.0);
+        }
+
+        // the block read back can still grow
+        read.put(entry(6, 6, 3));
+        assertEquals(7, read.getTimeCount());
+    }
+
+    @Test
+    public void keysTimesBeforeTheEpochIntoEarlierChunks() {
+        assertEquals(-1, SeriesKey.create("ws", "q", "es", -1, "sc", 86400).getChunk());
+        assertEquals(0, SeriesKey.create("ws", "q", "es", 0, "sc", 86400).getChunk());
+        assertEquals(0, SeriesKey.create("ws", "q", "es", 123456, "sc", 0).getChunk());
+        SeriesKey key = SeriesKey.create("ws", "q", "es", 86399, "sc", 86400);
+        assertEquals(key, SeriesKey.create("ws", "q", "es", 0, "sc", 86400));
+        assertEquals(key.hashCode(), SeriesKey.create("ws", "q", "es", 0, "sc", 86400).hashCode());
+        assertEquals(key.getNeighbour(1), SeriesKey.create("ws", "q", "es", 86400, "sc", 86400));
+    }
+}
@@ -0,0 +1,74 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EpochTimeTest {
+
+    @Test
+    public void parsesTimeStampsAsUtc() {
+        assertEquals(0L, EpochTime.parse("1970-01-01T00:00:00"));
+        assertEquals(1401625800L, EpochTime.parse("2014-06-01T12:30:00"));
+        assertEquals(1456704000L, EpochTime.parse("2016-02-29T00:00:00"));
+        assertEquals(-1L, EpochTime.parse("1969-12-31T23:59:59"));
+    }
+
+    @Test
+    public void parsesTheHourSkippedByDaylightSaving() {
+        // the hour the US skipped on this day is an ordinary hour in UTC
+        assertEquals(1394332200L, EpochTime.parse("2014-03-09T02:30:00"));
+    }
+
+    @Test
+    public void ignoresFractionsOfASecond() {
+        assertEquals(1401625800L, EpochTime.parse("2014-06-01T12:30:00.750"));
+    }
+
+    @Test
+    public void formatsTheSameStringsTheClientsUse() {
+        assertEquals("1970-01-01T00:00:00", EpochTime.format(0L));
+        assertEquals("2014-06-01T12:30:00", EpochTime.format(1401625800L));
+        assertEquals("1969-12-31T23:59:59", EpochTime.format(-1L));
+    }
+
+    @Test
+    public void roundTripsEveryHourOfALeapYear() {
+        long startS = EpochTime.parse("2016-01-01T00:00:00");
+        for (long timeS = startS; timeS < startS + 366L * 86400L; timeS += 3600L) {
+            assertEquals(timeS, EpochTime.parse(EpochTime.format(timeS)));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsAnInvalidTimeStamp() {
+        EpochTime.parse("2014-13-01T00:00:00");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rejectsATimeStampWithoutATime() {
+        EpochTime.parse("2014-06-01");
+    }
+}
@@ -0,0 +1,143 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The C# client decodes the same payloads, so the encoded bytes are
+ * checked exactly, not only that they decode again.
+ */
+public class XorCodecTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    @Test
+    public void encodesNoValuesAsTheHeader() {
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x00), XorCodec.encode(new double[0]));
+    }
+
+    @Test
+    public void encodesARepeatOfTheStartingZeroAsOneBit() {
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x01, 0x00), XorCodec.encode(new double[] { 0.0 }));
+    }
+
+    @Test
+    public void encodesANewWindow() {
+        // 110, 2 leading zeros, length 10, then the 10 meaningful bits,
+        // padded so that the length isn't a multiple of 8
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x01, 0xC2, 0x27, 0xFF, 0x00), XorCodec.encode(new double[] { 1.0 }));
+    }
+
+    @Test
+    public void encodesARepeatedValueAsOneBit() {
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x02, 0xC2, 0x27, 0xFF, 0x00), XorCodec.encode(new double[] { 1.0, 1.0 }));
+    }
+
+    @Test
+    public void encodesAWiderWindowAsANewWindow() {
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x02, 0xC2, 0x27, 0xFF, 0xC1, 0x2B, 0xFF, 0x80), XorCodec.encode(new double[] { 1.0, 2.0 }));
+    }
+
+    @Test
+    public void encodesRunsOfZerosAndNaNs() {
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x03, 0xE0, 0x20), XorCodec.encode(new double[] { 0.0, 0.0, 0.0 }));
+        assertArrayEquals(bytes(0x01, 0x00, 0x00, 0x00, 0x01, 0xF0, 0x00), XorCodec.encode(new double[] { Double.NaN }));
+    }
+
+    @Test
+    public void decodesTheBytesTheClientSends() {
+        assertArrayEquals(new double[] { 1.0, 2.0 }, XorCodec.decode(bytes(0x01, 0x00, 0x00, 0x00, 0x02, 0xC2, 0x27, 0xFF, 0xC1, 0x2B, 0xFF, 0x80)), 0.0);
+        assertArrayEquals(new double[] { 0.0, 0.0, 0.0 }, XorCodec.decode(bytes(0x01, 0x00, 0x00, 0x00, 0x03, 0xE0, 0x20)), 0.0);
+    }
+
+    @Test
+    public void roundTripsRunsLongerThanTheMaximum() {
+        double[] values = new double[600];
+        for (int i = 300; i < values.length; i++) {
+            values[i] = Double.NaN;
+        }
+        assertRoundTrip(values);
+    }
+
+    @Test
+    public void roundTripsSpecialValues() {
+        assertRoundTrip(new double[] { -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, -1.5, -1.5, 0.0 });
+    }
+
+    @Test
+    public void roundTripsRandomValues() {
+        Random random = new Random(42);
+        for (int count = 1; count < 200; count += 7) {
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        values[i] = 0.0;
+                        break;
+                    case 1:
+                        values[i] = Double.NaN;
+                        break;
+                    case 2:
+                        values[i] = i > 0 ? values[i - 1] : 1.0;
+                        break;
+                    default:
+                        values[i] = random.nextDouble() * 1000.0;
+                        break;
+                }
+            }
+            assertRoundTrip(values);
+        }
+    }
+
+    @Test
+    public void toldApartFromRawPayloadsByLength() {
+        assertFalse(XorCodec.isEncoded(ByteUtil.toByta(new double[] { 1.0, 2.0, 3.0 }).length));
+        for (int count = 0; count < 100; count++) {
+            byte[] data = XorCodec.encode(new double[count]);
+            assertTrue(XorCodec.isEncoded(data.length));
+            assertEquals(count, XorCodec.getValueCount(data));
+        }
+    }
+
+    private static void assertRoundTrip(double[] values) {
+        double[] decoded = XorCodec.decode(XorCodec.encode(values));
+        assertEquals(values.length, decoded.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("value " + i, Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoded[i]));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressingTransportTest {
+
+    /**
+     * Keeps the last request instead of sending it.
+     */
+    private static class RecordingTransport implements HttpTransport {
+        private Map<String, String> headers;
+        private byte[] request;
+
+        @Override
+        public TransportResponse post(String url, Map<String, String> headers, byte[] request, long timeoutMs) throws IOException {
+            this.headers = headers;
+            this.request = request;
+            return new TransportResponse(new ByteArrayInputStream(new byte[0]), null, request.length, null);
+        }
+    }
+
+    @Test
+    public void sendsSmallBodiesAsTheyAre() throws Exception {
+        RecordingTransport recorder = new RecordingTransport();
+        byte[] request = new byte[100];
+        new CompressingTransport(recorder).post("http://localhost/", new HashMap<String, String>(), request, 0);
+        assertArrayEquals(request, recorder.request);
+        assertNull(recorder.headers.get("Content-Encoding"));
+    }
+
+    @Test
+    public void gzipsLargeBodies() throws Exception {
+        RecordingTransport recorder = new RecordingTransport();
+        byte[] request = new byte[64 * 1024];
+        for (int i = 0; i < request.length; i++) {
+            request[i] = (byte) ('a' + i % 7);
+        }
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "text/xml");
+        new CompressingTransport(recorder).post("http://localhost/", headers, request, 0);
+
+        assertEquals("gzip", recorder.headers.get("Content-Encoding"));
+        assertEquals("text/xml", recorder.headers.get("Content-Type"));
+        assertNull(headers.get("Content-Encoding"));
+        assertTrue(recorder.request.length < request.length / 10);
+
+        TransportResponse decoded = new TransportResponse(new ByteArrayInputStream(recorder.request), "gzip", 0, null);
+        assertArrayEquals(request, decoded.readFully());
+    }
+}
@@ -0,0 +1,155 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void startsWithinItsBounds() {
+        assertEquals(8, new ConcurrencyLimiter("ws", 100, 2, 8, 0).getLimit());
+        assertEquals(2, new ConcurrencyLimiter("ws", 0, 2, 8, 0).getLimit());
+        assertEquals(1, new ConcurrencyLimiter("ws", 0, 0, 0, 0).getLimit());
+    }
+
+    @Test
+    public void refusesCallsOverTheLimitUntilOneIsFreed() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 2, 1, 4, 0);
+        assertTrue(limiter.tryAcquire(0));
+        assertTrue(limiter.tryAcquire(0));
+        assertFalse(limiter.hasCapacity());
+        assertFalse(limiter.tryAcquire(10));
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.cancel();
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire(0));
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void wakesAWaitingCallWhenASlotIsFreed() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 1, 1, 1, 0);
+        limiter.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // the test fails on the latch
+                }
+            }
+        };
+        waiter.start();
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+
+        limiter.release(10, true);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void growsByAboutOneCallForEachRoundAtTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 2, 1, 10, 0);
+
+        // keep the limiter full, as it is under steady load, so that each
+        // call completes while the limit is reached
+        limiter.acquire();
+        limiter.acquire();
+        limiter.release(10, true);
+        limiter.acquire();
+        limiter.release(10, true);
+        limiter.acquire();
+        assertEquals(2, limiter.getLimit());
+
+        limiter.release(10, true);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowWhenTheLimitWasNotReached() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 4, 1, 10, 0);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(10, true);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void neverGrowsPastItsMaximum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 1, 1, 2, 0);
+        for (int i = 0; i < 50; i++) {
+            while (limiter.hasCapacity() == true) {
+                limiter.acquire();
+            }
+            while (limiter.getInFlight() > 0) {
+                limiter.release(10, true);
+            }
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void halvesOnceForFailuresInTheSameRoundTrip() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 8, 1, 8, 0);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.release(60000, false);
+        assertEquals(4, limiter.getLimit());
+        limiter.release(60000, false);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenCallsAreMuchSlowerThanTheServiceTime() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 10, 1, 10, 100);
+        limiter.acquire();
+        limiter.release(150, true);
+        assertEquals(10, limiter.getLimit());
+        limiter.acquire();
+        limiter.release(250, true);
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void neverShrinksBelowItsMinimum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("ws", 4, 3, 8, 0);
+        limiter.acquire();
+        limiter.release(0, false);
+        assertEquals(3, limiter.getLimit());
+    }
+}
@@ -0,0 +1,60 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void doublesTheBackoffWithHalfOfItRandom() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 60000, 30000);
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long ceilingMs = 100L << attempt;
+            for (int i = 0; i < 1000; i++) {
+                long backoffMs = policy.getBackoffMs(attempt);
+                assertTrue("attempt " + attempt + " waited " + backoffMs, backoffMs >= ceilingMs / 2 && backoffMs <= ceilingMs);
+            }
+        }
+    }
+
+    @Test
+    public void neverWaitsLongerThanTheMaximum() {
+        RetryPolicy policy = new RetryPolicy(100, 100, 1000, 30000);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long backoffMs = policy.getBackoffMs(attempt);
+            assertTrue("attempt " + attempt + " waited " + backoffMs, backoffMs >= 0 && backoffMs <= 1000);
+        }
+        assertTrue(policy.getBackoffMs(Integer.MAX_VALUE) >= 500);
+    }
+
+    @Test
+    public void makesAtLeastOneAttempt() {
+        assertEquals(1, new RetryPolicy(0, 100, 1000, 30000).getMaxAttempts());
+        assertEquals(3, new RetryPolicy(3, 100, 1000, 30000).getMaxAttempts());
+        assertEquals(30000, new RetryPolicy(3, 100, 1000, 30000).getDeadlineMs());
+    }
+}
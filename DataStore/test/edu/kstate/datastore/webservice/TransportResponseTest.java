@@ -0,0 +1,129 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+package edu.kstate.datastore.webservice;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransportResponseTest {
+
+    private static final byte[] BODY = createBody();
+
+    private static byte[] createBody() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            body.append("<value dateTime=\"2014-06-01T00:00:00\">").append(i % 17).append("</value>\n");
+        }
+        return body.toString().getBytes();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(data);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean zlibWrapped) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION, zlibWrapped == false));
+        deflate.write(data);
+        deflate.close();
+        return compressed.toByteArray();
+    }
+
+    private static TransportResponse respond(byte[] wireBytes, String contentEncoding) throws IOException {
+        return new TransportResponse(new ByteArrayInputStream(wireBytes), contentEncoding, 0, null);
+    }
+
+    @Test
+    public void passesAnUnencodedBodyThrough() throws Exception {
+        assertArrayEquals(BODY, respond(BODY, null).readFully());
+        assertArrayEquals(BODY, respond(BODY, "").readFully());
+        assertArrayEquals(BODY, respond(BODY, "identity").readFully());
+    }
+
+    @Test
+    public void decodesGzip() throws Exception {
+        assertArrayEquals(BODY, respond(gzip(BODY), "gzip").readFully());
+        assertArrayEquals(BODY, respond(gzip(BODY), "X-GZIP").readFully());
+    }
+
+    @Test
+    public void inflatesZlibWrappedDeflate() throws Exception {
+        assertArrayEquals(BODY, respond(deflate(BODY, true), "deflate").readFully());
+    }
+
+    @Test
+    public void inflatesRawDeflate() throws Exception {
+        assertArrayEquals(BODY, respond(deflate(BODY, false), "deflate").readFully());
+    }
+
+    @Test
+    public void inflatesTinyBodies() throws Exception {
+        byte[] body = "1".getBytes();
+        assertArrayEquals(body, respond(deflate(body, true), "deflate").readFully());
+        assertArrayEquals(body, respond(deflate(body, false), "deflate").readFully());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnUnsupportedEncoding() throws Exception {
+        respond(BODY, "br");
+    }
+
+    @Test
+    public void countsTheBytesAsTheyCameOverTheWire() throws Exception {
+        byte[] wireBytes = gzip(BODY);
+        TransportResponse response = new TransportResponse(new ByteArrayInputStream(wireBytes), "gzip", 123, null);
+        response.readFully();
+        assertEquals(wireBytes.length, response.getReceivedB());
+        assertEquals(123, response.getSentB());
+        assertTrue(response.getReceivedB() < BODY.length);
+    }
+
+    @Test
+    public void closesTheConnectionWithTheResponse() throws Exception {
+        final boolean[] closed = new boolean[1];
+        Closeable connection = new Closeable() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        TransportResponse response = new TransportResponse(new ByteArrayInputStream(BODY), null, 0, connection);
+        response.close();
+        assertTrue(closed[0]);
+    }
+}
@@ -0,0 +1,78 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.FetchThread;
+import edu.kstate.datastore.data.ElementSetEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The search the fetch thread makes through the cached element sets to
+ * see whether a requested value set could be assembled from others.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AssemblyBenchmark {
+
+    @Param({"10", "100"})
+    public int elementSetCount;
+
+    @Param({"16", "256"})
+    public int elementCount;
+
+    private ArrayList<ElementSetEntry> elementSets;
+    private String[] coveredElementIds;
+    private String[] uncoveredElementIds;
+
+    @Setup
+    public void setup() {
+        elementSets = new ArrayList<ElementSetEntry>();
+        for (int i = 0; i < elementSetCount; i++) {
+            elementSets.add(Workload.createElementSetEntry("ElementSet" + i, i * elementCount, elementCount));
+        }
+
+        // a request that straddles two cached element sets, and one for
+        // elements that no cached element set contains
+        int firstElement = (elementSetCount / 2) * elementCount - elementCount / 2;
+        coveredElementIds = Workload.createElementSetEntry("Covered", firstElement, elementCount).getElementIds();
+        uncoveredElementIds = Workload.createElementSetEntry("Uncovered", elementSetCount * elementCount, elementCount).getElementIds();
+    }
+
+    @Benchmark
+    public boolean lookupCovered() {
+        return FetchThread.findElementSources(coveredElementIds, elementSets, new String[elementCount], new int[elementCount]);
+    }
+
+    @Benchmark
+    public boolean lookupUncovered() {
+        return FetchThread.findElementSources(uncoveredElementIds, elementSets, new String[elementCount], new int[elementCount]);
+    }
+}
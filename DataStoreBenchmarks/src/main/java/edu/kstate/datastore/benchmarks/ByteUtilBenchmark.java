@@ -0,0 +1,84 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.util.ByteUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the arrays stored in the value set and element
+ * set entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteUtilBenchmark {
+
+    @Param({"16", "1024"})
+    public int elementCount;
+
+    private double[] values;
+    private byte[] valueBytes;
+    private String[] elementIds;
+    private byte[] elementIdBytes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        values = new double[elementCount];
+        elementIds = new String[elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            values[i] = random.nextDouble() * 1000.0;
+            elementIds[i] = String.format("NWIS:%08d", random.nextInt(100000000));
+        }
+        valueBytes = ByteUtil.toByta(values);
+        elementIdBytes = ByteUtil.toByta(elementIds);
+    }
+
+    @Benchmark
+    public byte[] encodeDoubles() {
+        return ByteUtil.toByta(values);
+    }
+
+    @Benchmark
+    public double[] decodeDoubles() {
+        return ByteUtil.toDoubleA(valueBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeStrings() {
+        return ByteUtil.toByta(elementIds);
+    }
+
+    @Benchmark
+    public String[] decodeStrings() {
+        return ByteUtil.toStringA(elementIdBytes);
+    }
+}
@@ -0,0 +1,116 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.data.ValueSetRequestEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The serialization Hazelcast performs for every put and get of a value
+ * set or element set, and the creation of the keys they are stored under.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntryBenchmark {
+
+    @Param({"16", "1024"})
+    public int elementCount;
+
+    private ValueSetEntry valueSetEntry;
+    private byte[] valueSetBytes;
+    private ElementSetEntry elementSetEntry;
+    private byte[] elementSetBytes;
+    private ValueSetRequestEntry valueSetRequestEntry;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+    @Setup
+    public void setup() throws IOException {
+        valueSetEntry = Workload.createValueSetEntry("ElementSet0", "2005-01-01T00:00:00", elementCount);
+        elementSetEntry = Workload.createElementSetEntry("ElementSet0", 0, elementCount);
+        valueSetRequestEntry = new ValueSetRequestEntry(valueSetEntry.getWebServiceId(), valueSetEntry.getQuantityId(), valueSetEntry.getElementSetId(),
+                valueSetEntry.getTimeStamp(), valueSetEntry.getScenarioId());
+        valueSetBytes = writeValueSet();
+        elementSetBytes = writeElementSet();
+    }
+
+    @Benchmark
+    public byte[] writeValueSet() throws IOException {
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        valueSetEntry.writeData(out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public ValueSetEntry readValueSet() throws IOException {
+        ValueSetEntry entry = new ValueSetEntry();
+        entry.readData(new DataInputStream(new ByteArrayInputStream(valueSetBytes)));
+        return entry;
+    }
+
+    @Benchmark
+    public byte[] writeElementSet() throws IOException {
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        elementSetEntry.writeData(out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public ElementSetEntry readElementSet() throws IOException {
+        ElementSetEntry entry = new ElementSetEntry();
+        entry.readData(new DataInputStream(new ByteArrayInputStream(elementSetBytes)));
+        return entry;
+    }
+
+    @Benchmark
+    public String[] elementSetIds() {
+        return elementSetEntry.getElementIds();
+    }
+
+    @Benchmark
+    public String createValueSetKey() {
+        return ValueSetEntry.createKey(valueSetEntry);
+    }
+
+    @Benchmark
+    public String createValueSetRequestKey() {
+        return ValueSetRequestEntry.createKey(valueSetRequestEntry);
+    }
+}
@@ -0,0 +1,72 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.ExpirationThread;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The expiration thread's pass over the local entries: every candidate is
+ * put in a priority queue and the oldest 10% of the memory is selected.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpirationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entryCount;
+
+    private ExpirationThread.QueueItem[] candidates;
+    private long totalMemoryB;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        candidates = new ExpirationThread.QueueItem[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            long memoryCost = 8000 + random.nextInt(1000);
+            candidates[i] = new ExpirationThread.QueueItem("ValueSet" + i, 1 + random.nextInt(10), now - random.nextInt(3600000), memoryCost);
+            totalMemoryB += memoryCost;
+        }
+    }
+
+    @Benchmark
+    public ArrayList<ExpirationThread.QueueItem> scan() {
+        PriorityBlockingQueue<ExpirationThread.QueueItem> priorityBlockingQueue = new PriorityBlockingQueue<ExpirationThread.QueueItem>();
+        for (ExpirationThread.QueueItem nextCandidate : candidates) {
+            priorityBlockingQueue.add(nextCandidate);
+        }
+        return ExpirationThread.selectForExpiration(priorityBlockingQueue, totalMemoryB / 10);
+    }
+}
@@ -0,0 +1,79 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.data.SeriesBlock;
+import edu.kstate.datastore.data.SeriesKey;
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.util.EpochTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a day of hourly value sets from a series block, one time step
+ * at a time the way a request is served and as a range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SeriesBenchmark {
+
+    private static final int HOUR_COUNT = 24;
+
+    @Param({"16", "256"})
+    public int elementCount;
+
+    private SeriesBlock block;
+    private long[] timesS;
+    private long fromS;
+    private long toS;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SeriesKey seriesKey = new SeriesKey(Workload.WEB_SERVICE_ID, Workload.QUANTITY_ID, "ElementSet", Workload.SCENARIO_ID, 0);
+        block = new SeriesBlock(seriesKey, elementCount);
+        timesS = new long[HOUR_COUNT];
+        fromS = EpochTime.parse("2013-01-01T00:00:00");
+        for (int i = 0; i < HOUR_COUNT; i++) {
+            timesS[i] = fromS + i * 3600L;
+            block.put(Workload.createValueSetEntry("ElementSet", EpochTime.format(timesS[i]), elementCount));
+        }
+        toS = fromS + HOUR_COUNT * 3600L;
+    }
+
+    @Benchmark
+    public ValueSetEntry getValueSet() {
+        next = (next + 1) % HOUR_COUNT;
+        return block.getValueSet(timesS[next]);
+    }
+
+    @Benchmark
+    public ArrayList<ValueSetEntry> getValueSets() {
+        return block.getValueSets(fromS, toS);
+    }
+}
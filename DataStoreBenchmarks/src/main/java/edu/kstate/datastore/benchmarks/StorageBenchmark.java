@@ -0,0 +1,97 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.storage.ValueSetStore;
+import edu.kstate.datastore.storage.memory.MemoryStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The value set store operations on the request path, against the
+ * in-memory binding so that the cost of the store itself is measured
+ * without the cluster.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StorageBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entryCount;
+
+    @Param({"16", "256"})
+    public int elementCount;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private ValueSetStore store;
+    private String[] keys;
+    private HashMap<String, ValueSetEntry> batch;
+    private int next;
+
+    @Setup
+    public void setup() {
+        store = new MemoryStorage(100, 100, 100, compress).getValueSetStore();
+        keys = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            ValueSetEntry entry = Workload.createValueSetEntry("ElementSet" + (i % 100), "2013-01-01T" + i, elementCount);
+            keys[i] = ValueSetEntry.createKey(entry);
+            store.put(keys[i], entry);
+        }
+
+        batch = new HashMap<String, ValueSetEntry>();
+        for (int i = 0; i < 100; i++) {
+            ValueSetEntry entry = Workload.createValueSetEntry("Batch", "2013-01-01T" + i, elementCount);
+            batch.put(ValueSetEntry.createKey(entry), entry);
+        }
+    }
+
+    @Benchmark
+    public ValueSetEntry get() {
+        next = (next + 1) % entryCount;
+        return store.get(keys[next]);
+    }
+
+    @Benchmark
+    public boolean containsKey() {
+        next = (next + 1) % entryCount;
+        return store.containsKey(keys[next]);
+    }
+
+    /**
+     * A batch the size the queue to map thread drains at a time.
+     */
+    @Benchmark
+    public void putAll() {
+        store.putAll(batch);
+    }
+}
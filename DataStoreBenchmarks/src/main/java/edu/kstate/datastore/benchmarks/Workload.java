@@ -0,0 +1,65 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.data.ElementSetEntry;
+import edu.kstate.datastore.data.ValueSetEntry;
+
+import java.util.Random;
+
+/**
+ * Builds the synthetic entries used by the benchmarks. Element ids follow
+ * the NWIS site naming so that string lengths are realistic.
+ */
+public class Workload {
+
+    public static final String WEB_SERVICE_ID = "TestWebService";
+    public static final String QUANTITY_ID = "Discharge";
+    public static final String SCENARIO_ID = "Scenario0";
+
+    public static String createElementId(int index) {
+        return String.format("NWIS:%08d", index);
+    }
+
+    /**
+     * Creates an element set whose elements are numbered consecutively from
+     * the given first element.
+     */
+    public static ElementSetEntry createElementSetEntry(String elementSetId, int firstElement, int elementCount) {
+        String[] elementIds = new String[elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            elementIds[i] = createElementId(firstElement + i);
+        }
+        return new ElementSetEntry(elementSetId, elementIds);
+    }
+
+    public static ValueSetEntry createValueSetEntry(String elementSetId, String timeStamp, int elementCount) {
+        Random random = new Random(elementSetId.hashCode() ^ timeStamp.hashCode());
+        double[] values = new double[elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            values[i] = random.nextDouble() * 1000.0;
+        }
+        return new ValueSetEntry(WEB_SERVICE_ID, QUANTITY_ID, timeStamp, elementSetId, SCENARIO_ID, values);
+    }
+}
@@ -0,0 +1,129 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.data.ValueSetEntry;
+import edu.kstate.datastore.webservice.simplerest.SimpleXmlHandler;
+import edu.kstate.datastore.webservice.simplerest.SimpleXmlWriter;
+import edu.kstate.datastore.webservice.wateroneflow.GetValuesResponseHandler;
+import edu.kstate.datastore.webservice.wateroneflow.TimeSeriesResponseHandler;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the SimpleRest requests and parsing the SimpleRest and
+ * WaterOneFlow responses, the same way the service adapters do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XmlBenchmark {
+
+    @Param({"16", "1024"})
+    public int elementCount;
+
+    private String[] elementIds;
+    private HashMap<String, String[]> elementSetIds;
+    private ArrayList<ValueSetEntry> valueSets;
+    private byte[] simpleRestResponse;
+    private byte[] waterOneFlowResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        elementIds = Workload.createElementSetEntry("ElementSet0", 0, elementCount).getElementIds();
+        elementSetIds = new HashMap<String, String[]>();
+        elementSetIds.put("ElementSet0", elementIds);
+
+        // a delivery normally carries many value sets
+        valueSets = new ArrayList<ValueSetEntry>();
+        for (int i = 0; i < 10; i++) {
+            valueSets.add(Workload.createValueSetEntry("ElementSet0", String.format("2005-01-%02dT00:00:00", i + 1), elementCount));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<result><serviceTime>12</serviceTime><valueSet><values>");
+        for (double nextValue : valueSets.get(0).getValues()) {
+            sb.append("<value>").append(nextValue).append("</value>");
+        }
+        sb.append("</values></valueSet></result>");
+        simpleRestResponse = sb.toString().getBytes("UTF-8");
+
+        // the time series response is escaped inside the soap response
+        String timeSeries = "<timeSeriesResponse><timeSeries><values><value dateTime=\"2005-01-01T00:00:00\">123.4</value></values></timeSeries></timeSeriesResponse>";
+        String soap = "<?xml version=\"1.0\" encoding=\"utf-8\"?><soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+                + "<GetValuesResponse><GetValuesResult>" + timeSeries.replace("<", "&lt;").replace(">", "&gt;")
+                + "</GetValuesResult></GetValuesResponse></soap:Body></soap:Envelope>";
+        waterOneFlowResponse = soap.getBytes("UTF-8");
+    }
+
+    private static void parse(byte[] xml, DefaultHandler handler) throws Exception {
+        InputSource source = new InputSource();
+        source.setByteStream(new ByteArrayInputStream(xml));
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.parse(source);
+    }
+
+    @Benchmark
+    public byte[] writeGetValuesRequest() throws IOException {
+        return SimpleXmlWriter.writeRequestForGetValues("Discharge", elementIds, "2005-01-01T00:00:00");
+    }
+
+    @Benchmark
+    public byte[] writeSetValuesRequest() throws IOException {
+        return SimpleXmlWriter.writeRequestForSetValues(elementSetIds, valueSets);
+    }
+
+    @Benchmark
+    public double[] parseSimpleRestResponse() throws Exception {
+        SimpleXmlHandler handler = new SimpleXmlHandler();
+        parse(simpleRestResponse, handler);
+        return handler.getValues();
+    }
+
+    /**
+     * One site's response, each value set needs one of these per element.
+     */
+    @Benchmark
+    public double parseWaterOneFlowResponse() throws Exception {
+        GetValuesResponseHandler getValuesResponseHandler = new GetValuesResponseHandler();
+        parse(waterOneFlowResponse, getValuesResponseHandler);
+        TimeSeriesResponseHandler timeSeriesResponseHandler = new TimeSeriesResponseHandler();
+        parse(getValuesResponseHandler.getTimeSeriesXml().getBytes(), timeSeriesResponseHandler);
+        return timeSeriesResponseHandler.getValue();
+    }
+}
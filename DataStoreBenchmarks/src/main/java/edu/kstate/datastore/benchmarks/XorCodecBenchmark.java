@@ -0,0 +1,75 @@
+// -----------------------------------------------------------------------
+//  Copyright (c) 2014 Tom Bulatewicz, Kansas State University
+//
+//  Permission is hereby granted, free of charge, to any person obtaining a copy
+//  of this software and associated documentation files (the "Software"), to deal
+//  in the Software without restriction, including without limitation the rights
+//  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+//  copies of the Software, and to permit persons to whom the Software is
+//  furnished to do so, subject to the following conditions:
+//
+//  The above copyright notice and this permission notice shall be included in all
+//  copies or substantial portions of the Software.
+//
+//  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+//  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+//  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+//  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+//  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+//  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+//  SOFTWARE.
+// -----------------------------------------------------------------------
+
+
+package edu.kstate.datastore.benchmarks;
+
+import edu.kstate.datastore.util.XorCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of value set payloads. The zero fraction mimics dry
+ * precipitation and ungauged sites; the other values are rounded to a
+ * tenth like most reported discharge.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XorCodecBenchmark {
+
+    @Param({"16", "1024"})
+    public int elementCount;
+
+    @Param({"0.0", "0.7"})
+    public double zeroFraction;
+
+    private double[] values;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        values = new double[elementCount];
+        double level = 100.0;
+        for (int i = 0; i < elementCount; i++) {
+            level = Math.max(0.0, level + random.nextGaussian() * 5.0);
+            values[i] = random.nextDouble() < zeroFraction ? 0.0 : Math.round(level * 10.0) / 10.0;
+        }
+        encoded = XorCodec.encode(values);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return XorCodec.encode(values);
+    }
+
+    @Benchmark
+    public double[] decode() {
+        return XorCodec.decode(encoded);
+    }
+}